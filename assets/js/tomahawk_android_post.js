@@ -31,10 +31,109 @@ shouldDoNativeRequest = function (url, callback, extraHeaders, options) {
     );
 };
 
+/**
+ * The minimum number of tracks that are being sent to the native side at once. Pages are only being
+ * cut between albums, so that compilation albums are still being detected properly.
+ */
+Tomahawk.Collection.addTracksPageSize = 500;
+
+/**
+ * Sends the given tracks to the native side page by page. Every page is being stored in its own
+ * transaction and the next page is only being sent once the previous one has been stored, so that
+ * neither side ever has to hold the whole collection as a single JSON string.
+ */
 Tomahawk.Collection.addTracks = function (params) {
-    return Tomahawk.NativeScriptJobManager.invoke("collectionAddTracks", params);
+    var tracks = params.tracks.slice(0).sort(function (a, b) {
+        var albumA = a.album || "";
+        var albumB = b.album || "";
+        return albumA < albumB ? -1 : albumA > albumB ? 1 : 0;
+    });
+
+    var pages = [];
+    var page = [];
+    for (var i = 0; i < tracks.length; i++) {
+        if (page.length >= Tomahawk.Collection.addTracksPageSize
+            && (tracks[i].album || "") !== (page[page.length - 1].album || "")) {
+            pages.push(page);
+            page = [];
+        }
+        page.push(tracks[i]);
+    }
+    // Always send at least one (possibly empty) page, so that the native side gets notified
+    pages.push(page);
+
+    var added = 0;
+    return pages.reduce(function (promise, page) {
+        return promise.then(function () {
+            added += page.length;
+            return Tomahawk.NativeScriptJobManager.invoke("collectionAddTracks", {
+                id: params.id,
+                tracks: page,
+                added: added,
+                total: tracks.length
+            });
+        });
+    }, RSVP.resolve());
 };
 
 Tomahawk.Collection.wipe = function (params) {
     return Tomahawk.NativeScriptJobManager.invoke("collectionWipe", params);
-};
\ No newline at end of file
+};
+
+/**
+ * Rejects the promise of the native script job with the given requestId, so that e.g. an import
+ * doesn't send its remaining pages after one of them has failed to be stored.
+ */
+Tomahawk.NativeScriptJobManager.reportNativeScriptJobFailure = function (requestId, error) {
+    var deferred = this.deferreds[requestId];
+    if (!deferred) {
+        Tomahawk.log("Deferred object with the given requestId is not present!");
+        return;
+    }
+    delete this.deferreds[requestId];
+    deferred.reject(error);
+};
+/**
+ * Runs every ScriptJob within its own request context, so that the native requests it causes can be
+ * attributed to it.
+ */
+Tomahawk.PluginManager._invoke = Tomahawk.PluginManager.invoke;
+Tomahawk.PluginManager.invoke = function (requestId, objectId, methodName, params) {
+    var pluginManager = this;
+    Tomahawk._withRequestContext(requestId, function () {
+        pluginManager._invoke(requestId, objectId, methodName, params);
+    });
+};
+
+/**
+ * Adds support for the "resolveBatch" method, which resolves a whole list of queries with a single
+ * ScriptJob. If the resolver doesn't implement resolveBatch itself, every query is being resolved
+ * through the resolver's resolve method. The results are being reported as an array of result
+ * arrays, in the same order as the given queries. Queries which fail or don't report back within
+ * the given timeout get an empty result array, so that they can't hold back the whole batch.
+ */
+Tomahawk.PluginManager._invokeSync = Tomahawk.PluginManager.invokeSync;
+Tomahawk.PluginManager.invokeSync = function (requestId, objectId, methodName, params) {
+    var object = this.objects[objectId];
+    if (methodName !== 'resolveBatch' || !object || typeof object.resolveBatch === 'function') {
+        return this._invokeSync(requestId, objectId, methodName, params);
+    }
+
+    var pluginManager = this;
+    var promises = params.queries.map(function (query, i) {
+        var subRequestId = requestId + "_" + i;
+        return new RSVP.Promise(function (resolve, reject) {
+            Tomahawk.setTimeout(function () {
+                resolve([]);
+            }, params.timeout);
+            RSVP.Promise.resolve(
+                pluginManager._invokeSync(subRequestId, objectId, 'resolve', query)
+            ).then(function (results) {
+                resolve(results || []);
+            }, function () {
+                resolve([]);
+            });
+        });
+    });
+    return RSVP.all(promises);
+};
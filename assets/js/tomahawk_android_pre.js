@@ -48,10 +48,53 @@ Tomahawk.resolveFromFuzzyIndex =
         }
     };
 
+/**
+ * The requestId of the ScriptJob on whose behalf the currently running code is being executed.
+ * It is being sent along with every native request, so that requests which are still queued can be
+ * dropped as soon as the ScriptJob has been cancelled. The context is being carried over
+ * into the callbacks of native requests and RSVP promises.
+ */
+Tomahawk._requestContext = null;
+
+Tomahawk._withRequestContext = function (context, fn) {
+    var previousContext = Tomahawk._requestContext;
+    Tomahawk._requestContext = context;
+    try {
+        return fn();
+    } finally {
+        Tomahawk._requestContext = previousContext;
+    }
+};
+
+Tomahawk._rsvpAsync = RSVP.configure('async');
+RSVP.configure('async', function (callback, arg) {
+    var context = Tomahawk._requestContext;
+    Tomahawk._rsvpAsync(function (arg) {
+        Tomahawk._withRequestContext(context, function () {
+            callback(arg);
+        });
+    }, arg);
+});
+
+/**
+ * Internal map used to remember the request context of every pending native request.
+ */
+Tomahawk.asyncRequestContexts = {};
+
 Tomahawk.nativeAsyncRequest =
     function (reqId, url, extraHeaders, options) {
+        Tomahawk.asyncRequestContexts[reqId] = Tomahawk._requestContext;
         Tomahawk.nativeAsyncRequestString(reqId, url, JSON.stringify(extraHeaders),
-            JSON.stringify(options));
+            JSON.stringify(options), Tomahawk._requestContext);
+    };
+
+/**
+ * @returns the number of native requests of this resolver that are queued and waiting for a free
+ * network thread. Resolvers can use this to throttle themselves.
+ */
+Tomahawk.nativeAsyncRequestBacklog =
+    function () {
+        return Tomahawk.nativeAsyncRequestQueueSize();
     };
 
 /**
@@ -75,7 +118,11 @@ Tomahawk._nativeAsyncRequestDone = function (requestId, responseText, responseHe
             return this.responseHeaders[header.toLowerCase()];
         }
     };
-    Tomahawk.nativeAsyncRequestDone(requestId, fakeXhr);
+    var context = Tomahawk.asyncRequestContexts[requestId];
+    delete Tomahawk.asyncRequestContexts[requestId];
+    Tomahawk._withRequestContext(context, function () {
+        Tomahawk.nativeAsyncRequestDone(requestId, fakeXhr);
+    });
 };
 
 Tomahawk.localStorage = {
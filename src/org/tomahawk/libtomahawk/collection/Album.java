@@ -17,6 +17,8 @@
  */
 package org.tomahawk.libtomahawk.collection;
 
+import org.tomahawk.libtomahawk.utils.VariousUtils;
+
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -26,6 +28,8 @@ public class Album extends Cacheable implements AlphaComparable, ArtistAlphaComp
 
     private final String mName;
 
+    private String mNormalizedName;
+
     private final Artist mArtist;
 
     private Image mImage;
@@ -60,6 +64,17 @@ public class Album extends Cacheable implements AlphaComparable, ArtistAlphaComp
         return mName;
     }
 
+    /**
+     * @return the {@link Album}'s name cleaned up for comparisons (see {@link
+     * VariousUtils#cleanUpString(String, boolean)})
+     */
+    public String getNormalizedName() {
+        if (mNormalizedName == null) {
+            mNormalizedName = VariousUtils.cleanUpString(mName, false);
+        }
+        return mNormalizedName;
+    }
+
     /**
      * @return the name that should be displayed
      */
@@ -17,6 +17,8 @@
  */
 package org.tomahawk.libtomahawk.collection;
 
+import org.tomahawk.libtomahawk.utils.VariousUtils;
+
 /**
  * This class represents an {@link Artist}.
  */
@@ -26,6 +28,8 @@ public class Artist extends Cacheable implements AlphaComparable {
 
     private final String mName;
 
+    private String mNormalizedName;
+
     private ListItemString mBio;
 
     private Image mImage;
@@ -59,6 +63,17 @@ public class Artist extends Cacheable implements AlphaComparable {
         return mName;
     }
 
+    /**
+     * @return this object's name cleaned up for comparisons (see {@link
+     * VariousUtils#cleanUpString(String, boolean)})
+     */
+    public String getNormalizedName() {
+        if (mNormalizedName == null) {
+            mNormalizedName = VariousUtils.cleanUpString(mName, false);
+        }
+        return mNormalizedName;
+    }
+
     /**
      * @return the name that should be displayed
      */
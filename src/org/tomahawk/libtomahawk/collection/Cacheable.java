@@ -29,11 +29,30 @@ public abstract class Cacheable {
 
     private static final String TAG = Cacheable.class.getSimpleName();
 
-    private static final Map<Class, Map<String, Cacheable>> sCaches = new ConcurrentHashMap<>();
+    /**
+     * The maximum number of recently used objects per class, which are being held strongly
+     */
+    public static final int DEFAULT_MAX_CACHE_SIZE = 1000;
+
+    private static final Map<Class, InterningCache> sCaches = new ConcurrentHashMap<>();
+
+    /**
+     * Reusable builder for cache keys, so that building a key only allocates the resulting String
+     */
+    private static final ThreadLocal<StringBuilder> sKeyBuilder =
+            new ThreadLocal<StringBuilder>() {
+                @Override
+                protected StringBuilder initialValue() {
+                    return new StringBuilder(128);
+                }
+            };
+
+    private final Class mCacheClass;
 
     private String mCacheKey;
 
     protected Cacheable(Class clss, String cacheKey) {
+        mCacheClass = clss;
         mCacheKey = cacheKey;
 
         getCache(clss).put(cacheKey, this);
@@ -47,36 +66,93 @@ public abstract class Cacheable {
         return mCacheKey;
     }
 
-    private static Map<String, Cacheable> getCache(Class clss) {
-        Map<String, Cacheable> cache = sCaches.get(clss);
+    private static InterningCache getCache(Class clss) {
+        InterningCache cache = sCaches.get(clss);
         if (cache == null) {
-            cache = new ConcurrentHashMap<>();
-            sCaches.put(clss, cache);
+            synchronized (sCaches) {
+                cache = sCaches.get(clss);
+                if (cache == null) {
+                    cache = new InterningCache(DEFAULT_MAX_CACHE_SIZE, InterningCache.VALUES_WEAK);
+                    sCaches.put(clss, cache);
+                }
+            }
         }
         return cache;
     }
 
+    /**
+     * Replaces the cache of the given class with the given {@link InterningCache}. Should be
+     * called before any object of the given class has been created.
+     */
+    public static void setCache(Class clss, InterningCache cache) {
+        sCaches.put(clss, cache);
+    }
+
     protected static Cacheable get(Class clss, String cacheKey) {
         return getCache(clss).get(cacheKey);
     }
 
+    /**
+     * Makes sure that this object stays cached until {@link #unpin()} has been called. Objects
+     * whose cache key is being kept around (e.g. in fragment arguments) have to be pinned, because
+     * otherwise they can be collected once they have dropped out of the recently used objects.
+     */
+    public void pin() {
+        getCache(mCacheClass).pin(this);
+    }
+
+    public void unpin() {
+        getCache(mCacheClass).unpin(this);
+    }
+
+    public static void logCacheStats() {
+        for (Map.Entry<Class, InterningCache> entry : sCaches.entrySet()) {
+            Log.d(TAG, entry.getKey().getSimpleName() + " - " + entry.getValue());
+        }
+    }
+
     protected static String getCacheKey(Object... objects) {
-        String result = "";
+        StringBuilder sb = sKeyBuilder.get();
+        sb.setLength(0);
         for (int i = 0; i < objects.length; i++) {
-            Object o = objects[i];
-            if (o != null) {
-                if (i > 0) {
-                    result += "\t\t";
-                }
-                if (o instanceof String) {
-                    result += ((String) o);
-                } else if (o instanceof Boolean) {
-                    result += ((Boolean) o) ? "1" : "0";
-                } else {
-                    Log.e(TAG, "getCacheKey - given Object type is not supported!");
-                }
+            appendCacheKeyPart(sb, objects[i], i);
+        }
+        return sb.toString();
+    }
+
+    protected static String getCacheKey(String s1) {
+        return s1 != null ? s1 : "";
+    }
+
+    protected static String getCacheKey(String s1, String s2) {
+        StringBuilder sb = sKeyBuilder.get();
+        sb.setLength(0);
+        appendCacheKeyPart(sb, s1, 0);
+        appendCacheKeyPart(sb, s2, 1);
+        return sb.toString();
+    }
+
+    protected static String getCacheKey(String s1, String s2, String s3) {
+        StringBuilder sb = sKeyBuilder.get();
+        sb.setLength(0);
+        appendCacheKeyPart(sb, s1, 0);
+        appendCacheKeyPart(sb, s2, 1);
+        appendCacheKeyPart(sb, s3, 2);
+        return sb.toString();
+    }
+
+    private static void appendCacheKeyPart(StringBuilder sb, Object o, int i) {
+        if (o != null) {
+            if (i > 0) {
+                sb.append("\t\t");
+            }
+            if (o instanceof String) {
+                sb.append((String) o);
+            } else if (o instanceof Boolean) {
+                sb.append(((Boolean) o) ? '1' : '0');
+            } else {
+                Log.e(TAG, "getCacheKey - given Object type is not supported!");
             }
         }
-        return result;
     }
 }
\ No newline at end of file
@@ -25,28 +25,58 @@ import org.tomahawk.tomahawk_android.activities.TomahawkMainActivity;
 import android.database.Cursor;
 import android.text.TextUtils;
 import android.util.Log;
-import android.util.SparseArray;
 
+import java.util.Arrays;
 import java.util.List;
 
+/**
+ * Provides positional access to the items of a collection {@link Cursor} (or a {@link List}),
+ * optionally merged with an additional sorted {@link List} of items.
+ *
+ * Only a sliding window of {@link #WINDOW_SIZE} consecutive items is being kept materialized, so
+ * that scrolling through huge collections doesn't keep every item in memory. Merging doesn't walk
+ * the whole {@link Cursor} either. Instead the position of every merged item is being found by a
+ * binary search over the sorted {@link Cursor} and stored in a compact int array.
+ */
 public class CollectionCursor<T> {
 
     private final static String TAG = CollectionCursor.class.getSimpleName();
 
+    /**
+     * The number of materialized items that are being kept. Must be a power of two.
+     */
+    private static final int WINDOW_SIZE = 256;
+
     private int mSortMode;
 
     private List<T> mMergedItems;
 
-    private SparseArray<Index> mIndex;
+    /**
+     * The ascending positions of the merged items in this {@link CollectionCursor}. Null if no
+     * items have been merged.
+     */
+    private int[] mMergedPositions;
 
-    private static class Index {
+    /**
+     * The indexes in mMergedItems of the items at the positions in mMergedPositions. Merged items
+     * that are already contained in the {@link Cursor} are being left out.
+     */
+    private int[] mMergedIndexes;
 
-        int index;
+    /**
+     * The materialized items. The item at a {@link Cursor} position is being stored in the slot
+     * (position % WINDOW_SIZE), so that consecutive positions never evict each other.
+     */
+    private final Object[] mWindow;
 
-        boolean fromMergedItems;
-    }
+    private final int[] mWindowPositions;
 
-    private SparseArray<T> mCursorCache = new SparseArray<>();
+    /**
+     * Prefix of the ids of all {@link PlaylistEntry}s created by this {@link CollectionCursor}.
+     * The ids have to survive the eviction of an item from the window, so that the same {@link
+     * PlaylistEntry} is being returned when it is being materialized again.
+     */
+    private final String mEntryIdPrefix;
 
     private Cursor mCursor;
 
@@ -64,6 +94,10 @@ public class CollectionCursor<T> {
         mCursor = cursor;
         mCursorCount = cursor.getCount();
         mClass = clss;
+        mWindow = new Object[WINDOW_SIZE];
+        mWindowPositions = new int[WINDOW_SIZE];
+        Arrays.fill(mWindowPositions, -1);
+        mEntryIdPrefix = TomahawkMainActivity.getLifetimeUniqueStringId() + "_";
         if (clss == PlaylistEntry.class || clss == Result.class) {
             if (resolver != null) {
                 mResolver = resolver;
@@ -85,6 +119,9 @@ public class CollectionCursor<T> {
     public CollectionCursor(List<T> items, Class<T> clss) {
         mItems = items;
         mClass = clss;
+        mWindow = null;
+        mWindowPositions = null;
+        mEntryIdPrefix = null;
     }
 
     public void close() {
@@ -94,17 +131,15 @@ public class CollectionCursor<T> {
     }
 
     public T get(int location) {
-        boolean fromMergedItems = false;
-        if (mIndex != null) {
-            Index index = mIndex.get(location);
-            location = index.index;
-            fromMergedItems = index.fromMergedItems;
-        }
-        if (fromMergedItems) {
-            return mMergedItems.get(location);
-        } else {
-            return rawGet(location);
+        if (mMergedPositions != null) {
+            int i = Arrays.binarySearch(mMergedPositions, location);
+            if (i >= 0) {
+                return mMergedItems.get(mMergedIndexes[i]);
+            }
+            // Skip all merged items in front of the given location
+            location += i + 1;
         }
+        return rawGet(location);
     }
 
     private T rawGet(int location) {
@@ -113,7 +148,8 @@ public class CollectionCursor<T> {
                 Log.d(TAG, "rawGet - Cursor has been closed.");
                 return null;
             }
-            T cachedItem = mCursorCache.get(location);
+            int slot = location & (WINDOW_SIZE - 1);
+            T cachedItem = mWindowPositions[slot] == location ? (T) mWindow[slot] : null;
             if (cachedItem == null) {
                 mCursor.moveToPosition(location);
                 if (mClass == PlaylistEntry.class) {
@@ -126,7 +162,7 @@ public class CollectionCursor<T> {
                     Query query = Query.get(result, false);
                     query.addTrackResult(result, 1.0f);
                     PlaylistEntry entry = PlaylistEntry.get(mPlaylist.getId(), query,
-                            TomahawkMainActivity.getLifetimeUniqueStringId());
+                            mEntryIdPrefix + location);
                     cachedItem = (T) entry;
                 } else if (mClass == Result.class) {
                     Artist artist = Artist.get(mCursor.getString(0));
@@ -148,7 +184,8 @@ public class CollectionCursor<T> {
                     Artist artist = Artist.get(mCursor.getString(0));
                     cachedItem = (T) artist;
                 }
-                mCursorCache.put(location, cachedItem);
+                mWindow[slot] = cachedItem;
+                mWindowPositions[slot] = location;
             }
             return cachedItem;
         } else {
@@ -157,13 +194,11 @@ public class CollectionCursor<T> {
     }
 
     public int size() {
-        if (mIndex != null) {
-            return mIndex.size();
-        } else if (mCursor != null) {
-            return mCursorCount;
-        } else {
-            return mItems.size();
+        int size = mCursor != null ? mCursorCount : mItems.size();
+        if (mMergedPositions != null) {
+            size += mMergedPositions.length;
         }
+        return size;
     }
 
     public void mergeItems(int sortMode, List<T> items) {
@@ -173,52 +208,105 @@ public class CollectionCursor<T> {
         updateIndex();
     }
 
+    /**
+     * Finds the position of every merged item. Both the {@link Cursor} and the merged items have
+     * to be sorted by their sort String. A merged item that is identical to an item in the {@link
+     * Cursor} with the same sort String is being left out.
+     */
     private void updateIndex() {
-        mIndex = new SparseArray<>();
+        if (mSortMode == Collection.SORT_LAST_MODIFIED) {
+            // The Cursor is ordered by a timestamp column, which doesn't match the sort String of
+            // the merged items. So we can't binary search here and merge linearly instead.
+            updateIndexLinear();
+            return;
+        }
+        int size1 = mCursor != null ? mCursorCount : mItems.size();
+        int size2 = mMergedItems.size();
+        int[] positions = new int[size2];
+        int[] indexes = new int[size2];
+        int count = 0;
+        int lowerBound = 0;
+        for (int i = 0; i < size2; i++) {
+            if (mCursor != null && mCursor.isClosed()) {
+                Log.e(TAG, "updateIndex - Aborting. Cursor has been closed.");
+                return;
+            }
+            String sortString = nonNull(getSortString(mMergedItems, i));
+            // Binary search for the first item that isn't sorted in front of the merged item
+            int high = size1;
+            while (lowerBound < high) {
+                int mid = (lowerBound + high) >>> 1;
+                if (nonNull(getSortString(mid)).compareTo(sortString) < 0) {
+                    lowerBound = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            boolean duplicate = false;
+            for (int j = lowerBound; j < size1 && nonNull(getSortString(j)).equals(sortString);
+                    j++) {
+                if (rawGet(j) == mMergedItems.get(i)) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (!duplicate) {
+                positions[count] = lowerBound + count;
+                indexes[count] = i;
+                count++;
+            }
+        }
+        mMergedPositions = Arrays.copyOf(positions, count);
+        mMergedIndexes = Arrays.copyOf(indexes, count);
+    }
+
+    /**
+     * Same as {@link #updateIndex()}, but walks through the {@link Cursor} and the merged items
+     * side by side instead of binary searching. Used for sort modes where the order of the {@link
+     * Cursor} can't be compared with the sort String of the merged items.
+     */
+    private void updateIndexLinear() {
         int size1 = mCursor != null ? mCursorCount : mItems.size();
         int size2 = mMergedItems.size();
+        int[] positions = new int[size2];
+        int[] indexes = new int[size2];
+        int count = 0;
         int counter1 = 0;
         int counter2 = 0;
-        int i = 0;
-        while (counter1 < size1 || counter2 < size2) {
+        while (counter2 < size2) {
             if (mCursor != null && mCursor.isClosed()) {
-                Log.e(TAG, "updateIndex - Aborting. Cursor has been closed.");
+                Log.e(TAG, "updateIndexLinear - Aborting. Cursor has been closed.");
                 return;
             }
             int compareResult;
-            if (counter1 < size1 && counter2 < size2) {
-                compareResult =
-                        getSortString(mMergedItems, counter2).compareTo(getSortString(counter1));
-            } else if (counter1 >= size1) {
-                compareResult = -1;
+            if (counter1 < size1) {
+                compareResult = nonNull(getSortString(mMergedItems, counter2))
+                        .compareTo(nonNull(getSortString(counter1)));
             } else {
-                compareResult = 1;
+                compareResult = -1;
             }
             if (compareResult > 0) {
-                Index index = new Index();
-                index.fromMergedItems = false;
-                index.index = counter1++;
-                mIndex.put(i++, index);
+                counter1++;
             } else if (compareResult < 0) {
-                Index index = new Index();
-                index.fromMergedItems = true;
-                index.index = counter2++;
-                mIndex.put(i++, index);
+                positions[count] = counter1 + count;
+                indexes[count] = counter2++;
+                count++;
             } else {
                 if (rawGet(counter1) != mMergedItems.get(counter2)) {
-                    Index index = new Index();
-                    index.fromMergedItems = true;
-                    index.index = counter2++;
-                    mIndex.put(i++, index);
-                } else {
-                    counter2++;
+                    positions[count] = counter1 + count;
+                    indexes[count] = counter2;
+                    count++;
                 }
-                Index index = new Index();
-                index.fromMergedItems = false;
-                index.index = counter1++;
-                mIndex.put(i++, index);
+                counter2++;
+                counter1++;
             }
         }
+        mMergedPositions = Arrays.copyOf(positions, count);
+        mMergedIndexes = Arrays.copyOf(indexes, count);
+    }
+
+    private static String nonNull(String s) {
+        return s != null ? s : "";
     }
 
     public String getArtistName(int location) {
@@ -28,12 +28,14 @@ import org.jdeferred.multiple.OneReject;
 import org.tomahawk.libtomahawk.authentication.AuthenticatorManager;
 import org.tomahawk.libtomahawk.authentication.AuthenticatorUtils;
 import org.tomahawk.libtomahawk.authentication.HatchetAuthenticatorUtils;
+import org.tomahawk.libtomahawk.database.CollectionDb;
 import org.tomahawk.libtomahawk.database.DatabaseHelper;
 import org.tomahawk.libtomahawk.infosystem.InfoRequestData;
 import org.tomahawk.libtomahawk.infosystem.InfoSystem;
 import org.tomahawk.libtomahawk.infosystem.QueryParams;
 import org.tomahawk.libtomahawk.infosystem.User;
 import org.tomahawk.libtomahawk.resolver.Query;
+import org.tomahawk.libtomahawk.resolver.TypeAheadIndex;
 import org.tomahawk.libtomahawk.utils.ADeferredObject;
 import org.tomahawk.tomahawk_android.R;
 import org.tomahawk.tomahawk_android.TomahawkApp;
@@ -42,9 +44,11 @@ import android.util.Log;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -79,6 +83,8 @@ public class CollectionManager {
 
         public HashSet<String> mUpdatedItemIds;
 
+        public CollectionDb.Changeset mChangeset;
+
     }
 
     private final ConcurrentHashMap<String, Collection> mCollections
@@ -186,6 +192,9 @@ public class CollectionManager {
 
     public void removeCollection(Collection collection) {
         mCollections.remove(collection.getId());
+        if (collection instanceof DbCollection) {
+            ((DbCollection) collection).close();
+        }
         RemovedEvent event = new RemovedEvent();
         event.mCollection = collection;
         EventBus.getDefault().post(event);
@@ -199,6 +208,37 @@ public class CollectionManager {
         return mCollections.values();
     }
 
+    /**
+     * Collects the suggestions of all {@link DbCollection}s for the given partially typed search
+     * String. Names that are being suggested by more than one {@link DbCollection} are only being
+     * returned once.
+     *
+     * @return the best {@link TypeAheadIndex.Suggestion}s, ordered by their score
+     */
+    public List<TypeAheadIndex.Suggestion> suggest(String text, int limit) {
+        Map<String, TypeAheadIndex.Suggestion> suggestionMap = new HashMap<>();
+        for (Collection collection : mCollections.values()) {
+            if (collection instanceof DbCollection) {
+                for (TypeAheadIndex.Suggestion suggestion
+                        : ((DbCollection) collection).suggest(text, limit)) {
+                    String key = suggestion.type + "\t" + suggestion.name;
+                    TypeAheadIndex.Suggestion existing = suggestionMap.get(key);
+                    if (existing == null || existing.score < suggestion.score) {
+                        suggestionMap.put(key, suggestion);
+                    }
+                }
+            }
+        }
+        List<TypeAheadIndex.Suggestion> suggestions = new ArrayList<>(suggestionMap.values());
+        Collections.sort(suggestions, new Comparator<TypeAheadIndex.Suggestion>() {
+            @Override
+            public int compare(TypeAheadIndex.Suggestion lhs, TypeAheadIndex.Suggestion rhs) {
+                return Float.compare(rhs.score, lhs.score);
+            }
+        });
+        return suggestions.size() > limit ? suggestions.subList(0, limit) : suggestions;
+    }
+
     /**
      * Remove or add a lovedItem-query from the LovedItems-Playlist, depending on whether or not it
      * is already a lovedItem
@@ -29,6 +29,7 @@ import org.tomahawk.libtomahawk.resolver.Resolver;
 import org.tomahawk.libtomahawk.resolver.Result;
 import org.tomahawk.libtomahawk.resolver.ScriptAccount;
 import org.tomahawk.libtomahawk.resolver.ScriptResolver;
+import org.tomahawk.libtomahawk.resolver.TypeAheadIndex;
 import org.tomahawk.libtomahawk.utils.ADeferredObject;
 import org.tomahawk.tomahawk_android.utils.ThreadManager;
 import org.tomahawk.tomahawk_android.utils.TomahawkRunnable;
@@ -52,6 +53,10 @@ public abstract class DbCollection extends Collection {
 
     private FuzzyIndex mFuzzyIndex;
 
+    private volatile TypeAheadIndex mTypeAheadIndex;
+
+    private volatile boolean mClosed;
+
     private Set<Query> mWaitingQueries = Collections
             .newSetFromMap(new ConcurrentHashMap<Query, Boolean>());
 
@@ -78,6 +83,13 @@ public abstract class DbCollection extends Collection {
                         }
                         Log.d(TAG, collectionId
                                 + " - Fuzzy index initialized. Resolving all waiting queries.");
+                        TypeAheadIndex typeAheadIndex = new TypeAheadIndex(collectionId);
+                        typeAheadIndex.ensureBuilt();
+                        mTypeAheadIndex = typeAheadIndex;
+                        if (mClosed) {
+                            // This DbCollection has been removed in the meantime
+                            close();
+                        }
                     }
                 };
                 ThreadManager.get().execute(r);
@@ -93,6 +105,19 @@ public abstract class DbCollection extends Collection {
         return null;
     }
 
+    /**
+     * Releases the {@link TypeAheadIndex} of this {@link DbCollection}. Called once it has been
+     * removed from the {@link CollectionManager}.
+     */
+    public void close() {
+        mClosed = true;
+        TypeAheadIndex typeAheadIndex = mTypeAheadIndex;
+        if (typeAheadIndex != null) {
+            mTypeAheadIndex = null;
+            typeAheadIndex.close();
+        }
+    }
+
     public Promise<Boolean, Throwable, Void> isInitializing() {
         final Deferred<Boolean, Throwable, Void> deferred = new ADeferredObject<>();
         getCollectionId().done(new DoneCallback<String>() {
@@ -107,6 +132,18 @@ public abstract class DbCollection extends Collection {
 
     public abstract Promise<String, Throwable, Void> getCollectionId();
 
+    /**
+     * @return the best {@link TypeAheadIndex.Suggestion}s of this {@link DbCollection} for the
+     * given partially typed search String. Empty as long as the index is still initializing.
+     */
+    public List<TypeAheadIndex.Suggestion> suggest(String text, int limit) {
+        TypeAheadIndex typeAheadIndex = mTypeAheadIndex;
+        if (typeAheadIndex == null) {
+            return new ArrayList<>();
+        }
+        return typeAheadIndex.suggest(text, limit);
+    }
+
     public boolean resolve(final Query query) {
         getCollectionId().done(new DoneCallback<String>() {
             @Override
@@ -128,23 +165,17 @@ public abstract class DbCollection extends Collection {
                             List<FuzzyIndex.IndexResult> indexResults =
                                     mFuzzyIndex.searchIndex(query);
                             if (indexResults.size() > 0) {
-                                String[] ids = new String[indexResults.size()];
-                                for (int i = 0; i < indexResults.size(); i++) {
-                                    FuzzyIndex.IndexResult indexResult = indexResults.get(i);
-                                    ids[i] = String.valueOf(indexResult.id);
-                                }
-                                CollectionDb.WhereInfo whereInfo = new CollectionDb.WhereInfo();
-                                whereInfo.connection = "OR";
-                                whereInfo.where.put(CollectionDb.ID, ids);
-                                Cursor cursor = CollectionDbManager.get()
-                                        .getCollectionDb(collectionId).tracks(whereInfo, null);
-                                CollectionCursor<Result> collectionCursor = new CollectionCursor<>(
-                                        cursor, Result.class, mResolver, null);
+                                // The FuzzyIndex stores everything we need, so there's no need
+                                // to look the tracks up in the CollectionDb
                                 ArrayList<Result> results = new ArrayList<>();
-                                for (int i = 0; i < collectionCursor.size(); i++) {
-                                    results.add(collectionCursor.get(i));
+                                for (FuzzyIndex.IndexResult indexResult : indexResults) {
+                                    Artist artist = Artist.get(indexResult.artist);
+                                    Album album = Album.get(indexResult.album, artist);
+                                    Track track = Track.get(indexResult.track, album, artist);
+                                    track.setDuration(indexResult.duration * 1000);
+                                    track.setAlbumPos(indexResult.albumPos);
+                                    results.add(Result.get(indexResult.url, track, mResolver));
                                 }
-                                collectionCursor.close();
                                 PipeLine.get().reportResults(query, results, mResolver.getId());
                             }
                         }
@@ -0,0 +1,261 @@
+/* == This file is part of Tomahawk Player - <http://tomahawk-player.org> ===
+ *
+ *   Copyright 2015, Enno Gottschalk <mrmaffen@googlemail.com>
+ *
+ *   Tomahawk is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Tomahawk is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Tomahawk. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tomahawk.libtomahawk.collection;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * A list of {@link Node}s, which is being stored as a treap with subtree sizes and parent links.
+ * Getting the {@link Node} at a position, getting the position of a {@link Node}, inserting and
+ * removing all take O(log n) time. A {@link Node} can only be part of one {@link IndexedTreeList}
+ * at a time.
+ */
+class IndexedTreeList<T extends IndexedTreeList.Node> implements Iterable<T> {
+
+    private static final Random sRandom = new Random();
+
+    static class Node {
+
+        private Node mLeft;
+
+        private Node mRight;
+
+        private Node mParent;
+
+        private int mSize = 1;
+
+        private final int mPriority = sRandom.nextInt();
+
+        private IndexedTreeList mOwner;
+    }
+
+    private Node mRoot;
+
+    /**
+     * The two results of the last call to {@link #split(Node, int)}
+     */
+    private Node mSplitLeft;
+
+    private Node mSplitRight;
+
+    public int size() {
+        return size(mRoot);
+    }
+
+    public void clear() {
+        for (Node node : this) {
+            node.mOwner = null;
+        }
+        mRoot = null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int position) {
+        if (position < 0 || position >= size()) {
+            throw new IndexOutOfBoundsException("position: " + position + ", size: " + size());
+        }
+        Node node = mRoot;
+        while (true) {
+            int leftSize = size(node.mLeft);
+            if (position < leftSize) {
+                node = node.mLeft;
+            } else if (position > leftSize) {
+                position -= leftSize + 1;
+                node = node.mRight;
+            } else {
+                return (T) node;
+            }
+        }
+    }
+
+    /**
+     * @return the position of the given {@link Node} or -1, if it isn't part of this list
+     */
+    public int indexOf(Node node) {
+        if (node == null || node.mOwner != this) {
+            return -1;
+        }
+        int position = size(node.mLeft);
+        while (node.mParent != null) {
+            if (node.mParent.mRight == node) {
+                position += size(node.mParent.mLeft) + 1;
+            }
+            node = node.mParent;
+        }
+        return position;
+    }
+
+    public void add(T node) {
+        add(size(), node);
+    }
+
+    public void add(int position, T newNode) {
+        Node node = newNode;
+        if (position < 0 || position > size()) {
+            throw new IndexOutOfBoundsException("position: " + position + ", size: " + size());
+        }
+        if (node.mOwner != null) {
+            throw new IllegalArgumentException("Node is already part of an IndexedTreeList");
+        }
+        node.mOwner = this;
+        node.mLeft = null;
+        node.mRight = null;
+        node.mParent = null;
+        node.mSize = 1;
+        split(mRoot, position);
+        Node right = mSplitRight;
+        setRoot(merge(merge(mSplitLeft, node), right));
+    }
+
+    /**
+     * @return whether or not the given {@link Node} has been part of this list
+     */
+    public boolean remove(Node node) {
+        int position = indexOf(node);
+        if (position < 0) {
+            return false;
+        }
+        split(mRoot, position);
+        Node left = mSplitLeft;
+        split(mSplitRight, 1);
+        setRoot(merge(left, mSplitRight));
+        node.mOwner = null;
+        node.mParent = null;
+        return true;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+
+            private Node mNext = first(mRoot);
+
+            @Override
+            public boolean hasNext() {
+                return mNext != null;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if (mNext == null) {
+                    throw new NoSuchElementException();
+                }
+                Node node = mNext;
+                mNext = successor(node);
+                return (T) node;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private void setRoot(Node root) {
+        mRoot = root;
+        if (root != null) {
+            root.mParent = null;
+        }
+    }
+
+    /**
+     * Splits the given tree, so that mSplitLeft contains its first count {@link Node}s and
+     * mSplitRight contains the remaining ones.
+     */
+    private void split(Node node, int count) {
+        if (node == null) {
+            mSplitLeft = null;
+            mSplitRight = null;
+        } else if (size(node.mLeft) < count) {
+            split(node.mRight, count - size(node.mLeft) - 1);
+            setRight(node, mSplitLeft);
+            update(node);
+            mSplitLeft = node;
+        } else {
+            split(node.mLeft, count);
+            setLeft(node, mSplitRight);
+            update(node);
+            mSplitRight = node;
+        }
+    }
+
+    /**
+     * @return the root of the tree containing all {@link Node}s of left followed by all {@link
+     * Node}s of right
+     */
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        } else if (right == null) {
+            return left;
+        } else if (left.mPriority > right.mPriority) {
+            setRight(left, merge(left.mRight, right));
+            update(left);
+            return left;
+        } else {
+            setLeft(right, merge(left, right.mLeft));
+            update(right);
+            return right;
+        }
+    }
+
+    private static void setLeft(Node node, Node left) {
+        node.mLeft = left;
+        if (left != null) {
+            left.mParent = node;
+        }
+    }
+
+    private static void setRight(Node node, Node right) {
+        node.mRight = right;
+        if (right != null) {
+            right.mParent = node;
+        }
+    }
+
+    private static void update(Node node) {
+        node.mSize = size(node.mLeft) + size(node.mRight) + 1;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.mSize;
+    }
+
+    private static Node first(Node node) {
+        if (node != null) {
+            while (node.mLeft != null) {
+                node = node.mLeft;
+            }
+        }
+        return node;
+    }
+
+    private static Node successor(Node node) {
+        if (node.mRight != null) {
+            return first(node.mRight);
+        }
+        while (node.mParent != null && node.mParent.mRight == node) {
+            node = node.mParent;
+        }
+        return node.mParent;
+    }
+}
@@ -0,0 +1,288 @@
+/* == This file is part of Tomahawk Player - <http://tomahawk-player.org> ===
+ *
+ *   Copyright 2015, Enno Gottschalk <mrmaffen@googlemail.com>
+ *
+ *   Tomahawk is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Tomahawk is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Tomahawk. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tomahawk.libtomahawk.collection;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The cache that interns all {@link Cacheable}s of a single class. Depending on the cache's value
+ * strength, every cached object is either being held strongly for as long as the app is running,
+ * or referenced weakly (or softly), so that it can be collected once it isn't being used anymore.
+ * In the latter case the most recently used objects are additionally being held strongly up to a
+ * maximum size, so that objects that are being looked up again shortly after they have been
+ * created don't have to be rebuilt. Pinned objects are being held strongly until they are being
+ * unpinned.
+ */
+public class InterningCache {
+
+    public static final int VALUES_STRONG = 0;
+
+    public static final int VALUES_WEAK = 1;
+
+    public static final int VALUES_SOFT = 2;
+
+    /**
+     * The number of independently locked parts of the set of recently used objects, so that
+     * concurrent lookups rarely have to wait for each other
+     */
+    private static final int STRIPE_COUNT = 16;
+
+    private final int mMaxSize;
+
+    private final int mValueStrength;
+
+    private final ConcurrentHashMap<String, CachedValue> mValues = new ConcurrentHashMap<>();
+
+    private final ReferenceQueue<Cacheable> mReferenceQueue = new ReferenceQueue<>();
+
+    private final RecentlyUsed[] mRecentlyUsed;
+
+    private final Map<Cacheable, Integer> mPinCounts = new HashMap<>();
+
+    private final AtomicLong mHitCount = new AtomicLong();
+
+    private final AtomicLong mMissCount = new AtomicLong();
+
+    private final AtomicLong mEvictionCount = new AtomicLong();
+
+    private interface CachedValue {
+
+        Cacheable get();
+    }
+
+    private interface KeyedReference {
+
+        String getKey();
+    }
+
+    private static class StrongValue implements CachedValue {
+
+        private final Cacheable mValue;
+
+        public StrongValue(Cacheable value) {
+            mValue = value;
+        }
+
+        @Override
+        public Cacheable get() {
+            return mValue;
+        }
+    }
+
+    private static class KeyedWeakReference extends WeakReference<Cacheable>
+            implements KeyedReference, CachedValue {
+
+        private final String mKey;
+
+        public KeyedWeakReference(String key, Cacheable referent, ReferenceQueue<Cacheable> q) {
+            super(referent, q);
+            mKey = key;
+        }
+
+        @Override
+        public String getKey() {
+            return mKey;
+        }
+    }
+
+    private static class KeyedSoftReference extends SoftReference<Cacheable>
+            implements KeyedReference, CachedValue {
+
+        private final String mKey;
+
+        public KeyedSoftReference(String key, Cacheable referent, ReferenceQueue<Cacheable> q) {
+            super(referent, q);
+            mKey = key;
+        }
+
+        @Override
+        public String getKey() {
+            return mKey;
+        }
+    }
+
+    /**
+     * One stripe of the recently used objects in access order. Every stripe has to be locked on
+     * its own.
+     */
+    private class RecentlyUsed extends LinkedHashMap<String, Cacheable> {
+
+        private final int mStripeMaxSize;
+
+        public RecentlyUsed(int stripeMaxSize) {
+            super(16, 0.75f, true);
+            mStripeMaxSize = stripeMaxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Cacheable> eldest) {
+            if (size() > mStripeMaxSize) {
+                mEvictionCount.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Constructs a cache that holds all of its objects strongly
+     */
+    public InterningCache() {
+        this(0, VALUES_STRONG);
+    }
+
+    /**
+     * @param maxSize       the maximum number of recently used objects that are being held
+     *                      strongly, if the values aren't strong anyway
+     * @param valueStrength {@link #VALUES_STRONG}, {@link #VALUES_WEAK} or {@link #VALUES_SOFT}.
+     *                      Soft values are being kept around until memory is running low.
+     */
+    public InterningCache(int maxSize, int valueStrength) {
+        mMaxSize = maxSize;
+        mValueStrength = valueStrength;
+        if (valueStrength == VALUES_STRONG) {
+            mRecentlyUsed = new RecentlyUsed[0];
+        } else {
+            mRecentlyUsed = new RecentlyUsed[STRIPE_COUNT];
+            int stripeMaxSize = (maxSize + STRIPE_COUNT - 1) / STRIPE_COUNT;
+            for (int i = 0; i < mRecentlyUsed.length; i++) {
+                mRecentlyUsed[i] = new RecentlyUsed(stripeMaxSize);
+            }
+        }
+    }
+
+    public Cacheable get(String key) {
+        CachedValue value = mValues.get(key);
+        Cacheable cacheable = value != null ? value.get() : null;
+        if (cacheable != null) {
+            mHitCount.incrementAndGet();
+            markRecentlyUsed(key, cacheable);
+        } else {
+            mMissCount.incrementAndGet();
+        }
+        return cacheable;
+    }
+
+    public void put(String key, Cacheable cacheable) {
+        purgeCollected();
+        CachedValue value;
+        if (mValueStrength == VALUES_SOFT) {
+            value = new KeyedSoftReference(key, cacheable, mReferenceQueue);
+        } else if (mValueStrength == VALUES_WEAK) {
+            value = new KeyedWeakReference(key, cacheable, mReferenceQueue);
+        } else {
+            value = new StrongValue(cacheable);
+        }
+        mValues.put(key, value);
+        markRecentlyUsed(key, cacheable);
+    }
+
+    private void markRecentlyUsed(String key, Cacheable cacheable) {
+        if (mRecentlyUsed.length > 0) {
+            RecentlyUsed stripe =
+                    mRecentlyUsed[(key.hashCode() & Integer.MAX_VALUE) % mRecentlyUsed.length];
+            synchronized (stripe) {
+                stripe.put(key, cacheable);
+            }
+        }
+    }
+
+    /**
+     * Holds the given {@link Cacheable} strongly until {@link #unpin(Cacheable)} has been called
+     * as many times as this method.
+     */
+    public void pin(Cacheable cacheable) {
+        synchronized (mPinCounts) {
+            Integer count = mPinCounts.get(cacheable);
+            mPinCounts.put(cacheable, count == null ? 1 : count + 1);
+        }
+    }
+
+    public void unpin(Cacheable cacheable) {
+        synchronized (mPinCounts) {
+            Integer count = mPinCounts.get(cacheable);
+            if (count != null) {
+                if (count > 1) {
+                    mPinCounts.put(cacheable, count - 1);
+                } else {
+                    mPinCounts.remove(cacheable);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of objects that are currently being cached, including the ones that
+     * have been collected but not yet purged
+     */
+    public int size() {
+        return mValues.size();
+    }
+
+    public long getHitCount() {
+        return mHitCount.get();
+    }
+
+    public long getMissCount() {
+        return mMissCount.get();
+    }
+
+    /**
+     * @return the number of objects that have been dropped from the set of strongly held, recently
+     * used objects
+     */
+    public long getEvictionCount() {
+        return mEvictionCount.get();
+    }
+
+    @Override
+    public String toString() {
+        int recentlyUsedCount = 0;
+        for (RecentlyUsed stripe : mRecentlyUsed) {
+            synchronized (stripe) {
+                recentlyUsedCount += stripe.size();
+            }
+        }
+        int pinnedCount;
+        synchronized (mPinCounts) {
+            pinnedCount = mPinCounts.size();
+        }
+        return "size: " + size() + ", recently used: " + recentlyUsedCount + "/" + mMaxSize
+                + ", pinned: " + pinnedCount + ", hits: " + getHitCount()
+                + ", misses: " + getMissCount() + ", evictions: " + getEvictionCount();
+    }
+
+    /**
+     * Removes the entries of all objects that have been garbage collected
+     */
+    private void purgeCollected() {
+        Reference<? extends Cacheable> reference;
+        while ((reference = mReferenceQueue.poll()) != null) {
+            // Only remove the entry if it hasn't been replaced in the meantime
+            mValues.remove(((KeyedReference) reference).getKey(), reference);
+        }
+    }
+}
@@ -46,9 +46,13 @@ public class Playlist extends Cacheable implements AlphaComparable {
 
     private Map<PlaylistEntry, Index> mCachedEntries = new HashMap<>();
 
-    private List<Index> mIndex = new ArrayList<>();
+    /**
+     * The order of this {@link Playlist}'s entries. Allows to look up an entry's position and the
+     * entry at a position in O(log n).
+     */
+    private IndexedTreeList<Index> mIndex = new IndexedTreeList<>();
 
-    private static class Index {
+    private static class Index extends IndexedTreeList.Node {
 
         protected Index(int index, boolean fromMergedItems) {
             mIndex = index;
@@ -23,6 +23,7 @@ import org.jdeferred.Promise;
 import org.tomahawk.libtomahawk.database.CollectionDb;
 import org.tomahawk.libtomahawk.database.CollectionDbManager;
 import org.tomahawk.libtomahawk.database.DatabaseHelper;
+import org.tomahawk.libtomahawk.database.MediaIndex;
 import org.tomahawk.libtomahawk.resolver.Query;
 import org.tomahawk.libtomahawk.resolver.UserCollectionStubResolver;
 import org.tomahawk.libtomahawk.resolver.models.ScriptResolverTrack;
@@ -36,6 +37,7 @@ import org.videolan.libvlc.Media;
 import org.videolan.libvlc.util.Extensions;
 
 import android.content.SharedPreferences;
+import android.database.Cursor;
 import android.os.Environment;
 import android.os.Looper;
 import android.os.Message;
@@ -51,6 +53,7 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -59,7 +62,13 @@ import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
 import java.util.StringTokenizer;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import de.greenrobot.event.EventBus;
 
@@ -100,7 +109,45 @@ public class UserCollection extends DbCollection {
         }
     }
 
-    private boolean mIsStopping = false;
+    /**
+     * The number of parsed media items that are being written to the database in a single
+     * transaction
+     */
+    private static final int WRITE_BATCH_SIZE = 100;
+
+    /**
+     * The time in ms after which the parsed media items are being written to the database, even if
+     * the batch isn't full
+     */
+    private static final int WRITE_INTERVAL = 500;
+
+    /**
+     * The minimum time in ms between two {@link ScanProgressEvent}s
+     */
+    private static final int PROGRESS_INTERVAL = 500;
+
+    private static final int MAX_PARSER_THREADS = 8;
+
+    public static class ScanProgressEvent {
+
+        /**
+         * The number of media files that have been found so far
+         */
+        public int mFoundCount;
+
+        /**
+         * The number of media files that have been processed so far
+         */
+        public int mProcessedCount;
+
+        /**
+         * The number of processed media files per second
+         */
+        public float mThroughput;
+
+    }
+
+    private volatile boolean mIsStopping = false;
 
     private boolean mRestart = false;
 
@@ -162,6 +209,14 @@ public class UserCollection extends DbCollection {
 
     private class GetMediaItemsRunnable implements Runnable {
 
+        private final long mStartTime = System.currentTimeMillis();
+
+        private final AtomicInteger mFoundCount = new AtomicInteger();
+
+        private final AtomicInteger mProcessedCount = new AtomicInteger();
+
+        private final AtomicLong mLastProgressTime = new AtomicLong();
+
         @Override
         public void run() {
             SharedPreferences preferences =
@@ -182,16 +237,30 @@ public class UserCollection extends DbCollection {
             Stack<File> directories = new Stack<>();
             directories.addAll(mediaDirs);
 
-            // get all existing media items
-            HashMap<String, MediaWrapper> existingMedias = DatabaseHelper.get().getMedias();
-
-            // list of all added files
-            HashSet<String> addedLocations = new HashSet<>();
-
-            ArrayList<File> mediaToScan = new ArrayList<>();
+            // get the location, lastModified timestamp and type of all existing media items
+            final MediaIndex existingMedias = DatabaseHelper.get().getMediaIndex();
+
+            // list of all files that have been handed to the parsers or found in the database
+            HashSet<String> seenLocations = new HashSet<>();
+
+            // all media items that have been parsed during this scan
+            final List<MediaWrapper> parsedMediaWrappers =
+                    Collections.synchronizedList(new ArrayList<MediaWrapper>());
+            // Parsing is mostly waiting for I/O, so we use more threads than there are cores
+            int parserCount = Math.max(2,
+                    Math.min(Runtime.getRuntime().availableProcessors() * 2, MAX_PARSER_THREADS));
+            // The bounded queue makes the directory walker parse files itself once the parsers
+            // fall behind, so that the list of pending files doesn't grow without bounds
+            ThreadPoolExecutor parsers = new ThreadPoolExecutor(parserCount, parserCount, 0L,
+                    TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(parserCount * 4),
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+            final MediaWriter writer = new MediaWriter();
+            Thread writerThread = new Thread(writer);
+            writerThread.start();
+            CollectionDb.Changeset changeset = null;
             try {
                 final HashSet<String> directoriesScanned = new HashSet<>();
-                // Count total files, and stack them
+                // Walk through all directories and hand every new or modified file to the parsers
                 while (!directories.isEmpty()) {
                     File dir = directories.pop();
                     String dirPath = dir.getAbsolutePath();
@@ -224,9 +293,40 @@ public class UserCollection extends DbCollection {
                     try {
                         File[] f = dir.listFiles(new MediaItemFilter());
                         if (f != null) {
-                            for (File file : f) {
+                            for (final File file : f) {
                                 if (file.isFile()) {
-                                    mediaToScan.add(file);
+                                    final String fileURI = LibVLC.PathToURI(file.getPath());
+                                    // only add file if it is not already in the list. eg. if a
+                                    // user selects a subfolder as well
+                                    if (!seenLocations.add(fileURI)) {
+                                        continue;
+                                    }
+                                    mFoundCount.incrementAndGet();
+                                    final int slot = existingMedias.indexOf(fileURI);
+                                    if (slot >= 0 && existingMedias.getLastModified(slot)
+                                            == file.lastModified()) {
+                                        // keep the existing media item in the database, since
+                                        // the file hasn't changed
+                                        existingMedias.markUnchanged(slot);
+                                        onProcessed();
+                                    } else {
+                                        // create new media item or re-parse the modified file
+                                        parsers.execute(new Runnable() {
+                                            @Override
+                                            public void run() {
+                                                MediaWrapper mw = parse(file, fileURI);
+                                                if (mw != null) {
+                                                    parsedMediaWrappers.add(mw);
+                                                    if (slot >= 0) {
+                                                        existingMedias.markSeen(slot);
+                                                    }
+                                                    // Add or replace this item in the database
+                                                    writer.add(mw);
+                                                }
+                                                onProcessed();
+                                            }
+                                        });
+                                    }
                                 } else if (file.isDirectory()) {
                                     directories.push(file);
                                 }
@@ -244,50 +344,37 @@ public class UserCollection extends DbCollection {
                         return;
                     }
                 }
-                ArrayList<MediaWrapper> mediaWrappers = new ArrayList<>();
-                // Process the stacked items
-                for (File file : mediaToScan) {
-                    String fileURI = LibVLC.PathToURI(file.getPath());
-                    if (existingMedias.containsKey(fileURI)) {
-                        // only add file if it is not already in the list. eg. if a user selects a
-                        // subfolder as well
-                        if (!addedLocations.contains(fileURI)) {
-                            // get existing media item from database
-                            mediaWrappers.add(existingMedias.get(fileURI));
-                            addedLocations.add(fileURI);
-                        }
-                    } else {
-                        // create new media item
-                        final Media media = new Media(
-                                VLCMediaPlayer.get().getLibVlcInstance(), fileURI);
-                        media.parse();
-                        media.release();
-                        // skip files with .mod extension and no duration
-                        if ((media.getDuration() == 0 || (media.getTrackCount() != 0
-                                && TextUtils.isEmpty(media.getTrack(0).codec)))
-                                && fileURI.endsWith(".mod")) {
-                            continue;
+                parsers.shutdown();
+                try {
+                    while (!parsers.awaitTermination(1, TimeUnit.SECONDS)) {
+                        if (mIsStopping) {
+                            Log.d(TAG, "Stopping scan");
+                            return;
                         }
-                        MediaWrapper mw = new MediaWrapper(media);
-                        mw.setLastModified(file.lastModified());
-                        mediaWrappers.add(mw);
-                        // Add this item to database
-                        DatabaseHelper.get().addMedia(mw);
-                    }
-                    if (mIsStopping) {
-                        Log.d(TAG, "Stopping scan");
-                        return;
                     }
+                } catch (InterruptedException e) {
+                    Log.e(TAG, "GetMediaItemsRunnable#run() - " + e.getClass() + ": "
+                            + e.getLocalizedMessage());
+                    return;
+                }
+                if (mIsStopping) {
+                    Log.d(TAG, "Stopping scan");
+                    return;
                 }
-                processMediaWrappers(mediaWrappers);
+                // Make sure that all parsed media items have been written before going on
+                finishWriter(writer, writerThread);
+                postProgress(true);
+                changeset = processMediaWrappers(new ArrayList<>(parsedMediaWrappers),
+                        existingMedias);
             } finally {
+                parsers.shutdownNow();
+                // Whatever has been parsed until now is being written in any case
+                finishWriter(writer, writerThread);
+
                 // remove old files & folders from database if storage is mounted
                 if (!mIsStopping && Environment.getExternalStorageState()
                         .equals(Environment.MEDIA_MOUNTED)) {
-                    for (String fileURI : addedLocations) {
-                        existingMedias.remove(fileURI);
-                    }
-                    DatabaseHelper.get().removeMedias(existingMedias.keySet());
+                    DatabaseHelper.get().removeMediasByRowIds(existingMedias.getUnseenRowIds());
                 }
 
                 if (mRestart) {
@@ -295,48 +382,211 @@ public class UserCollection extends DbCollection {
                     mRestart = false;
                     mRestartHandler.sendEmptyMessageDelayed(1, 200);
                 }
-                EventBus.getDefault().post(new CollectionManager.UpdatedEvent());
+                CollectionManager.UpdatedEvent event = new CollectionManager.UpdatedEvent();
+                event.mCollection = UserCollection.this;
+                event.mChangeset = changeset;
+                EventBus.getDefault().post(event);
+            }
+        }
+
+        /**
+         * Parses the metadata of the given media file. Is being called by the parser threads.
+         *
+         * @return the parsed {@link MediaWrapper} or null, if the file should be skipped
+         */
+        private MediaWrapper parse(File file, String fileURI) {
+            if (mIsStopping) {
+                return null;
+            }
+            final Media media = new Media(VLCMediaPlayer.get().getLibVlcInstance(), fileURI);
+            media.parse();
+            media.release();
+            // skip files with .mod extension and no duration
+            if ((media.getDuration() == 0 || (media.getTrackCount() != 0
+                    && TextUtils.isEmpty(media.getTrack(0).codec)))
+                    && fileURI.endsWith(".mod")) {
+                return null;
             }
+            MediaWrapper mw = new MediaWrapper(media);
+            mw.setLastModified(file.lastModified());
+            return mw;
         }
 
-        private void processMediaWrappers(List<MediaWrapper> mws) {
-            Map<String, Set<String>> albumArtistsMap = new HashMap<>();
-            Map<String, Album> albumMap = new HashMap<>();
-            for (MediaWrapper mw : mws) {
+        private void onProcessed() {
+            mProcessedCount.incrementAndGet();
+            postProgress(false);
+        }
+
+        /**
+         * Posts a {@link ScanProgressEvent}, unless the last one has been posted less than {@link
+         * #PROGRESS_INTERVAL} ms ago
+         *
+         * @param force whether or not the {@link ScanProgressEvent} should be posted in any case
+         */
+        private void postProgress(boolean force) {
+            long now = System.currentTimeMillis();
+            long lastProgressTime = mLastProgressTime.get();
+            if (!force && (now - lastProgressTime < PROGRESS_INTERVAL
+                    || !mLastProgressTime.compareAndSet(lastProgressTime, now))) {
+                return;
+            }
+            ScanProgressEvent event = new ScanProgressEvent();
+            event.mFoundCount = mFoundCount.get();
+            event.mProcessedCount = mProcessedCount.get();
+            event.mThroughput = event.mProcessedCount * 1000F / Math.max(1, now - mStartTime);
+            EventBus.getDefault().post(event);
+        }
+
+        private void finishWriter(MediaWriter writer, Thread writerThread) {
+            writer.finish();
+            try {
+                writerThread.join();
+            } catch (InterruptedException e) {
+                Log.e(TAG, "finishWriter - " + e.getClass() + ": " + e.getLocalizedMessage());
+            }
+        }
+
+        /**
+         * Applies the result of the scan to the {@link CollectionDb}. Only the albums that contain
+         * at least one added, modified or removed track are being rewritten. {@link
+         * MediaWrapper}s of unchanged files are only being loaded from the database if they are
+         * part of such an album.
+         *
+         * @param parsedMws all {@link MediaWrapper}s that have been parsed during the scan
+         * @param index     the {@link MediaIndex} of all media items that existed before the
+         *                  scan, in which all unchanged files have been marked
+         * @return the {@link CollectionDb.Changeset} describing all changes that have been made
+         */
+        private CollectionDb.Changeset processMediaWrappers(List<MediaWrapper> parsedMws,
+                MediaIndex index) {
+            CollectionDb db = CollectionDbManager.get().getCollectionDb(getId());
+            List<MediaWrapper> audioMws = new ArrayList<>();
+            Set<String> audioLocations = new HashSet<>();
+            for (MediaWrapper mw : parsedMws) {
                 if (mw.getType() == MediaWrapper.TYPE_AUDIO) {
-                    String albumKey = mw.getAlbum() != null ? mw.getAlbum().toLowerCase() : "";
-                    if (albumArtistsMap.get(albumKey) == null) {
-                        albumArtistsMap.put(albumKey, new HashSet<String>());
+                    audioMws.add(mw);
+                    audioLocations.add(mw.getLocation());
+                }
+            }
+            List<Integer> unchangedSlots = index.getUnchangedSlots(MediaWrapper.TYPE_AUDIO);
+            if (!db.hasTracks()) {
+                Log.d(TAG, "processMediaWrappers - CollectionDb is empty, doing a full import");
+                List<Long> rowIds = new ArrayList<>();
+                for (int slot : unchangedSlots) {
+                    rowIds.add(index.getRowId(slot));
+                }
+                audioMws.addAll(DatabaseHelper.get().getMedias(rowIds));
+                CollectionDb.Changeset changeset = db.wipe();
+                changeset.merge(db.addTracks(toScriptResolverTracks(audioMws)));
+                return changeset;
+            }
+
+            // get the lastModified timestamp and the album of all tracks in the CollectionDb
+            Map<String, Long> storedLastModifieds = new HashMap<>();
+            Map<String, String> storedAlbums = new HashMap<>();
+            Cursor cursor = db.tracks(null, null, new String[]{CollectionDb.TRACKS_URL,
+                    CollectionDb.TRACKS_LASTMODIFIED, CollectionDb.ALBUMS_ALBUM});
+            try {
+                while (cursor.moveToNext()) {
+                    storedLastModifieds.put(cursor.getString(0), cursor.getLong(1));
+                    storedAlbums.put(cursor.getString(0), cursor.getString(2));
+                }
+            } finally {
+                cursor.close();
+            }
+
+            // collect all albums that contain at least one added, modified or removed track
+            Set<String> affectedAlbums = new HashSet<>();
+            for (MediaWrapper mw : audioMws) {
+                Long lastModified = storedLastModifieds.get(mw.getLocation());
+                if (lastModified == null || lastModified != mw.getLastModified()) {
+                    affectedAlbums.add(albumName(mw));
+                    String storedAlbum = storedAlbums.get(mw.getLocation());
+                    if (storedAlbum != null) {
+                        affectedAlbums.add(storedAlbum);
                     }
-                    albumArtistsMap.get(albumKey).add(mw.getArtist());
-                    int artistCount = albumArtistsMap.get(albumKey).size();
-                    if (artistCount == 1) {
-                        Artist artist = Artist.get(mw.getArtist());
-                        albumMap.put(albumKey, Album.get(mw.getAlbum(), artist));
-                    } else if (artistCount == 2) {
-                        albumMap.put(albumKey, Album.get(mw.getAlbum(), Artist.COMPILATION_ARTIST));
+                }
+            }
+            // the rowids of all unchanged files whose track in the CollectionDb is out of date
+            List<Long> outdatedRowIds = new ArrayList<>();
+            Set<Integer> storedSlots = new HashSet<>();
+            for (Map.Entry<String, Long> entry : storedLastModifieds.entrySet()) {
+                if (audioLocations.contains(entry.getKey())) {
+                    continue;
+                }
+                int slot = index.indexOf(entry.getKey());
+                if (slot < 0 || !index.isUnchanged(slot)
+                        || index.getType(slot) != MediaWrapper.TYPE_AUDIO) {
+                    // the file has been removed
+                    affectedAlbums.add(storedAlbums.get(entry.getKey()));
+                } else {
+                    storedSlots.add(slot);
+                    if (entry.getValue() != index.getLastModified(slot)) {
+                        affectedAlbums.add(storedAlbums.get(entry.getKey()));
+                        outdatedRowIds.add(index.getRowId(slot));
                     }
                 }
             }
-            List<ScriptResolverTrack> tracks = new ArrayList<>();
-            for (MediaWrapper mw : mws) {
-                if (mw.getType() == MediaWrapper.TYPE_AUDIO) {
-                    ScriptResolverTrack track = new ScriptResolverTrack();
-                    track.album = mw.getAlbum();
-                    track.albumArtist = mw.getAlbumArtist();
-                    track.track = mw.getTitle();
-                    track.artist = mw.getArtist();
-                    track.duration = mw.getLength() / 1000;
-                    track.albumPos = mw.getTrackNumber();
-                    track.url = mw.getLocation();
-                    track.imagePath = mw.getArtworkURL();
-                    track.lastModified = mw.getLastModified();
-                    tracks.add(track);
+            for (int slot : unchangedSlots) {
+                if (!storedSlots.contains(slot)) {
+                    outdatedRowIds.add(index.getRowId(slot));
                 }
             }
-            CollectionDb db = CollectionDbManager.get().getCollectionDb(getId());
-            db.wipe();
-            db.addTracks(tracks.toArray(new ScriptResolverTrack[tracks.size()]));
+            for (MediaWrapper mw : DatabaseHelper.get().getMedias(outdatedRowIds)) {
+                affectedAlbums.add(albumName(mw));
+            }
+            affectedAlbums.remove(null);
+            if (affectedAlbums.isEmpty()) {
+                Log.d(TAG, "processMediaWrappers - CollectionDb is up to date");
+                return db.updateTracks(new ArrayList<String>(), new ScriptResolverTrack[0]);
+            }
+
+            List<String> removedLocations = new ArrayList<>();
+            for (Map.Entry<String, String> entry : storedAlbums.entrySet()) {
+                if (affectedAlbums.contains(entry.getValue())) {
+                    removedLocations.add(entry.getKey());
+                }
+            }
+            List<MediaWrapper> addedMws = new ArrayList<>();
+            for (MediaWrapper mw : audioMws) {
+                if (affectedAlbums.contains(albumName(mw))) {
+                    addedMws.add(mw);
+                }
+            }
+            for (MediaWrapper mw : DatabaseHelper.get()
+                    .getMediasByAlbums(MediaWrapper.TYPE_AUDIO, affectedAlbums)) {
+                int slot = index.indexOf(mw.getLocation());
+                if (slot >= 0 && index.isUnchanged(slot)) {
+                    addedMws.add(mw);
+                }
+            }
+            Log.d(TAG, "processMediaWrappers - rewriting " + affectedAlbums.size() + " albums, "
+                    + "removing " + removedLocations.size() + " and adding " + addedMws.size()
+                    + " tracks");
+            return db.updateTracks(removedLocations, toScriptResolverTracks(addedMws));
+        }
+
+        private String albumName(MediaWrapper mw) {
+            return mw.getAlbum() != null ? mw.getAlbum() : "";
+        }
+
+        private ScriptResolverTrack[] toScriptResolverTracks(List<MediaWrapper> mws) {
+            ScriptResolverTrack[] tracks = new ScriptResolverTrack[mws.size()];
+            for (int i = 0; i < mws.size(); i++) {
+                MediaWrapper mw = mws.get(i);
+                ScriptResolverTrack track = new ScriptResolverTrack();
+                track.album = mw.getAlbum();
+                track.albumArtist = mw.getAlbumArtist();
+                track.track = mw.getTitle();
+                track.artist = mw.getArtist();
+                track.duration = mw.getLength() / 1000;
+                track.albumPos = mw.getTrackNumber();
+                track.url = mw.getLocation();
+                track.imagePath = mw.getArtworkURL();
+                track.lastModified = mw.getLastModified();
+                tracks[i] = track;
+            }
+            return tracks;
         }
     }
 
@@ -352,6 +602,56 @@ public class UserCollection extends DbCollection {
         return mAlbumTimeStamps;
     }
 
+    /**
+     * Writes the parsed media items to the database in batches, so that not every single item
+     * needs its own transaction
+     */
+    private static class MediaWriter implements Runnable {
+
+        private final LinkedBlockingQueue<MediaWrapper> mQueue = new LinkedBlockingQueue<>();
+
+        private volatile boolean mFinished;
+
+        public void add(MediaWrapper mw) {
+            mQueue.add(mw);
+        }
+
+        /**
+         * Writes all remaining media items and stops this {@link MediaWriter}
+         */
+        public void finish() {
+            mFinished = true;
+        }
+
+        @Override
+        public void run() {
+            List<MediaWrapper> batch = new ArrayList<>();
+            while (true) {
+                MediaWrapper mw = null;
+                try {
+                    mw = mQueue.poll(WRITE_INTERVAL, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Log.e(TAG, "MediaWriter#run() - " + e.getClass() + ": "
+                            + e.getLocalizedMessage());
+                    mFinished = true;
+                }
+                if (mw != null) {
+                    batch.add(mw);
+                    mQueue.drainTo(batch, WRITE_BATCH_SIZE - batch.size());
+                }
+                boolean finished = mFinished && mQueue.isEmpty();
+                if (!batch.isEmpty() && (batch.size() >= WRITE_BATCH_SIZE || mw == null
+                        || finished)) {
+                    DatabaseHelper.get().addMedias(batch);
+                    batch.clear();
+                }
+                if (finished && batch.isEmpty()) {
+                    return;
+                }
+            }
+        }
+    }
+
     private final RestartHandler mRestartHandler = new RestartHandler(this);
 
     private static class RestartHandler extends WeakReferenceHandler<UserCollection> {
@@ -0,0 +1,122 @@
+/* == This file is part of Tomahawk Player - <http://tomahawk-player.org> ===
+ *
+ *   Copyright 2015, Enno Gottschalk <mrmaffen@googlemail.com>
+ *
+ *   Tomahawk is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Tomahawk is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Tomahawk. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tomahawk.libtomahawk.database;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+/**
+ * The base of the databases that cache a bounded number of entries in a single table. Once more
+ * than the maximum number of entries have been stored, the entries with the lowest value in the
+ * eviction column (e.g. the time they have been accessed last) are being evicted first.
+ */
+public abstract class BoundedCacheDb extends SQLiteOpenHelper {
+
+    public static final String TAG = BoundedCacheDb.class.getSimpleName();
+
+    /**
+     * The number of stored entries after which the size bound is being enforced again
+     */
+    private static final int TRIM_INTERVAL = 500;
+
+    protected final SQLiteDatabase mDb;
+
+    protected final Object mWriteLock = new Object();
+
+    private final String mTable;
+
+    private final String mEvictionColumn;
+
+    private final int mMaxEntries;
+
+    private int mPutsSinceTrim;
+
+    /**
+     * @param table          the table that contains the cached entries
+     * @param evictionColumn the column by which the entries are being evicted. Entries with
+     *                       lower values are being evicted first.
+     * @param maxEntries     the maximum number of entries that are being kept
+     */
+    protected BoundedCacheDb(Context context, String dbName, int dbVersion, String table,
+            String evictionColumn, int maxEntries) {
+        super(context, dbName, null, dbVersion);
+
+        mTable = table;
+        mEvictionColumn = evictionColumn;
+        mMaxEntries = maxEntries;
+        mDb = getWritableDatabase();
+        mDb.enableWriteAheadLogging();
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        Log.d(TAG, "Upgrading database from version " + oldVersion + " to " + newVersion
+                + ", which might destroy all old data");
+        db.execSQL("DROP TABLE IF EXISTS `" + mTable + "`;");
+        onCreate(db);
+    }
+
+    /**
+     * Has to be called after the given number of entries have been stored, so that the size
+     * bound is being enforced again every {@link #TRIM_INTERVAL} entries
+     */
+    protected void onEntriesPut(int count) {
+        boolean trim;
+        synchronized (mWriteLock) {
+            mPutsSinceTrim += count;
+            trim = mPutsSinceTrim >= TRIM_INTERVAL;
+        }
+        if (trim) {
+            trim();
+        }
+    }
+
+    /**
+     * Called while trimming, before the size bound is being enforced. Can be overridden to remove
+     * entries that have expired. Is being called while holding mWriteLock.
+     */
+    protected void onTrim() {
+    }
+
+    /**
+     * Evicts the entries with the lowest value in the eviction column until no more than the
+     * maximum number of entries are left.
+     */
+    public void trim() {
+        synchronized (mWriteLock) {
+            mPutsSinceTrim = 0;
+            try {
+                onTrim();
+                mDb.execSQL("DELETE FROM " + mTable + " WHERE rowid IN (SELECT rowid FROM "
+                        + mTable + " ORDER BY " + mEvictionColumn + " DESC LIMIT -1"
+                        + " OFFSET " + mMaxEntries + ")");
+            } catch (RuntimeException e) {
+                Log.e(TAG, "trim - " + e.getClass() + ": " + e.getLocalizedMessage());
+            }
+        }
+    }
+
+    public void wipe() {
+        synchronized (mWriteLock) {
+            mDb.delete(mTable, null, null);
+            mPutsSinceTrim = 0;
+        }
+    }
+}
@@ -21,22 +21,28 @@ import org.tomahawk.libtomahawk.collection.Artist;
 import org.tomahawk.libtomahawk.resolver.models.ScriptResolverTrack;
 import org.tomahawk.tomahawk_android.TomahawkApp;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.preference.PreferenceManager;
+import android.text.TextUtils;
 import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import de.greenrobot.event.EventBus;
+
 public class CollectionDb extends SQLiteOpenHelper {
 
     public static final String TAG = CollectionDb.class.getSimpleName();
@@ -160,9 +166,23 @@ public class CollectionDb extends SQLiteOpenHelper {
 
     private static final String LAST_COLLECTION_DB_UPDATE_SUFFIX = "_last_collection_db_update";
 
+    private final String mCollectionId;
+
     private final String mLastUpdateStorageKey;
 
-    private boolean mInitialized = false;
+    /**
+     * Serializes all writes. Reads don't take this lock, they are being served by the read
+     * connections of the write-ahead log and see the last committed state.
+     */
+    private final Object mWriteLock = new Object();
+
+    /**
+     * The merged {@link Changeset} of the running batch, or null if no batch is running. Guarded
+     * by mWriteLock.
+     */
+    private Changeset mBatchChangeset;
+
+    private volatile boolean mInitialized = false;
 
     public static class WhereInfo {
 
@@ -172,6 +192,45 @@ public class CollectionDb extends SQLiteOpenHelper {
 
     }
 
+    /**
+     * Describes which tracks have been added to or removed from a {@link CollectionDb} by a single
+     * call to {@link #addTracks}, {@link #removeTracks}, {@link #updateTracks} or {@link #wipe}.
+     */
+    public static class Changeset {
+
+        public boolean wiped;
+
+        public Set<Integer> addedTrackIds = new HashSet<>();
+
+        public Set<Integer> removedTrackIds = new HashSet<>();
+
+        public void merge(Changeset changeset) {
+            if (changeset.wiped) {
+                wiped = true;
+                addedTrackIds.clear();
+                removedTrackIds.clear();
+            }
+            for (Integer trackId : changeset.removedTrackIds) {
+                if (!addedTrackIds.remove(trackId)) {
+                    removedTrackIds.add(trackId);
+                }
+            }
+            addedTrackIds.addAll(changeset.addedTrackIds);
+        }
+
+        public boolean isEmpty() {
+            return !wiped && addedTrackIds.isEmpty() && removedTrackIds.isEmpty();
+        }
+    }
+
+    public static class TracksUpdatedEvent {
+
+        public String mCollectionId;
+
+        public Changeset mChangeset;
+
+    }
+
     private static class JoinInfo {
 
         String table;
@@ -183,10 +242,13 @@ public class CollectionDb extends SQLiteOpenHelper {
     public CollectionDb(Context context, String collectionId) {
         super(context, collectionId + DB_FILE_SUFFIX, null, DB_VERSION);
 
+        mCollectionId = collectionId;
         mLastUpdateStorageKey = collectionId + LAST_COLLECTION_DB_UPDATE_SUFFIX;
 
         close();
         mDb = getWritableDatabase();
+        // Allow reads to happen on their own connections while a write transaction is in progress
+        mDb.enableWriteAheadLogging();
     }
 
     public String getLastUpdateStorageKey() {
@@ -228,13 +290,24 @@ public class CollectionDb extends SQLiteOpenHelper {
         return mInitialized;
     }
 
-    public synchronized void addTracks(ScriptResolverTrack[] tracks) {
+    public Changeset addTracks(ScriptResolverTrack[] tracks) {
+        synchronized (mWriteLock) {
+            return postChangeset(doAddTracks(tracks));
+        }
+    }
+
+    private Changeset doAddTracks(ScriptResolverTrack[] tracks) {
         long time = System.currentTimeMillis();
-        mDb.beginTransaction();
+        Changeset changeset = new Changeset();
 
         // Check if we want to store the album as a compilation album (with artist "Various Artists")
+        // and determine the latest lastModified timestamp of every artist and album
         Map<String, Set<String>> albumArtists = new HashMap<>();
-        for (ScriptResolverTrack track : tracks) {
+        Map<String, Long> artistLastModifiedMap = new HashMap<>();
+        Map<String, Long> albumLastModifiedMap = new HashMap<>();
+        String[] artistKeys = new String[tracks.length];
+        for (int i = 0; i < tracks.length; i++) {
+            ScriptResolverTrack track = tracks[i];
             if (track.artist == null) {
                 track.artist = "";
             }
@@ -261,167 +334,380 @@ public class CollectionDb extends SQLiteOpenHelper {
             if (artists.size() < 2) {
                 artists.add(track.artist);
             }
+            artistKeys[i] = concatKeys(track.artist, track.artistDisambiguation);
+            storeMax(artistLastModifiedMap, artistKeys[i], track.lastModified);
+            storeMax(albumLastModifiedMap, track.album, track.lastModified);
+        }
+        long compilationLastModified = 0;
+        for (Map.Entry<String, Set<String>> entry : albumArtists.entrySet()) {
+            if (entry.getValue().size() > 1) {
+                compilationLastModified = Math.max(compilationLastModified,
+                        albumLastModifiedMap.get(entry.getKey()));
+            }
         }
 
-        Map<String, Long> mArtistLastModifiedMap = new HashMap<>();
-        // First we insert all artists and albumArtists
-        for (ScriptResolverTrack track : tracks) {
-            if (albumArtists.get(track.album).size() > 1) {
-                ContentValues values = new ContentValues();
-                values.put(ARTISTS_ARTIST, Artist.COMPILATION_ARTIST.getName());
-                values.put(ARTISTS_ARTISTDISAMBIGUATION, "");
-                String artistKey = Artist.COMPILATION_ARTIST.getName() + "♠" + "";
-                Long lastModified = mArtistLastModifiedMap.get(artistKey);
-                if (lastModified == null || lastModified < track.lastModified) {
-                    mArtistLastModifiedMap.put(artistKey, track.lastModified);
-                    lastModified = track.lastModified;
-                }
-                values.put(ARTISTS_LASTMODIFIED, lastModified);
-                mDb.insert(TABLE_ARTISTS, null, values);
-            }
-            ContentValues values = new ContentValues();
-            values.put(ARTISTS_ARTIST, track.artist);
-            values.put(ARTISTS_ARTISTDISAMBIGUATION, track.artistDisambiguation);
-            String artistKey = track.artist + "♠" + track.artistDisambiguation;
-            Long lastModified = mArtistLastModifiedMap.get(artistKey);
-            if (lastModified == null || lastModified < track.lastModified) {
-                mArtistLastModifiedMap.put(artistKey, track.lastModified);
-                lastModified = track.lastModified;
-            }
-            values.put(ARTISTS_LASTMODIFIED, lastModified);
-            mDb.insert(TABLE_ARTISTS, null, values);
-            values = new ContentValues();
-            values.put(ALBUMARTISTS_ALBUMARTIST, track.albumArtist);
-            values.put(ALBUMARTISTS_ALBUMARTISTDISAMBIGUATION, track.albumArtistDisambiguation);
-            values.put(ALBUMARTISTS_LASTMODIFIED, lastModified);
-            mDb.insert(TABLE_ALBUMARTISTS, null, values);
-        }
-
-        Map<String, Integer> cachedArtists = new HashMap<>();
-        Map<Integer, String> cachedArtistIds = new HashMap<>();
-        Cursor cursor = mDb.query(TABLE_ARTISTS,
-                new String[]{ID, ARTISTS_ARTIST, ARTISTS_ARTISTDISAMBIGUATION},
-                null, null, null, null, null);
+        SQLiteStatement insertArtist = mDb.compileStatement("INSERT OR IGNORE INTO "
+                + TABLE_ARTISTS + " (" + ARTISTS_ARTIST + ", " + ARTISTS_ARTISTDISAMBIGUATION
+                + ", " + ARTISTS_LASTMODIFIED + ") VALUES (?, ?, ?)");
+        SQLiteStatement selectArtist = mDb.compileStatement("SELECT " + ID + " FROM "
+                + TABLE_ARTISTS + " WHERE " + ARTISTS_ARTIST + " = ? AND "
+                + ARTISTS_ARTISTDISAMBIGUATION + " = ?");
+        SQLiteStatement insertAlbumArtist = mDb.compileStatement("INSERT OR IGNORE INTO "
+                + TABLE_ALBUMARTISTS + " (" + ALBUMARTISTS_ALBUMARTIST + ", "
+                + ALBUMARTISTS_ALBUMARTISTDISAMBIGUATION + ", " + ALBUMARTISTS_LASTMODIFIED
+                + ") VALUES (?, ?, ?)");
+        SQLiteStatement insertAlbum = mDb.compileStatement("INSERT OR IGNORE INTO "
+                + TABLE_ALBUMS + " (" + ALBUMS_ALBUM + ", " + ALBUMS_ALBUMARTISTID + ", "
+                + ALBUMS_IMAGEPATH + ", " + ALBUMS_LASTMODIFIED + ") VALUES (?, ?, ?, ?)");
+        SQLiteStatement selectAlbum = mDb.compileStatement("SELECT " + ID + " FROM "
+                + TABLE_ALBUMS + " WHERE " + ALBUMS_ALBUM + " = ? AND "
+                + ALBUMS_ALBUMARTISTID + " = ?");
+        SQLiteStatement insertArtistAlbum = mDb.compileStatement("INSERT OR IGNORE INTO "
+                + TABLE_ARTISTALBUMS + " (" + ARTISTALBUMS_ALBUMID + ", "
+                + ARTISTALBUMS_ARTISTID + ") VALUES (?, ?)");
+        SQLiteStatement insertTrack = mDb.compileStatement("INSERT OR IGNORE INTO "
+                + TABLE_TRACKS + " (" + TRACKS_TRACK + ", " + TRACKS_ARTISTID + ", "
+                + TRACKS_ALBUMID + ", " + TRACKS_URL + ", " + TRACKS_DURATION + ", "
+                + TRACKS_LINKURL + ", " + TRACKS_ALBUMPOS + ", " + TRACKS_LASTMODIFIED
+                + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+
+        mDb.beginTransaction();
         try {
-            cursor.moveToFirst();
-            if (!cursor.isAfterLast()) {
-                do {
-                    cachedArtists.put(concatKeys(cursor.getString(1), cursor.getString(2)),
-                            cursor.getInt(0));
-                    cachedArtistIds.put(cursor.getInt(0), cursor.getString(1));
-                } while (cursor.moveToNext());
+            // Artist and album ids only have to be looked up once per batch. Within a batch an
+            // album's name determines its albumArtist, so it is sufficient as the album's key.
+            Map<String, Integer> artistIds = new HashMap<>();
+            Map<String, Integer> albumIds = new HashMap<>();
+            Set<String> insertedAlbumArtists = new HashSet<>();
+            SparseArray<SparseBooleanArray> insertedArtistAlbums = new SparseArray<>();
+            int compilationArtistId = -1;
+            for (int i = 0; i < tracks.length; i++) {
+                ScriptResolverTrack track = tracks[i];
+                boolean isCompilation = albumArtists.get(track.album).size() > 1;
+                if (isCompilation && compilationArtistId < 0) {
+                    compilationArtistId = insertOrSelectArtist(insertArtist, selectArtist,
+                            Artist.COMPILATION_ARTIST.getName(), "", compilationLastModified);
+                }
+
+                Integer artistId = artistIds.get(artistKeys[i]);
+                if (artistId == null) {
+                    artistId = insertOrSelectArtist(insertArtist, selectArtist, track.artist,
+                            track.artistDisambiguation, artistLastModifiedMap.get(artistKeys[i]));
+                    artistIds.put(artistKeys[i], artistId);
+                }
+
+                String albumArtistKey =
+                        concatKeys(track.albumArtist, track.albumArtistDisambiguation);
+                if (insertedAlbumArtists.add(albumArtistKey)) {
+                    insertAlbumArtist.clearBindings();
+                    insertAlbumArtist.bindString(1, track.albumArtist);
+                    insertAlbumArtist.bindString(2, track.albumArtistDisambiguation);
+                    insertAlbumArtist.bindLong(3, artistLastModifiedMap.get(artistKeys[i]));
+                    insertAlbumArtist.executeInsert();
+                }
+
+                Integer albumId = albumIds.get(track.album);
+                if (albumId == null) {
+                    int albumArtistId = isCompilation ? compilationArtistId : artistId;
+                    insertAlbum.clearBindings();
+                    insertAlbum.bindString(1, track.album);
+                    insertAlbum.bindLong(2, albumArtistId);
+                    bindStringOrNull(insertAlbum, 3, track.imagePath);
+                    insertAlbum.bindLong(4, albumLastModifiedMap.get(track.album));
+                    albumId = (int) insertAlbum.executeInsert();
+                    if (albumId == -1) {
+                        selectAlbum.clearBindings();
+                        selectAlbum.bindString(1, track.album);
+                        selectAlbum.bindLong(2, albumArtistId);
+                        albumId = (int) selectAlbum.simpleQueryForLong();
+                    }
+                    albumIds.put(track.album, albumId);
+                }
+
+                SparseBooleanArray albumArtistIds = insertedArtistAlbums.get(albumId);
+                if (albumArtistIds == null) {
+                    albumArtistIds = new SparseBooleanArray();
+                    insertedArtistAlbums.put(albumId, albumArtistIds);
+                }
+                if (!albumArtistIds.get(artistId)) {
+                    albumArtistIds.put(artistId, true);
+                    insertArtistAlbum.clearBindings();
+                    insertArtistAlbum.bindLong(1, albumId);
+                    insertArtistAlbum.bindLong(2, artistId);
+                    insertArtistAlbum.executeInsert();
+                }
+
+                insertTrack.clearBindings();
+                insertTrack.bindString(1, track.track);
+                insertTrack.bindLong(2, artistId);
+                insertTrack.bindLong(3, albumId);
+                bindStringOrNull(insertTrack, 4, track.url);
+                insertTrack.bindLong(5, (int) track.duration);
+                bindStringOrNull(insertTrack, 6, track.linkUrl);
+                insertTrack.bindLong(7, track.albumPos);
+                insertTrack.bindLong(8, track.lastModified);
+                long trackId = insertTrack.executeInsert();
+                if (trackId != -1) {
+                    changeset.addedTrackIds.add((int) trackId);
+                }
             }
+            mDb.setTransactionSuccessful();
         } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
+            mDb.endTransaction();
+            insertArtist.close();
+            selectArtist.close();
+            insertAlbumArtist.close();
+            insertAlbum.close();
+            selectAlbum.close();
+            insertArtistAlbum.close();
+            insertTrack.close();
         }
+        mInitialized = true;
+        Log.d(TAG, "Added " + tracks.length + " tracks in " + (System.currentTimeMillis() - time)
+                + "ms");
+        storeLastUpdate();
+        return changeset;
+    }
 
-        Map<String, Long> mAlbumLastModifiedMap = new HashMap<>();
-        for (ScriptResolverTrack track : tracks) {
-            ContentValues values = new ContentValues();
-            values.put(ALBUMS_ALBUM, track.album);
-            int albumArtistId;
-            if (albumArtists.get(track.album).size() == 1) {
-                albumArtistId = cachedArtists.get(
-                        concatKeys(track.artist, track.artistDisambiguation));
-            } else {
-                albumArtistId = cachedArtists.get(
-                        concatKeys(Artist.COMPILATION_ARTIST.getName(), ""));
-            }
-            values.put(ALBUMS_ALBUMARTISTID, albumArtistId);
-            values.put(ALBUMS_IMAGEPATH, track.imagePath);
-            String artistKey = track.album + "♠" + albumArtistId;
-            Long lastModified = mAlbumLastModifiedMap.get(artistKey);
-            if (lastModified == null || lastModified < track.lastModified) {
-                mAlbumLastModifiedMap.put(artistKey, track.lastModified);
-                lastModified = track.lastModified;
-            }
-            values.put(ALBUMS_LASTMODIFIED, lastModified);
-            mDb.insert(TABLE_ALBUMS, null, values);
-        }
-
-        Map<String, Integer> cachedAlbums = new HashMap<>();
-        Map<Integer, String> cachedAlbumIds = new HashMap<>();
-        cursor = mDb.query(TABLE_ALBUMS,
-                new String[]{ID, ALBUMS_ALBUM, ALBUMS_ALBUMARTISTID},
-                null, null, null, null, null);
+    /**
+     * Inserts the given artist. If the artist already exists, its id is being looked up instead.
+     *
+     * @return the id of the inserted or already existing artist
+     */
+    private static int insertOrSelectArtist(SQLiteStatement insertArtist,
+            SQLiteStatement selectArtist, String artist, String artistDisambiguation,
+            long lastModified) {
+        insertArtist.clearBindings();
+        insertArtist.bindString(1, artist);
+        insertArtist.bindString(2, artistDisambiguation);
+        insertArtist.bindLong(3, lastModified);
+        long id = insertArtist.executeInsert();
+        if (id == -1) {
+            selectArtist.clearBindings();
+            selectArtist.bindString(1, artist);
+            selectArtist.bindString(2, artistDisambiguation);
+            id = selectArtist.simpleQueryForLong();
+        }
+        return (int) id;
+    }
+
+    private static void bindStringOrNull(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    private static void storeMax(Map<String, Long> map, String key, long value) {
+        Long storedValue = map.get(key);
+        if (storedValue == null || storedValue < value) {
+            map.put(key, value);
+        }
+    }
+
+    /**
+     * Removes all tracks with the given urls. Artists, albums and artistAlbums entries which are no
+     * longer referenced by any track are being removed as well. Since albumArtists entries aren't
+     * linked to any track, they are only being reset by {@link #wipe()}.
+     *
+     * @param urls the urls of the tracks that should be removed
+     * @return the {@link Changeset} containing the ids of all removed tracks
+     */
+    public Changeset removeTracks(Collection<String> urls) {
+        synchronized (mWriteLock) {
+            return postChangeset(doRemoveTracks(urls));
+        }
+    }
+
+    private Changeset doRemoveTracks(Collection<String> urls) {
+        long time = System.currentTimeMillis();
+        Changeset changeset = new Changeset();
+        Set<Integer> albumIds = new HashSet<>();
+        Set<Integer> artistIds = new HashSet<>();
+        mDb.beginTransaction();
         try {
-            cursor.moveToFirst();
-            if (!cursor.isAfterLast()) {
-                do {
-                    cachedAlbums.put(concatKeys(cursor.getString(1), cursor.getString(2)),
-                            cursor.getInt(0));
-                    cachedAlbumIds.put(cursor.getInt(0), cursor.getString(1));
-                } while (cursor.moveToNext());
+            List<String> urlList = new ArrayList<>(urls);
+            for (int i = 0; i < urlList.size(); i += SqlUtils.MAX_SQL_VARIABLES) {
+                List<String> chunk =
+                        urlList.subList(i,
+                                Math.min(i + SqlUtils.MAX_SQL_VARIABLES, urlList.size()));
+                Cursor cursor = mDb.query(TABLE_TRACKS,
+                        new String[]{ID, TRACKS_ALBUMID, TRACKS_ARTISTID},
+                        TRACKS_URL + " IN (" + SqlUtils.placeholders(chunk.size()) + ")",
+                        chunk.toArray(new String[chunk.size()]), null, null, null);
+                try {
+                    while (cursor.moveToNext()) {
+                        changeset.removedTrackIds.add(cursor.getInt(0));
+                        albumIds.add(cursor.getInt(1));
+                        artistIds.add(cursor.getInt(2));
+                    }
+                } finally {
+                    cursor.close();
+                }
             }
+            if (!changeset.removedTrackIds.isEmpty()) {
+                mDb.execSQL("DELETE FROM " + TABLE_TRACKS + " WHERE " + ID + " IN ("
+                        + TextUtils.join(",", changeset.removedTrackIds) + ")");
+                String albumIdsString = TextUtils.join(",", albumIds);
+                mDb.execSQL("DELETE FROM " + TABLE_ARTISTALBUMS
+                        + " WHERE " + ARTISTALBUMS_ALBUMID + " IN (" + albumIdsString + ")"
+                        + " AND NOT EXISTS (SELECT 1 FROM " + TABLE_TRACKS + " WHERE "
+                        + TABLE_TRACKS + "." + TRACKS_ALBUMID + " = "
+                        + TABLE_ARTISTALBUMS + "." + ARTISTALBUMS_ALBUMID + " AND "
+                        + TABLE_TRACKS + "." + TRACKS_ARTISTID + " = "
+                        + TABLE_ARTISTALBUMS + "." + ARTISTALBUMS_ARTISTID + ")");
+                // The albumArtist of a removed album might have become an orphan as well
+                Cursor cursor = mDb.rawQuery("SELECT " + ALBUMS_ALBUMARTISTID + " FROM "
+                        + TABLE_ALBUMS + " WHERE " + ID + " IN (" + albumIdsString + ")", null);
+                try {
+                    while (cursor.moveToNext()) {
+                        artistIds.add(cursor.getInt(0));
+                    }
+                } finally {
+                    cursor.close();
+                }
+                mDb.execSQL("DELETE FROM " + TABLE_ALBUMS + " WHERE " + ID + " IN ("
+                        + albumIdsString + ") AND " + ID + " NOT IN (SELECT " + TRACKS_ALBUMID
+                        + " FROM " + TABLE_TRACKS + ")");
+                mDb.execSQL("DELETE FROM " + TABLE_ARTISTS + " WHERE " + ID + " IN ("
+                        + TextUtils.join(",", artistIds) + ") AND " + ID + " NOT IN (SELECT "
+                        + TRACKS_ARTISTID + " FROM " + TABLE_TRACKS + ") AND " + ID
+                        + " NOT IN (SELECT " + ALBUMS_ALBUMARTISTID + " FROM " + TABLE_ALBUMS
+                        + ")");
+            }
+            mDb.setTransactionSuccessful();
         } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
+            mDb.endTransaction();
         }
+        Log.d(TAG, "Removed " + changeset.removedTrackIds.size() + " tracks in "
+                + (System.currentTimeMillis() - time) + "ms");
+        if (!changeset.isEmpty()) {
+            storeLastUpdate();
+        }
+        return changeset;
+    }
 
-        for (ScriptResolverTrack track : tracks) {
-            ContentValues values = new ContentValues();
-            int albumArtistId;
-            if (albumArtists.get(track.album).size() == 1) {
-                albumArtistId = cachedArtists.get(
-                        concatKeys(track.artist, track.artistDisambiguation));
-            } else {
-                albumArtistId = cachedArtists.get(
-                        concatKeys(Artist.COMPILATION_ARTIST.getName(), ""));
-            }
-            int artistId = cachedArtists.get(concatKeys(track.artist, track.artistDisambiguation));
-            int albumId = cachedAlbums.get(concatKeys(track.album, albumArtistId));
-            values.put(ARTISTALBUMS_ARTISTID, artistId);
-            values.put(ARTISTALBUMS_ALBUMID, albumId);
-            mDb.insert(TABLE_ARTISTALBUMS, null, values);
-            values = new ContentValues();
-            values.put(TRACKS_TRACK, track.track);
-            values.put(TRACKS_ARTISTID, artistId);
-            values.put(TRACKS_ALBUMID, albumId);
-            values.put(TRACKS_URL, track.url);
-            values.put(TRACKS_DURATION, (int) track.duration);
-            values.put(TRACKS_LINKURL, track.linkUrl);
-            values.put(TRACKS_ALBUMPOS, track.albumPos);
-            values.put(TRACKS_LASTMODIFIED, track.lastModified);
-            mDb.insert(TABLE_TRACKS, null, values);
-        }
-
-        mDb.setTransactionSuccessful();
-        mDb.endTransaction();
-        mInitialized = true;
-        Log.d(TAG, "Added " + tracks.length + " tracks in " + (System.currentTimeMillis() - time)
-                + "ms");
+    /**
+     * Removes all tracks with the given urls and adds the given tracks within a single
+     * transaction, so that readers never see a half-applied update.
+     *
+     * @param removedUrls the urls of the tracks that should be removed
+     * @param addedTracks the tracks that should be added
+     * @return the merged {@link Changeset} of both operations
+     */
+    public Changeset updateTracks(Collection<String> removedUrls,
+            ScriptResolverTrack[] addedTracks) {
+        Changeset changeset = new Changeset();
+        if (removedUrls.isEmpty() && addedTracks.length == 0) {
+            mInitialized = true;
+            return changeset;
+        }
+        synchronized (mWriteLock) {
+            mDb.beginTransaction();
+            try {
+                changeset.merge(doRemoveTracks(removedUrls));
+                changeset.merge(doAddTracks(addedTracks));
+                mDb.setTransactionSuccessful();
+            } finally {
+                mDb.endTransaction();
+            }
+            mInitialized = true;
+            return postChangeset(changeset);
+        }
+    }
+
+    public boolean hasTracks() {
+        Cursor cursor = mDb.rawQuery("SELECT 1 FROM " + TABLE_TRACKS + " LIMIT 1", null);
+        try {
+            return cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void storeLastUpdate() {
         SharedPreferences preferences =
                 PreferenceManager.getDefaultSharedPreferences(TomahawkApp.getContext());
         preferences.edit().putLong(mLastUpdateStorageKey, System.currentTimeMillis()).commit();
     }
 
-    public synchronized void wipe() {
-        mDb.execSQL("DROP TABLE IF EXISTS `" + TABLE_ARTISTS + "`;");
-        mDb.execSQL(CREATE_TABLE_ARTISTS);
-        mDb.execSQL("DROP TABLE IF EXISTS `" + TABLE_ALBUMARTISTS + "`;");
-        mDb.execSQL(CREATE_TABLE_ALBUMARTISTS);
-        mDb.execSQL("DROP TABLE IF EXISTS `" + TABLE_ALBUMS + "`;");
-        mDb.execSQL(CREATE_TABLE_ALBUMS);
-        mDb.execSQL("DROP TABLE IF EXISTS `" + TABLE_ARTISTALBUMS + "`;");
-        mDb.execSQL(CREATE_TABLE_ARTISTALBUMS);
-        mDb.execSQL("DROP TABLE IF EXISTS `" + TABLE_TRACKS + "`;");
-        mDb.execSQL(CREATE_TABLE_TRACKS);
+    /**
+     * Removes all rows within a single transaction. The tables are being emptied instead of being
+     * dropped, so that concurrent readers keep seeing their snapshot until the wipe is committed.
+     */
+    public Changeset wipe() {
+        synchronized (mWriteLock) {
+            mDb.beginTransaction();
+            try {
+                mDb.execSQL("DELETE FROM `" + TABLE_TRACKS + "`;");
+                mDb.execSQL("DELETE FROM `" + TABLE_ARTISTALBUMS + "`;");
+                mDb.execSQL("DELETE FROM `" + TABLE_ALBUMS + "`;");
+                mDb.execSQL("DELETE FROM `" + TABLE_ALBUMARTISTS + "`;");
+                mDb.execSQL("DELETE FROM `" + TABLE_ARTISTS + "`;");
+                mDb.setTransactionSuccessful();
+            } finally {
+                mDb.endTransaction();
+            }
+            Changeset changeset = new Changeset();
+            changeset.wiped = true;
+            return postChangeset(changeset);
+        }
+    }
+
+    /**
+     * Starts a batch of writes. Until {@link #endBatch()} is being called, the {@link Changeset}s
+     * of all writes are being merged and posted as a single {@link TracksUpdatedEvent}.
+     */
+    public void beginBatch() {
+        synchronized (mWriteLock) {
+            if (mBatchChangeset == null) {
+                mBatchChangeset = new Changeset();
+            }
+        }
+    }
+
+    /**
+     * Ends the running batch of writes, if there is one, and posts its merged {@link Changeset}
+     *
+     * @return the merged {@link Changeset} of the batch
+     */
+    public Changeset endBatch() {
+        synchronized (mWriteLock) {
+            Changeset changeset = mBatchChangeset;
+            mBatchChangeset = null;
+            return changeset == null ? new Changeset() : postChangeset(changeset);
+        }
+    }
+
+    /**
+     * Posts a {@link TracksUpdatedEvent} for the given {@link Changeset}, so that e.g. the {@link
+     * org.tomahawk.libtomahawk.resolver.FuzzyIndex} can update itself incrementally. While a batch
+     * is running, the {@link Changeset} is only being merged into the batch's {@link Changeset}.
+     * Must be called while holding mWriteLock.
+     */
+    private Changeset postChangeset(Changeset changeset) {
+        if (mBatchChangeset != null) {
+            mBatchChangeset.merge(changeset);
+        } else if (!changeset.isEmpty()) {
+            TracksUpdatedEvent event = new TracksUpdatedEvent();
+            event.mCollectionId = mCollectionId;
+            event.mChangeset = changeset;
+            EventBus.getDefault().post(event);
+        }
+        return changeset;
     }
 
     /**
      * Convenience method. Uses a default set of fields.
      */
-    public synchronized Cursor tracks(WhereInfo where, String[] orderBy) {
+    public Cursor tracks(WhereInfo where, String[] orderBy) {
         String[] fields = new String[]{ARTISTS_ARTIST, ARTISTS_ARTISTDISAMBIGUATION, ALBUMS_ALBUM,
                 TRACKS_TRACK, TRACKS_DURATION, TRACKS_URL, TRACKS_LINKURL, TRACKS_ALBUMPOS,
                 TRACKS_LASTMODIFIED};
         return tracks(where, orderBy, fields);
     }
 
-    public synchronized Cursor tracks(WhereInfo where, String[] orderBy, String[] fields) {
+    public Cursor tracks(WhereInfo where, String[] orderBy, String[] fields) {
         List<JoinInfo> joinInfos = new ArrayList<>();
         JoinInfo joinInfo = new JoinInfo();
         joinInfo.table = TABLE_ARTISTS;
@@ -434,7 +720,7 @@ public class CollectionDb extends SQLiteOpenHelper {
         return sqlSelect(TABLE_TRACKS, fields, where, joinInfos, orderBy);
     }
 
-    public synchronized long tracksCurrentRevision() {
+    public long tracksCurrentRevision() {
         String[] fields = new String[]{TRACKS_LASTMODIFIED};
         long currentRevision = -1;
         Cursor cursor = null;
@@ -455,7 +741,7 @@ public class CollectionDb extends SQLiteOpenHelper {
         return currentRevision;
     }
 
-    public synchronized Cursor albums(String[] orderBy) {
+    public Cursor albums(String[] orderBy) {
         String[] fields = new String[]{ALBUMS_ALBUM, ARTISTS_ARTIST, ARTISTS_ARTISTDISAMBIGUATION,
                 ALBUMS_IMAGEPATH, ALBUMS_LASTMODIFIED};
         List<JoinInfo> joinInfos = new ArrayList<>();
@@ -467,19 +753,19 @@ public class CollectionDb extends SQLiteOpenHelper {
         return sqlSelect(TABLE_ALBUMS, fields, null, joinInfos, orderBy);
     }
 
-    public synchronized Cursor artists(String[] orderBy) {
+    public Cursor artists(String[] orderBy) {
         String[] fields = new String[]{ARTISTS_ARTIST, ARTISTS_ARTISTDISAMBIGUATION,
                 ARTISTS_LASTMODIFIED};
         return sqlSelect(TABLE_ARTISTS, fields, null, null, orderBy);
     }
 
-    public synchronized Cursor albumArtists(String[] orderBy) {
+    public Cursor albumArtists(String[] orderBy) {
         String[] fields = new String[]{ALBUMARTISTS_ALBUMARTIST,
                 ALBUMARTISTS_ALBUMARTISTDISAMBIGUATION, ALBUMARTISTS_LASTMODIFIED};
         return sqlSelect(TABLE_ALBUMARTISTS, fields, null, null, orderBy);
     }
 
-    public synchronized long artistCurrentRevision(String artist, String artistDisambiguation) {
+    public long artistCurrentRevision(String artist, String artistDisambiguation) {
         String[] fields = new String[]{ARTISTS_LASTMODIFIED};
         WhereInfo whereInfo = new WhereInfo();
         whereInfo.connection = "AND";
@@ -503,7 +789,7 @@ public class CollectionDb extends SQLiteOpenHelper {
         return currentRevision;
     }
 
-    public synchronized Cursor artistAlbums(String artist, String artistDisambiguation) {
+    public Cursor artistAlbums(String artist, String artistDisambiguation) {
         String[] fields = new String[]{ID};
         WhereInfo whereInfo = new WhereInfo();
         whereInfo.connection = "AND";
@@ -544,7 +830,7 @@ public class CollectionDb extends SQLiteOpenHelper {
                 new String[]{ALBUMS_ALBUM});
     }
 
-    public synchronized long albumCurrentRevision(String album, String albumArtist,
+    public long albumCurrentRevision(String album, String albumArtist,
             String albumArtistDisambiguation) {
         String[] fields = new String[]{ID};
         WhereInfo whereInfo = new WhereInfo();
@@ -589,7 +875,7 @@ public class CollectionDb extends SQLiteOpenHelper {
         return currentRevision;
     }
 
-    public synchronized Cursor albumTracks(String album, String albumArtist,
+    public Cursor albumTracks(String album, String albumArtist,
             String albumArtistDisambiguation) {
         String[] fields = new String[]{ID};
         WhereInfo whereInfo = new WhereInfo();
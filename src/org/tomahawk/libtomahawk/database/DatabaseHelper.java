@@ -46,11 +46,11 @@ import android.util.Log;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Locale;
 import java.util.Set;
 
 import de.greenrobot.event.EventBus;
@@ -73,6 +73,35 @@ public class DatabaseHelper {
 
     public static final int CHUNK_SIZE = 50;
 
+    /**
+     * The number of rows per page while building a {@link MediaIndex}
+     */
+    private static final int INDEX_CHUNK_SIZE = 1000;
+
+    /**
+     * The columns that are being read by {@link #readMedia(Cursor)}, followed by the rowid
+     */
+    private static final String[] MEDIA_COLUMNS = new String[]{
+            TomahawkSQLiteHelper.MEDIA_LOCATION, //0 string
+            TomahawkSQLiteHelper.MEDIA_TIME, //1 long
+            TomahawkSQLiteHelper.MEDIA_LENGTH, //2 long
+            TomahawkSQLiteHelper.MEDIA_TYPE, //3 int
+            TomahawkSQLiteHelper.MEDIA_TITLE, //4 string
+            TomahawkSQLiteHelper.MEDIA_ARTIST, //5 string
+            TomahawkSQLiteHelper.MEDIA_GENRE, //6 string
+            TomahawkSQLiteHelper.MEDIA_ALBUM, //7 string
+            TomahawkSQLiteHelper.MEDIA_ALBUMARTIST, //8 string
+            TomahawkSQLiteHelper.MEDIA_WIDTH, //9 int
+            TomahawkSQLiteHelper.MEDIA_HEIGHT, //10 int
+            TomahawkSQLiteHelper.MEDIA_ARTWORKURL, //11 string
+            TomahawkSQLiteHelper.MEDIA_AUDIOTRACK, //12 int
+            TomahawkSQLiteHelper.MEDIA_SPUTRACK, //13 int
+            TomahawkSQLiteHelper.MEDIA_TRACKNUMBER, // 14 int
+            TomahawkSQLiteHelper.MEDIA_DISCNUMBER, //15 int
+            TomahawkSQLiteHelper.MEDIA_LASTMODIFIED, //16 long
+            "rowid" //17 long
+    };
+
     private static class Holder {
 
         private static final DatabaseHelper instance = new DatabaseHelper();
@@ -925,7 +954,7 @@ public class DatabaseHelper {
         mDatabase.beginTransaction();
         int deletedLogs = 0;
         for (InfoRequestData loggedOp : loggedOps) {
-            deletedLogs = mDatabase.delete(TomahawkSQLiteHelper.TABLE_INFOSYSTEMOPLOG,
+            deletedLogs += mDatabase.delete(TomahawkSQLiteHelper.TABLE_INFOSYSTEMOPLOG,
                     TomahawkSQLiteHelper.INFOSYSTEMOPLOG_COLUMN_ID + " = ?",
                     new String[]{String.valueOf(loggedOp.getLoggedOpId())});
         }
@@ -1010,6 +1039,33 @@ public class DatabaseHelper {
      * @param media which you like to add to the database
      */
     public synchronized void addMedia(MediaWrapper media) {
+        ContentValues values = getMediaValues(media);
+
+        mDatabase.beginTransaction();
+        mDatabase.replace(TomahawkSQLiteHelper.TABLE_MEDIA, "NULL", values);
+        mDatabase.setTransactionSuccessful();
+        mDatabase.endTransaction();
+
+    }
+
+    /**
+     * Add or replace the given medias in the database within a single transaction
+     *
+     * @param medias which you like to add to the database
+     */
+    public synchronized void addMedias(List<MediaWrapper> medias) {
+        mDatabase.beginTransaction();
+        try {
+            for (MediaWrapper media : medias) {
+                mDatabase.replace(TomahawkSQLiteHelper.TABLE_MEDIA, "NULL", getMediaValues(media));
+            }
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+        }
+    }
+
+    private ContentValues getMediaValues(MediaWrapper media) {
         ContentValues values = new ContentValues();
 
         values.put(TomahawkSQLiteHelper.MEDIA_LOCATION, media.getLocation());
@@ -1029,12 +1085,7 @@ public class DatabaseHelper {
         values.put(TomahawkSQLiteHelper.MEDIA_TRACKNUMBER, media.getTrackNumber());
         values.put(TomahawkSQLiteHelper.MEDIA_DISCNUMBER, media.getDiscNumber());
         values.put(TomahawkSQLiteHelper.MEDIA_LASTMODIFIED, media.getLastModified());
-
-        mDatabase.beginTransaction();
-        mDatabase.replace(TomahawkSQLiteHelper.TABLE_MEDIA, "NULL", values);
-        mDatabase.setTransactionSuccessful();
-        mDatabase.endTransaction();
-
+        return values;
     }
 
     /**
@@ -1086,75 +1137,151 @@ public class DatabaseHelper {
     }
 
     public synchronized HashMap<String, MediaWrapper> getMedias() {
-        Cursor cursor;
         HashMap<String, MediaWrapper> medias = new HashMap<>();
-        int chunk_count = 0;
+        long lastRowId = -1;
         int count;
-
+        // Page through the table by rowid, since an OFFSET would have to skip all previous rows
         do {
             count = 0;
-            cursor = mDatabase.rawQuery(String.format(Locale.US,
-                    "SELECT %s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s FROM %s LIMIT %d OFFSET %d",
-                    TomahawkSQLiteHelper.MEDIA_LOCATION, //0 string
-                    TomahawkSQLiteHelper.MEDIA_TIME, //1 long
-                    TomahawkSQLiteHelper.MEDIA_LENGTH, //2 long
-                    TomahawkSQLiteHelper.MEDIA_TYPE, //3 int
-                    TomahawkSQLiteHelper.MEDIA_TITLE, //4 string
-                    TomahawkSQLiteHelper.MEDIA_ARTIST, //5 string
-                    TomahawkSQLiteHelper.MEDIA_GENRE, //6 string
-                    TomahawkSQLiteHelper.MEDIA_ALBUM, //7 string
-                    TomahawkSQLiteHelper.MEDIA_ALBUMARTIST, //8 string
-                    TomahawkSQLiteHelper.MEDIA_WIDTH, //9 int
-                    TomahawkSQLiteHelper.MEDIA_HEIGHT, //10 int
-                    TomahawkSQLiteHelper.MEDIA_ARTWORKURL, //11 string
-                    TomahawkSQLiteHelper.MEDIA_AUDIOTRACK, //12 int
-                    TomahawkSQLiteHelper.MEDIA_SPUTRACK, //13 int
-                    TomahawkSQLiteHelper.MEDIA_TRACKNUMBER, // 14 int
-                    TomahawkSQLiteHelper.MEDIA_DISCNUMBER, //15 int
-                    TomahawkSQLiteHelper.MEDIA_LASTMODIFIED, //16 long
-                    TomahawkSQLiteHelper.TABLE_MEDIA,
-                    CHUNK_SIZE,
-                    chunk_count * CHUNK_SIZE), null);
+            Cursor cursor = mDatabase.query(TomahawkSQLiteHelper.TABLE_MEDIA, MEDIA_COLUMNS,
+                    "rowid > ?", new String[]{String.valueOf(lastRowId)}, null, null, "rowid",
+                    String.valueOf(CHUNK_SIZE));
+            try {
+                while (cursor.moveToNext()) {
+                    MediaWrapper media = readMedia(cursor);
+                    medias.put(media.getLocation(), media);
+                    lastRowId = cursor.getLong(MEDIA_COLUMNS.length - 1);
+                    count++;
+                }
+            } catch (IllegalStateException e) {
+                //Google bug causing IllegalStateException, see
+                //https://code.google.com/p/android/issues/detail?id=32472
+            } finally {
+                cursor.close();
+            }
+        } while (count == CHUNK_SIZE);
 
-            if (cursor.moveToFirst()) {
-                try {
-                    do {
-                        String location = cursor.getString(0);
-                        MediaWrapper media = new MediaWrapper(location,
-                                cursor.getLong(1),      // MEDIA_TIME
-                                cursor.getLong(2),      // MEDIA_LENGTH
-                                cursor.getInt(3),       // MEDIA_TYPE
-                                null,                   // MEDIA_PICTURE
-                                cursor.getString(4),    // MEDIA_TITLE
-                                cursor.getString(5),    // MEDIA_ARTIST
-                                cursor.getString(6),    // MEDIA_GENRE
-                                cursor.getString(7),    // MEDIA_ALBUM
-                                cursor.getString(8),    // MEDIA_ALBUMARTIST
-                                cursor.getInt(9),       // MEDIA_WIDTH
-                                cursor.getInt(10),       // MEDIA_HEIGHT
-                                cursor.getString(11),   // MEDIA_ARTWORKURL
-                                cursor.getInt(12),      // MEDIA_AUDIOTRACK
-                                cursor.getInt(13),      // MEDIA_SPUTRACK
-                                cursor.getInt(14),      // MEDIA_TRACKNUMBER
-                                cursor.getInt(15),     // MEDIA_DISCNUMBER
-                                cursor.getLong(16));     // MEDIA_LAST_MODIFIED
-                        medias.put(media.getLocation(), media);
-
-                        count++;
-                    } while (cursor.moveToNext());
-                } catch (IllegalStateException e) {
-                    //Google bug causing IllegalStateException, see
-                    //https://code.google.com/p/android/issues/detail?id=32472
+        return medias;
+    }
+
+    /**
+     * Streams the location, lastModified timestamp and type of every row of the media table into
+     * a compact {@link MediaIndex}, without materializing any {@link MediaWrapper}.
+     */
+    public synchronized MediaIndex getMediaIndex() {
+        MediaIndex index = new MediaIndex((int) DatabaseUtils.queryNumEntries(mDatabase,
+                TomahawkSQLiteHelper.TABLE_MEDIA));
+        String[] columns = new String[]{"rowid", TomahawkSQLiteHelper.MEDIA_LOCATION,
+                TomahawkSQLiteHelper.MEDIA_LASTMODIFIED, TomahawkSQLiteHelper.MEDIA_TYPE};
+        long lastRowId = -1;
+        int count;
+        do {
+            count = 0;
+            Cursor cursor = mDatabase.query(TomahawkSQLiteHelper.TABLE_MEDIA, columns,
+                    "rowid > ?", new String[]{String.valueOf(lastRowId)}, null, null, "rowid",
+                    String.valueOf(INDEX_CHUNK_SIZE));
+            try {
+                while (cursor.moveToNext()) {
+                    lastRowId = cursor.getLong(0);
+                    index.put(lastRowId, cursor.getString(1), cursor.getLong(2),
+                            cursor.getInt(3));
+                    count++;
                 }
+            } finally {
+                cursor.close();
             }
+        } while (count == INDEX_CHUNK_SIZE);
+        return index;
+    }
 
-            cursor.close();
-            chunk_count++;
-        } while (count == CHUNK_SIZE);
+    /**
+     * @return the {@link MediaWrapper}s of the rows with the given rowids
+     */
+    public synchronized List<MediaWrapper> getMedias(List<Long> rowIds) {
+        List<MediaWrapper> medias = new ArrayList<>();
+        for (int i = 0; i < rowIds.size(); i += SqlUtils.MAX_SQL_VARIABLES) {
+            List<Long> chunk =
+                    rowIds.subList(i, Math.min(i + SqlUtils.MAX_SQL_VARIABLES, rowIds.size()));
+            String[] selectionArgs = new String[chunk.size()];
+            for (int j = 0; j < chunk.size(); j++) {
+                selectionArgs[j] = String.valueOf(chunk.get(j));
+            }
+            Cursor cursor = mDatabase.query(TomahawkSQLiteHelper.TABLE_MEDIA, MEDIA_COLUMNS,
+                    "rowid IN (" + SqlUtils.placeholders(chunk.size()) + ")", selectionArgs,
+                    null, null, null);
+            try {
+                while (cursor.moveToNext()) {
+                    medias.add(readMedia(cursor));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return medias;
+    }
 
+    /**
+     * @param albums the names of the albums. An empty name stands for all medias without an album.
+     * @return the {@link MediaWrapper}s of all rows of the given type that belong to one of the
+     * given albums
+     */
+    public synchronized List<MediaWrapper> getMediasByAlbums(int type, Collection<String> albums) {
+        List<MediaWrapper> medias = new ArrayList<>();
+        List<String> albumList = new ArrayList<>(albums);
+        for (int i = 0; i < albumList.size(); i += SqlUtils.MAX_SQL_VARIABLES) {
+            List<String> chunk =
+                    albumList.subList(i,
+                            Math.min(i + SqlUtils.MAX_SQL_VARIABLES, albumList.size()));
+            String[] selectionArgs = new String[chunk.size() + 1];
+            selectionArgs[0] = String.valueOf(type);
+            for (int j = 0; j < chunk.size(); j++) {
+                selectionArgs[j + 1] = chunk.get(j);
+            }
+            String selection = TomahawkSQLiteHelper.MEDIA_TYPE + " = ? AND ("
+                    + TomahawkSQLiteHelper.MEDIA_ALBUM + " IN ("
+                    + SqlUtils.placeholders(chunk.size()) + ")";
+            if (chunk.contains("")) {
+                selection += " OR " + TomahawkSQLiteHelper.MEDIA_ALBUM + " IS NULL";
+            }
+            selection += ")";
+            Cursor cursor = mDatabase.query(TomahawkSQLiteHelper.TABLE_MEDIA, MEDIA_COLUMNS,
+                    selection, selectionArgs, null, null, null);
+            try {
+                while (cursor.moveToNext()) {
+                    medias.add(readMedia(cursor));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
         return medias;
     }
 
+    /**
+     * Reads the {@link MediaWrapper} at the current position of a Cursor over {@link
+     * #MEDIA_COLUMNS}
+     */
+    private static MediaWrapper readMedia(Cursor cursor) {
+        return new MediaWrapper(cursor.getString(0), // MEDIA_LOCATION
+                cursor.getLong(1),      // MEDIA_TIME
+                cursor.getLong(2),      // MEDIA_LENGTH
+                cursor.getInt(3),       // MEDIA_TYPE
+                null,                   // MEDIA_PICTURE
+                cursor.getString(4),    // MEDIA_TITLE
+                cursor.getString(5),    // MEDIA_ARTIST
+                cursor.getString(6),    // MEDIA_GENRE
+                cursor.getString(7),    // MEDIA_ALBUM
+                cursor.getString(8),    // MEDIA_ALBUMARTIST
+                cursor.getInt(9),       // MEDIA_WIDTH
+                cursor.getInt(10),      // MEDIA_HEIGHT
+                cursor.getString(11),   // MEDIA_ARTWORKURL
+                cursor.getInt(12),      // MEDIA_AUDIOTRACK
+                cursor.getInt(13),      // MEDIA_SPUTRACK
+                cursor.getInt(14),      // MEDIA_TRACKNUMBER
+                cursor.getInt(15),      // MEDIA_DISCNUMBER
+                cursor.getLong(16));    // MEDIA_LAST_MODIFIED
+    }
+
     public synchronized MediaWrapper getMedia(String location) {
 
         Cursor cursor;
@@ -1260,6 +1387,28 @@ public class DatabaseHelper {
         }
     }
 
+    /**
+     * Removes the rows with the given rowids from the media table
+     */
+    public synchronized void removeMediasByRowIds(List<Long> rowIds) {
+        mDatabase.beginTransaction();
+        try {
+            for (int i = 0; i < rowIds.size(); i += SqlUtils.MAX_SQL_VARIABLES) {
+                List<Long> chunk =
+                        rowIds.subList(i, Math.min(i + SqlUtils.MAX_SQL_VARIABLES, rowIds.size()));
+                String[] whereArgs = new String[chunk.size()];
+                for (int j = 0; j < chunk.size(); j++) {
+                    whereArgs[j] = String.valueOf(chunk.get(j));
+                }
+                mDatabase.delete(TomahawkSQLiteHelper.TABLE_MEDIA,
+                        "rowid IN (" + SqlUtils.placeholders(chunk.size()) + ")", whereArgs);
+            }
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+        }
+    }
+
     public synchronized void updateMedia(String location, TomahawkSQLiteHelper.mediaColumn col,
             Object object) {
 
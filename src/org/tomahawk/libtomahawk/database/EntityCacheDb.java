@@ -0,0 +1,212 @@
+/* == This file is part of Tomahawk Player - <http://tomahawk-player.org> ===
+ *
+ *   Copyright 2015, Enno Gottschalk <mrmaffen@googlemail.com>
+ *
+ *   Tomahawk is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Tomahawk is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Tomahawk. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tomahawk.libtomahawk.database;
+
+import org.tomahawk.tomahawk_android.TomahawkApp;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persists the raw JSON of entities (e.g. the records of the Hatchet API) keyed by type and id, so
+ * that they survive process restarts. The number of stored entities is bounded; the entities that
+ * haven't been accessed for the longest time are being evicted first.
+ */
+public class EntityCacheDb extends BoundedCacheDb {
+
+    public static final String TAG = EntityCacheDb.class.getSimpleName();
+
+    public static final String TABLE_ENTITIES = "entities";
+
+    public static final String ENTITIES_TYPE = "type";
+
+    public static final String ENTITIES_ID = "id";
+
+    public static final String ENTITIES_JSON = "json";
+
+    public static final String ENTITIES_UPDATED = "updated";
+
+    public static final String ENTITIES_ACCESSED = "accessed";
+
+    private static final String CREATE_TABLE_ENTITIES = "CREATE TABLE IF NOT EXISTS "
+            + TABLE_ENTITIES + " ("
+            + ENTITIES_TYPE + " INTEGER NOT NULL,"
+            + ENTITIES_ID + " TEXT NOT NULL,"
+            + ENTITIES_JSON + " TEXT NOT NULL,"
+            + ENTITIES_UPDATED + " INTEGER NOT NULL,"
+            + ENTITIES_ACCESSED + " INTEGER NOT NULL,"
+            + "PRIMARY KEY (" + ENTITIES_TYPE + ", " + ENTITIES_ID + "));";
+
+    private static final String CREATE_INDEX_ENTITIES_ACCESSED = "CREATE INDEX IF NOT EXISTS "
+            + TABLE_ENTITIES + "_" + ENTITIES_ACCESSED + " ON " + TABLE_ENTITIES
+            + " (" + ENTITIES_ACCESSED + ");";
+
+    private static final String DB_NAME = "entitycache.db";
+
+    private static final int DB_VERSION = 1;
+
+    private static final int MAX_ENTRIES = 20000;
+
+    private static class Holder {
+
+        private static final EntityCacheDb instance =
+                new EntityCacheDb(TomahawkApp.getContext());
+
+    }
+
+    public static class Entry {
+
+        public String json;
+
+        /**
+         * The time in ms at which this entity has been stored
+         */
+        public long updated;
+
+    }
+
+    private EntityCacheDb(Context context) {
+        super(context, DB_NAME, DB_VERSION, TABLE_ENTITIES, ENTITIES_ACCESSED, MAX_ENTRIES);
+
+        trim();
+    }
+
+    public static EntityCacheDb get() {
+        return Holder.instance;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL(CREATE_TABLE_ENTITIES);
+        db.execSQL(CREATE_INDEX_ENTITIES_ACCESSED);
+    }
+
+    /**
+     * Stores the given entities, replacing the ones with the same type and id.
+     *
+     * @param jsons a map of entity ids to their JSON
+     */
+    public void put(int type, Map<String, String> jsons) {
+        if (jsons.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (mWriteLock) {
+            SQLiteStatement statement = mDb.compileStatement("INSERT OR REPLACE INTO "
+                    + TABLE_ENTITIES + " (" + ENTITIES_TYPE + ", " + ENTITIES_ID + ", "
+                    + ENTITIES_JSON + ", " + ENTITIES_UPDATED + ", " + ENTITIES_ACCESSED
+                    + ") VALUES (?, ?, ?, ?, ?)");
+            mDb.beginTransaction();
+            try {
+                for (Map.Entry<String, String> entry : jsons.entrySet()) {
+                    statement.bindLong(1, type);
+                    statement.bindString(2, entry.getKey());
+                    statement.bindString(3, entry.getValue());
+                    statement.bindLong(4, now);
+                    statement.bindLong(5, now);
+                    statement.executeInsert();
+                }
+                mDb.setTransactionSuccessful();
+            } finally {
+                mDb.endTransaction();
+                statement.close();
+            }
+        }
+        onEntriesPut(jsons.size());
+    }
+
+    /**
+     * @param maxAge the maximum age in ms of the returned entities. Older entities are being
+     *               ignored.
+     * @return a map of the ids of all found entities to their {@link Entry}s
+     */
+    public Map<String, Entry> get(int type, Collection<String> ids, long maxAge) {
+        Map<String, Entry> entries = new HashMap<>();
+        if (ids.isEmpty()) {
+            return entries;
+        }
+        long now = System.currentTimeMillis();
+        List<String> idList = new ArrayList<>(ids);
+        for (int i = 0; i < idList.size(); i += SqlUtils.MAX_SQL_VARIABLES) {
+            List<String> chunk =
+                    idList.subList(i, Math.min(i + SqlUtils.MAX_SQL_VARIABLES, idList.size()));
+            String[] selectionArgs = new String[chunk.size() + 2];
+            selectionArgs[0] = String.valueOf(type);
+            selectionArgs[1] = String.valueOf(now - maxAge);
+            for (int j = 0; j < chunk.size(); j++) {
+                selectionArgs[j + 2] = chunk.get(j);
+            }
+            Cursor cursor = mDb.query(TABLE_ENTITIES,
+                    new String[]{ENTITIES_ID, ENTITIES_JSON, ENTITIES_UPDATED},
+                    ENTITIES_TYPE + " = ? AND " + ENTITIES_UPDATED + " >= ? AND "
+                            + ENTITIES_ID + " IN (" + SqlUtils.placeholders(chunk.size()) + ")",
+                    selectionArgs, null, null, null);
+            try {
+                while (cursor.moveToNext()) {
+                    Entry entry = new Entry();
+                    entry.json = cursor.getString(1);
+                    entry.updated = cursor.getLong(2);
+                    entries.put(cursor.getString(0), entry);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        if (!entries.isEmpty()) {
+            touch(type, entries.keySet(), now);
+        }
+        return entries;
+    }
+
+    /**
+     * Updates the access time of the given entities, so that they will be evicted last
+     */
+    private void touch(int type, Collection<String> ids, long time) {
+        List<String> idList = new ArrayList<>(ids);
+        synchronized (mWriteLock) {
+            mDb.beginTransaction();
+            try {
+                for (int i = 0; i < idList.size(); i += SqlUtils.MAX_SQL_VARIABLES) {
+                    List<String> chunk =
+                            idList.subList(i,
+                                    Math.min(i + SqlUtils.MAX_SQL_VARIABLES, idList.size()));
+                    String[] bindArgs = new String[chunk.size() + 2];
+                    bindArgs[0] = String.valueOf(time);
+                    bindArgs[1] = String.valueOf(type);
+                    for (int j = 0; j < chunk.size(); j++) {
+                        bindArgs[j + 2] = chunk.get(j);
+                    }
+                    mDb.execSQL("UPDATE " + TABLE_ENTITIES + " SET " + ENTITIES_ACCESSED
+                            + " = ? WHERE " + ENTITIES_TYPE + " = ? AND " + ENTITIES_ID
+                            + " IN (" + SqlUtils.placeholders(chunk.size()) + ")", bindArgs);
+                }
+                mDb.setTransactionSuccessful();
+            } finally {
+                mDb.endTransaction();
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/* == This file is part of Tomahawk Player - <http://tomahawk-player.org> ===
+ *
+ *   Copyright 2015, Enno Gottschalk <mrmaffen@googlemail.com>
+ *
+ *   Tomahawk is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Tomahawk is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Tomahawk. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tomahawk.libtomahawk.database;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A compact index of the rowid, lastModified timestamp and type of every row in the media table,
+ * keyed by a 64 bit hash of the row's location. The entries are being stored in an open addressing
+ * hash table made of primitive arrays, so that even large libraries only take a few bytes per
+ * file. The full {@link org.tomahawk.tomahawk_android.utils.MediaWrapper}s can be loaded through
+ * {@link DatabaseHelper#getMedias(List)} for the rows that actually need them.
+ *
+ * Every entry can be marked as "seen" (its file still exists) and "unchanged" (its row is still
+ * up to date). Marking is thread-safe.
+ */
+public class MediaIndex {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] mHashes;
+
+    private long[] mRowIds;
+
+    private long[] mLastModifieds;
+
+    private int[] mTypes;
+
+    private final BitSet mSeen = new BitSet();
+
+    private final BitSet mUnchanged = new BitSet();
+
+    private int mSize;
+
+    public MediaIndex(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        // Keep the load factor at or below 0.5
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    /**
+     * Adds the given row, unless a row with the same location hash has already been added
+     */
+    void put(long rowId, String location, long lastModified, int type) {
+        if ((mSize + 1) * 2 > mHashes.length) {
+            resize(mHashes.length * 2);
+        }
+        insert(hash(location), rowId, lastModified, type);
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the slot of the entry with the given location or -1, if there is none
+     */
+    public int indexOf(String location) {
+        long hash = hash(location);
+        int mask = mHashes.length - 1;
+        for (int i = slot(hash, mask); mHashes[i] != 0; i = (i + 1) & mask) {
+            if (mHashes[i] == hash) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public long getRowId(int slot) {
+        return mRowIds[slot];
+    }
+
+    public long getLastModified(int slot) {
+        return mLastModifieds[slot];
+    }
+
+    public int getType(int slot) {
+        return mTypes[slot];
+    }
+
+    /**
+     * Marks the entry in the given slot as seen, meaning that its file still exists
+     */
+    public synchronized void markSeen(int slot) {
+        mSeen.set(slot);
+    }
+
+    /**
+     * Marks the entry in the given slot as seen and unchanged, meaning that its row is still up to
+     * date
+     */
+    public synchronized void markUnchanged(int slot) {
+        mSeen.set(slot);
+        mUnchanged.set(slot);
+    }
+
+    public synchronized boolean isUnchanged(int slot) {
+        return mUnchanged.get(slot);
+    }
+
+    /**
+     * @return the rowids of all entries that haven't been marked as seen
+     */
+    public synchronized List<Long> getUnseenRowIds() {
+        List<Long> rowIds = new ArrayList<>();
+        for (int i = 0; i < mHashes.length; i++) {
+            if (mHashes[i] != 0 && !mSeen.get(i)) {
+                rowIds.add(mRowIds[i]);
+            }
+        }
+        return rowIds;
+    }
+
+    /**
+     * @return the slots of all entries of the given type that have been marked as unchanged
+     */
+    public synchronized List<Integer> getUnchangedSlots(int type) {
+        List<Integer> slots = new ArrayList<>();
+        for (int i = mUnchanged.nextSetBit(0); i >= 0; i = mUnchanged.nextSetBit(i + 1)) {
+            if (mTypes[i] == type) {
+                slots.add(i);
+            }
+        }
+        return slots;
+    }
+
+    private void insert(long hash, long rowId, long lastModified, int type) {
+        int mask = mHashes.length - 1;
+        int i = slot(hash, mask);
+        while (mHashes[i] != 0) {
+            if (mHashes[i] == hash) {
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        mHashes[i] = hash;
+        mRowIds[i] = rowId;
+        mLastModifieds[i] = lastModified;
+        mTypes[i] = type;
+        mSize++;
+    }
+
+    private void resize(int capacity) {
+        long[] hashes = mHashes;
+        long[] rowIds = mRowIds;
+        long[] lastModifieds = mLastModifieds;
+        int[] types = mTypes;
+        allocate(capacity);
+        mSize = 0;
+        for (int i = 0; i < hashes.length; i++) {
+            if (hashes[i] != 0) {
+                insert(hashes[i], rowIds[i], lastModifieds[i], types[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        mHashes = new long[capacity];
+        mRowIds = new long[capacity];
+        mLastModifieds = new long[capacity];
+        mTypes = new int[capacity];
+    }
+
+    private static int slot(long hash, int mask) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    /**
+     * @return the 64 bit FNV-1a hash of the given String. 0 is reserved for empty slots.
+     */
+    private static long hash(String s) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            hash ^= s.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+}
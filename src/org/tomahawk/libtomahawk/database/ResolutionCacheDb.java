@@ -0,0 +1,300 @@
+/* == This file is part of Tomahawk Player - <http://tomahawk-player.org> ===
+ *
+ *   Copyright 2015, Enno Gottschalk <mrmaffen@googlemail.com>
+ *
+ *   Tomahawk is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Tomahawk is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Tomahawk. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tomahawk.libtomahawk.database;
+
+import org.tomahawk.libtomahawk.collection.Track;
+import org.tomahawk.libtomahawk.resolver.Query;
+import org.tomahawk.libtomahawk.resolver.Result;
+import org.tomahawk.tomahawk_android.TomahawkApp;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persists the scored {@link Result}s that the {@link org.tomahawk.libtomahawk.resolver.Resolver}s
+ * have reported for a {@link Query}, so that a {@link Query} doesn't have to be resolved from
+ * scratch after every app launch. {@link Result}s are being keyed by the normalized artist, album
+ * and track name of their {@link Query} and expire after {@link #MAX_AGE}.
+ */
+public class ResolutionCacheDb extends BoundedCacheDb {
+
+    public static final String TAG = ResolutionCacheDb.class.getSimpleName();
+
+    public static final String TABLE_RESULTS = "results";
+
+    public static final String RESULTS_QUERYARTIST = "queryartist";
+
+    public static final String RESULTS_QUERYALBUM = "queryalbum";
+
+    public static final String RESULTS_QUERYTRACK = "querytrack";
+
+    public static final String RESULTS_RESOLVER = "resolver";
+
+    public static final String RESULTS_URL = "url";
+
+    public static final String RESULTS_SCORE = "score";
+
+    public static final String RESULTS_ARTIST = "artist";
+
+    public static final String RESULTS_ALBUM = "album";
+
+    public static final String RESULTS_TRACK = "track";
+
+    public static final String RESULTS_DURATION = "duration";
+
+    public static final String RESULTS_BITRATE = "bitrate";
+
+    public static final String RESULTS_SIZE = "size";
+
+    public static final String RESULTS_LINKURL = "linkurl";
+
+    public static final String RESULTS_PURCHASEURL = "purchaseurl";
+
+    public static final String RESULTS_UPDATED = "updated";
+
+    private static final String CREATE_TABLE_RESULTS = "CREATE TABLE IF NOT EXISTS "
+            + TABLE_RESULTS + " ("
+            + RESULTS_QUERYARTIST + " TEXT NOT NULL,"
+            + RESULTS_QUERYALBUM + " TEXT NOT NULL,"
+            + RESULTS_QUERYTRACK + " TEXT NOT NULL,"
+            + RESULTS_RESOLVER + " TEXT NOT NULL,"
+            + RESULTS_URL + " TEXT NOT NULL,"
+            + RESULTS_SCORE + " REAL NOT NULL,"
+            + RESULTS_ARTIST + " TEXT,"
+            + RESULTS_ALBUM + " TEXT,"
+            + RESULTS_TRACK + " TEXT,"
+            + RESULTS_DURATION + " INTEGER,"
+            + RESULTS_BITRATE + " INTEGER,"
+            + RESULTS_SIZE + " INTEGER,"
+            + RESULTS_LINKURL + " TEXT,"
+            + RESULTS_PURCHASEURL + " TEXT,"
+            + RESULTS_UPDATED + " INTEGER NOT NULL,"
+            + "PRIMARY KEY (" + RESULTS_QUERYARTIST + ", " + RESULTS_QUERYALBUM + ", "
+            + RESULTS_QUERYTRACK + ", " + RESULTS_RESOLVER + ", " + RESULTS_URL + "));";
+
+    private static final String CREATE_INDEX_RESULTS_UPDATED = "CREATE INDEX IF NOT EXISTS "
+            + TABLE_RESULTS + "_" + RESULTS_UPDATED + " ON " + TABLE_RESULTS
+            + " (" + RESULTS_UPDATED + ");";
+
+    private static final String DB_NAME = "resolutioncache.db";
+
+    private static final int DB_VERSION = 1;
+
+    /**
+     * The time in ms after which a cached {@link Result} is being ignored, since the URLs of some
+     * resolvers don't stay valid forever
+     */
+    public static final long MAX_AGE = 7L * 24 * 60 * 60 * 1000;
+
+    private static final int MAX_ENTRIES = 20000;
+
+    private static class Holder {
+
+        private static final ResolutionCacheDb instance =
+                new ResolutionCacheDb(TomahawkApp.getContext());
+
+    }
+
+    public static class Entry {
+
+        public String resolverId;
+
+        public String url;
+
+        public float score;
+
+        public String artistName;
+
+        public String albumName;
+
+        public String trackName;
+
+        public long duration;
+
+        public int bitrate;
+
+        public int size;
+
+        public String linkUrl;
+
+        public String purchaseUrl;
+
+    }
+
+    private ResolutionCacheDb(Context context) {
+        super(context, DB_NAME, DB_VERSION, TABLE_RESULTS, RESULTS_UPDATED, MAX_ENTRIES);
+
+        trim();
+    }
+
+    public static ResolutionCacheDb get() {
+        return Holder.instance;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL(CREATE_TABLE_RESULTS);
+        db.execSQL(CREATE_INDEX_RESULTS_UPDATED);
+    }
+
+    /**
+     * Stores the given {@link Result}s of the given {@link Query}, replacing the ones with the same
+     * resolver and URL.
+     *
+     * @param results a map of the {@link Result}s to their scores
+     */
+    public void put(Query query, Map<Result, Float> results) {
+        if (results.isEmpty()) {
+            return;
+        }
+        String[] key = getKey(query);
+        long now = System.currentTimeMillis();
+        synchronized (mWriteLock) {
+            SQLiteStatement statement = mDb.compileStatement("INSERT OR REPLACE INTO "
+                    + TABLE_RESULTS + " (" + RESULTS_QUERYARTIST + ", " + RESULTS_QUERYALBUM + ", "
+                    + RESULTS_QUERYTRACK + ", " + RESULTS_RESOLVER + ", " + RESULTS_URL + ", "
+                    + RESULTS_SCORE + ", " + RESULTS_ARTIST + ", " + RESULTS_ALBUM + ", "
+                    + RESULTS_TRACK + ", " + RESULTS_DURATION + ", " + RESULTS_BITRATE + ", "
+                    + RESULTS_SIZE + ", " + RESULTS_LINKURL + ", " + RESULTS_PURCHASEURL + ", "
+                    + RESULTS_UPDATED + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+            mDb.beginTransaction();
+            try {
+                for (Map.Entry<Result, Float> entry : results.entrySet()) {
+                    Result result = entry.getKey();
+                    Track track = result.getTrack();
+                    statement.clearBindings();
+                    statement.bindString(1, key[0]);
+                    statement.bindString(2, key[1]);
+                    statement.bindString(3, key[2]);
+                    statement.bindString(4, result.getResolvedBy().getId());
+                    statement.bindString(5, result.getPath());
+                    statement.bindDouble(6, entry.getValue());
+                    bindString(statement, 7, track.getArtist().getName());
+                    bindString(statement, 8, track.getAlbum().getName());
+                    bindString(statement, 9, track.getName());
+                    statement.bindLong(10, track.getDuration());
+                    statement.bindLong(11, result.getBitrate());
+                    statement.bindLong(12, result.getSize());
+                    bindString(statement, 13, result.getLinkUrl());
+                    bindString(statement, 14, result.getPurchaseUrl());
+                    statement.bindLong(15, now);
+                    statement.executeInsert();
+                }
+                mDb.setTransactionSuccessful();
+            } finally {
+                mDb.endTransaction();
+                statement.close();
+            }
+        }
+        onEntriesPut(results.size());
+    }
+
+    /**
+     * @return the {@link Entry}s of all cached {@link Result}s of the given {@link Query} that
+     * haven't expired yet
+     */
+    public List<Entry> get(Query query) {
+        List<Entry> entries = new ArrayList<>();
+        String[] key = getKey(query);
+        Cursor cursor = mDb.query(TABLE_RESULTS,
+                new String[]{RESULTS_RESOLVER, RESULTS_URL, RESULTS_SCORE, RESULTS_ARTIST,
+                        RESULTS_ALBUM, RESULTS_TRACK, RESULTS_DURATION, RESULTS_BITRATE,
+                        RESULTS_SIZE, RESULTS_LINKURL, RESULTS_PURCHASEURL},
+                RESULTS_QUERYARTIST + " = ? AND " + RESULTS_QUERYALBUM + " = ? AND "
+                        + RESULTS_QUERYTRACK + " = ? AND " + RESULTS_UPDATED + " >= ?",
+                new String[]{key[0], key[1], key[2],
+                        String.valueOf(System.currentTimeMillis() - MAX_AGE)},
+                null, null, RESULTS_SCORE + " DESC");
+        try {
+            while (cursor.moveToNext()) {
+                Entry entry = new Entry();
+                entry.resolverId = cursor.getString(0);
+                entry.url = cursor.getString(1);
+                entry.score = cursor.getFloat(2);
+                entry.artistName = cursor.getString(3);
+                entry.albumName = cursor.getString(4);
+                entry.trackName = cursor.getString(5);
+                entry.duration = cursor.getLong(6);
+                entry.bitrate = cursor.getInt(7);
+                entry.size = cursor.getInt(8);
+                entry.linkUrl = cursor.getString(9);
+                entry.purchaseUrl = cursor.getString(10);
+                entries.add(entry);
+            }
+        } finally {
+            cursor.close();
+        }
+        return entries;
+    }
+
+    /**
+     * Removes the given {@link Result} of the given {@link Query}, e.g. after it has been
+     * blacklisted
+     */
+    public void remove(Query query, Result result) {
+        String[] key = getKey(query);
+        synchronized (mWriteLock) {
+            mDb.delete(TABLE_RESULTS, RESULTS_QUERYARTIST + " = ? AND " + RESULTS_QUERYALBUM
+                            + " = ? AND " + RESULTS_QUERYTRACK + " = ? AND " + RESULTS_RESOLVER
+                            + " = ? AND " + RESULTS_URL + " = ?",
+                    new String[]{key[0], key[1], key[2], result.getResolvedBy().getId(),
+                            result.getPath()});
+        }
+    }
+
+    /**
+     * Removes all cached {@link Result}s of the resolver with the given id
+     */
+    public void removeResolver(String resolverId) {
+        synchronized (mWriteLock) {
+            mDb.delete(TABLE_RESULTS, RESULTS_RESOLVER + " = ?", new String[]{resolverId});
+        }
+    }
+
+    /**
+     * Removes all expired {@link Result}s, before the oldest ones are being evicted
+     */
+    @Override
+    protected void onTrim() {
+        mDb.delete(TABLE_RESULTS, RESULTS_UPDATED + " < ?",
+                new String[]{String.valueOf(System.currentTimeMillis() - MAX_AGE)});
+    }
+
+    /**
+     * @return the normalized artist, album and track name of the given {@link Query}
+     */
+    private static String[] getKey(Query query) {
+        Track track = query.getBasicTrack();
+        return new String[]{track.getArtist().getNormalizedName(),
+                track.getAlbum().getNormalizedName(), track.getNormalizedName()};
+    }
+
+    private static void bindString(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+}
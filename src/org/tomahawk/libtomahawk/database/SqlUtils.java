@@ -0,0 +1,46 @@
+/* == This file is part of Tomahawk Player - <http://tomahawk-player.org> ===
+ *
+ *   Copyright 2015, Enno Gottschalk <mrmaffen@googlemail.com>
+ *
+ *   Tomahawk is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Tomahawk is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Tomahawk. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tomahawk.libtomahawk.database;
+
+/**
+ * Helpers for building SQL statements that bind a large number of values
+ */
+public class SqlUtils {
+
+    /**
+     * The maximum number of values that are being bound in a single SQL statement. SQLite's
+     * default SQLITE_MAX_VARIABLE_NUMBER is 999, so larger lists of values have to be split into
+     * chunks of this size.
+     */
+    public static final int MAX_SQL_VARIABLES = 500;
+
+    /**
+     * @return the given number of comma separated "?" placeholders, e.g. to be used in an "IN"
+     * clause
+     */
+    public static String placeholders(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(",");
+            }
+            sb.append("?");
+        }
+        return sb.toString();
+    }
+}
@@ -37,14 +37,22 @@ import org.tomahawk.libtomahawk.resolver.Query;
 import org.tomahawk.libtomahawk.utils.GsonHelper;
 import org.tomahawk.tomahawk_android.TomahawkApp;
 import org.tomahawk.tomahawk_android.activities.TomahawkMainActivity;
+import org.tomahawk.tomahawk_android.utils.ThreadManager;
+import org.tomahawk.tomahawk_android.utils.TomahawkRunnable;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.text.TextUtils;
 import android.util.Log;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import de.greenrobot.event.EventBus;
@@ -56,6 +64,15 @@ public class InfoSystem {
 
     private static final String TAG = InfoSystem.class.getSimpleName();
 
+    /**
+     * The maximum number of loggedOps that are being sent to Hatchet at the same time
+     */
+    private static final int MAX_LOGGED_OPS_IN_FLIGHT = 4;
+
+    private static final long MIN_RETRY_DELAY = 1000;
+
+    private static final long MAX_RETRY_DELAY = 60000;
+
     private static class Holder {
 
         private static final InfoSystem instance = new InfoSystem();
@@ -93,6 +110,41 @@ public class InfoSystem {
     // LoggedOps waiting to be sent as soon as mPlaylistsLoggedOpsMap is empty
     private final ArrayList<InfoRequestData> mQueuedLoggedOps = new ArrayList<>();
 
+    // LoggedOps that are ready to be sent, as soon as fewer than MAX_LOGGED_OPS_IN_FLIGHT are in
+    // flight
+    private final ArrayDeque<InfoRequestData> mPendingLoggedOps = new ArrayDeque<>();
+
+    // The requestIds of all loggedOps that have been sent and haven't reported back yet
+    private final Set<String> mLoggedOpsInFlight = new HashSet<>();
+
+    // The delay before the next retry after a loggedOp has failed to be sent. 0 if the last
+    // loggedOp has been sent successfully.
+    private long mRetryDelay = 0;
+
+    private boolean mRetryScheduled = false;
+
+    private final Handler mRetryHandler = new Handler(Looper.getMainLooper());
+
+    private final Runnable mRetryRunnable = new Runnable() {
+        @Override
+        public void run() {
+            ThreadManager.get().execute(
+                    new TomahawkRunnable(TomahawkRunnable.PRIORITY_IS_INFOSYSTEM_LOW) {
+                        @Override
+                        public void run() {
+                            synchronized (InfoSystem.this) {
+                                mRetryScheduled = false;
+                            }
+                            AuthenticatorUtils authenticatorUtils = AuthenticatorManager.get()
+                                    .getAuthenticatorUtils(TomahawkApp.PLUGINNAME_HATCHET);
+                            if (authenticatorUtils.isLoggedIn()) {
+                                sendLoggedOps(authenticatorUtils);
+                            }
+                        }
+                    });
+        }
+    };
+
     private Query mLastPlaybackLogEntry = null;
 
     private Query mNowPlaying = null;
@@ -621,35 +673,164 @@ public class InfoSystem {
     }
 
 
+    /**
+     * Loads all loggedOps that aren't being handled yet from the oplog, drops the redundant ones
+     * and sends the rest to Hatchet. At most {@link #MAX_LOGGED_OPS_IN_FLIGHT} loggedOps are being
+     * sent at the same time.
+     *
+     * @return the requestIds of all loggedOps that are going to be sent
+     */
     public synchronized List<String> sendLoggedOps(AuthenticatorUtils authenticatorUtils) {
         List<String> requestIds = new ArrayList<>();
-        List<InfoRequestData> loggedOps = DatabaseHelper.get().getLoggedOps();
-        for (InfoRequestData loggedOp : loggedOps) {
+        List<InfoRequestData> loggedOps = new ArrayList<>();
+        for (InfoRequestData loggedOp : DatabaseHelper.get().getLoggedOps()) {
             if (!mLoggedOpsMap.containsKey(loggedOp.getLoggedOpId())) {
-                mLoggedOpsMap.put(loggedOp.getLoggedOpId(), loggedOp);
-                if (loggedOp.getType()
-                        == InfoRequestData.INFOREQUESTDATA_TYPE_PLAYLISTS_PLAYLISTENTRIES
-                        || (loggedOp.getHttpType() == InfoRequestData.HTTPTYPE_DELETE
-                        && loggedOp.getType() == InfoRequestData.INFOREQUESTDATA_TYPE_PLAYLISTS)) {
-                    mQueuedLoggedOps.add(loggedOp);
-                } else {
-                    if (loggedOp.getType() == InfoRequestData.INFOREQUESTDATA_TYPE_PLAYLISTS) {
-                        mPlaylistsLoggedOpsMap.put(loggedOp.getLoggedOpId(), loggedOp);
-                    }
-                    send(loggedOp, authenticatorUtils);
+                loggedOps.add(loggedOp);
+            }
+        }
+        List<InfoRequestData> redundantOps = coalesceLoggedOps(loggedOps);
+        if (!redundantOps.isEmpty()) {
+            Log.d(TAG, "sendLoggedOps - dropping " + redundantOps.size() + " redundant loggedOps");
+            loggedOps.removeAll(redundantOps);
+            DatabaseHelper.get().removeOpsFromInfoSystemOpLog(redundantOps);
+            if (DatabaseHelper.get().getLoggedOpsCount() == 0) {
+                OpLogIsEmptiedEvent event = new OpLogIsEmptiedEvent();
+                event.mRequestTypes = new HashSet<>();
+                event.mPlaylistIds = new HashSet<>();
+                for (InfoRequestData redundantOp : redundantOps) {
+                    event.mRequestTypes.add(redundantOp.getType());
                 }
-                requestIds.add(loggedOp.getRequestId());
+                EventBus.getDefault().post(event);
+            }
+        }
+        for (InfoRequestData loggedOp : loggedOps) {
+            mLoggedOpsMap.put(loggedOp.getLoggedOpId(), loggedOp);
+            if (loggedOp.getType()
+                    == InfoRequestData.INFOREQUESTDATA_TYPE_PLAYLISTS_PLAYLISTENTRIES
+                    || (loggedOp.getHttpType() == InfoRequestData.HTTPTYPE_DELETE
+                    && loggedOp.getType() == InfoRequestData.INFOREQUESTDATA_TYPE_PLAYLISTS)) {
+                mQueuedLoggedOps.add(loggedOp);
+            } else if (loggedOp.getType() == InfoRequestData.INFOREQUESTDATA_TYPE_PLAYLISTS) {
+                mPlaylistsLoggedOpsMap.put(loggedOp.getLoggedOpId(), loggedOp);
+                // Send the playlists first, because their entries are waiting for them
+                mPendingLoggedOps.addFirst(loggedOp);
+            } else {
+                mPendingLoggedOps.add(loggedOp);
             }
+            requestIds.add(loggedOp.getRequestId());
         }
         trySendingQueuedOps();
+        dispatchLoggedOps(authenticatorUtils);
         return requestIds;
     }
 
+    /**
+     * Finds the loggedOps that don't have to be sent anymore, because they are being cancelled out
+     * or superseded by another one of the given loggedOps:
+     * <ul>
+     * <li>a playlist that has been created and deleted again, together with all of its entries</li>
+     * <li>a playlist that has been updated more than once, except for the latest update</li>
+     * <li>identical copies of the same relationship or delete operation</li>
+     * </ul>
+     *
+     * @return the redundant loggedOps
+     */
+    private List<InfoRequestData> coalesceLoggedOps(List<InfoRequestData> loggedOps) {
+        Set<String> deletedPlaylistIds = new HashSet<>();
+        Set<String> createdPlaylistIds = new HashSet<>();
+        for (InfoRequestData loggedOp : loggedOps) {
+            if (loggedOp.getType() == InfoRequestData.INFOREQUESTDATA_TYPE_PLAYLISTS
+                    && loggedOp.getQueryParams() != null
+                    && loggedOp.getQueryParams().playlist_local_id != null) {
+                if (loggedOp.getHttpType() == InfoRequestData.HTTPTYPE_POST) {
+                    createdPlaylistIds.add(loggedOp.getQueryParams().playlist_local_id);
+                } else if (loggedOp.getHttpType() == InfoRequestData.HTTPTYPE_DELETE) {
+                    deletedPlaylistIds.add(loggedOp.getQueryParams().playlist_local_id);
+                }
+            }
+        }
+        deletedPlaylistIds.retainAll(createdPlaylistIds);
+
+        List<InfoRequestData> redundantOps = new ArrayList<>();
+        Map<String, InfoRequestData> latestOps = new HashMap<>();
+        for (InfoRequestData loggedOp : loggedOps) {
+            QueryParams params = loggedOp.getQueryParams();
+            if ((loggedOp.getType() == InfoRequestData.INFOREQUESTDATA_TYPE_PLAYLISTS
+                    || loggedOp.getType()
+                    == InfoRequestData.INFOREQUESTDATA_TYPE_PLAYLISTS_PLAYLISTENTRIES)
+                    && params != null && deletedPlaylistIds.contains(params.playlist_local_id)) {
+                redundantOps.add(loggedOp);
+                continue;
+            }
+            String key;
+            if (loggedOp.getHttpType() == InfoRequestData.HTTPTYPE_PUT) {
+                key = loggedOp.getType() + "\t" + GsonHelper.get().toJson(params);
+            } else if (loggedOp.getHttpType() == InfoRequestData.HTTPTYPE_DELETE
+                    || loggedOp.getType() == InfoRequestData.INFOREQUESTDATA_TYPE_RELATIONSHIPS) {
+                key = loggedOp.getType() + "\t" + loggedOp.getHttpType() + "\t"
+                        + GsonHelper.get().toJson(params) + "\t"
+                        + loggedOp.getJsonStringToSend();
+            } else {
+                continue;
+            }
+            // Of all equivalent loggedOps only keep the one that has been logged last
+            InfoRequestData latestOp = latestOps.get(key);
+            if (latestOp == null) {
+                latestOps.put(key, loggedOp);
+            } else if (latestOp.getLoggedOpId() < loggedOp.getLoggedOpId()) {
+                latestOps.put(key, loggedOp);
+                redundantOps.add(latestOp);
+            } else {
+                redundantOps.add(loggedOp);
+            }
+        }
+        return redundantOps;
+    }
+
+    /**
+     * Sends the pending loggedOps, as long as fewer than {@link #MAX_LOGGED_OPS_IN_FLIGHT} are in
+     * flight. While retrying after a failure, only a single loggedOp is being sent at a time.
+     */
+    private synchronized void dispatchLoggedOps(AuthenticatorUtils authenticatorUtils) {
+        if (mRetryScheduled) {
+            return;
+        }
+        int maxInFlight = mRetryDelay > 0 ? 1 : MAX_LOGGED_OPS_IN_FLIGHT;
+        while (mLoggedOpsInFlight.size() < maxInFlight && !mPendingLoggedOps.isEmpty()) {
+            InfoRequestData loggedOp = mPendingLoggedOps.poll();
+            mLoggedOpsInFlight.add(loggedOp.getRequestId());
+            send(loggedOp, authenticatorUtils);
+        }
+    }
+
+    /**
+     * Schedules the next attempt to send the loggedOps. The delay is being doubled with every
+     * consecutive failure.
+     */
+    private synchronized void scheduleRetry() {
+        if (mRetryScheduled) {
+            return;
+        }
+        mRetryScheduled = true;
+        mRetryDelay = mRetryDelay == 0 ? MIN_RETRY_DELAY
+                : Math.min(mRetryDelay * 2, MAX_RETRY_DELAY);
+        Log.d(TAG, "scheduleRetry - retrying to send loggedOps in " + mRetryDelay + "ms");
+        mRetryHandler.postDelayed(mRetryRunnable, mRetryDelay);
+    }
+
     public synchronized void onLoggedOpsSent(ArrayList<String> doneRequestsIds, boolean discard) {
         List<InfoRequestData> loggedOps = new ArrayList<>();
         HashSet<Integer> requestTypes = new HashSet<>();
         HashSet<String> playlistIds = new HashSet<>();
         for (String doneRequestId : doneRequestsIds) {
+            if (mLoggedOpsInFlight.remove(doneRequestId)) {
+                if (discard) {
+                    mRetryDelay = 0;
+                } else {
+                    // The loggedOp is still in the oplog and is being loaded again by the retry
+                    scheduleRetry();
+                }
+            }
             if (mSentRequests.containsKey(doneRequestId)) {
                 InfoRequestData loggedOp = mSentRequests.get(doneRequestId);
                 loggedOps.add(loggedOp);
@@ -688,6 +869,8 @@ public class InfoSystem {
                 }
             }
         }
+        dispatchLoggedOps(AuthenticatorManager.get().getAuthenticatorUtils(
+                TomahawkApp.PLUGINNAME_HATCHET));
     }
 
     private synchronized void trySendingQueuedOps() {
@@ -710,8 +893,7 @@ public class InfoSystem {
                     } else {
                         params.playlist_id = hatchetId;
                     }
-                    send(queuedLoggedOp, AuthenticatorManager.get().getAuthenticatorUtils(
-                            TomahawkApp.PLUGINNAME_HATCHET));
+                    mPendingLoggedOps.add(queuedLoggedOp);
                 } else {
                     Log.e(TAG, "Hatchet sync - Couldn't send queued logged op, because the stored "
                             + "local playlist id was no longer valid");
@@ -284,80 +284,86 @@ public class HatchetInfoPlugin implements InfoPlugin {
                 // Before we do anything, get the accesstoken
                 boolean success = false;
                 boolean discard = false;
-                String accessToken = mHatchetAuthenticatorUtils.ensureAccessTokens();
-                if (accessToken != null) {
-                    String data = infoRequestData.getJsonStringToSend();
-                    try {
-                        if (infoRequestData.getType()
-                                == InfoRequestData.INFOREQUESTDATA_TYPE_PLAYBACKLOGENTRIES) {
-                            hatchet.postPlaybackLogEntries(accessToken,
-                                    new TypedByteArray("application/json; charset=utf-8",
-                                            data.getBytes(Charsets.UTF_8)));
-                        } else if (infoRequestData.getType()
-                                == InfoRequestData.INFOREQUESTDATA_TYPE_SOCIALACTIONS) {
-                            //legacy for users with v1 loggedOps in their queue
-                            hatchet.postRelationship(accessToken,
-                                    new TypedByteArray("application/json; charset=utf-8",
-                                            data.getBytes(Charsets.UTF_8)));
-                        } else if (infoRequestData.getType()
-                                == InfoRequestData.INFOREQUESTDATA_TYPE_PLAYLISTS) {
-                            if (infoRequestData.getHttpType()
-                                    == InfoRequestData.HTTPTYPE_POST) {
-                                HatchetPlaylistEntries entries = hatchet.postPlaylists(accessToken,
-                                        new TypedByteArray("application/json; charset=utf-8",
-                                                data.getBytes(Charsets.UTF_8)));
-                                List<HatchetPlaylistEntries> results = new ArrayList<>();
-                                results.add(entries);
-                                infoRequestData.setResultList(results);
-                            } else if (infoRequestData.getHttpType()
-                                    == InfoRequestData.HTTPTYPE_DELETE) {
-                                hatchet.deletePlaylists(accessToken,
-                                        infoRequestData.getQueryParams().playlist_id);
-                            } else if (infoRequestData.getHttpType()
-                                    == InfoRequestData.HTTPTYPE_PUT) {
-                                hatchet.putPlaylists(accessToken,
-                                        infoRequestData.getQueryParams().playlist_id,
-                                        new TypedByteArray("application/json; charset=utf-8",
-                                                data.getBytes(Charsets.UTF_8)));
-                            }
-                        } else if (infoRequestData.getType()
-                                == InfoRequestData.INFOREQUESTDATA_TYPE_PLAYLISTS_PLAYLISTENTRIES) {
-                            if (infoRequestData.getHttpType()
-                                    == InfoRequestData.HTTPTYPE_POST) {
-                                hatchet.postPlaylistsPlaylistEntries(accessToken,
+                try {
+                    String accessToken = mHatchetAuthenticatorUtils.ensureAccessTokens();
+                    if (accessToken != null) {
+                        String data = infoRequestData.getJsonStringToSend();
+                        try {
+                            if (infoRequestData.getType()
+                                    == InfoRequestData.INFOREQUESTDATA_TYPE_PLAYBACKLOGENTRIES) {
+                                hatchet.postPlaybackLogEntries(accessToken,
                                         new TypedByteArray("application/json; charset=utf-8",
                                                 data.getBytes(Charsets.UTF_8)));
-                            } else if (infoRequestData.getHttpType()
-                                    == InfoRequestData.HTTPTYPE_DELETE) {
-                                hatchet.deletePlaylistsPlaylistEntries(accessToken,
-                                        infoRequestData.getQueryParams().entry_id);
-                            }
-                        } else if (infoRequestData.getType()
-                                == InfoRequestData.INFOREQUESTDATA_TYPE_RELATIONSHIPS) {
-                            if (infoRequestData.getHttpType()
-                                    == InfoRequestData.HTTPTYPE_POST) {
+                            } else if (infoRequestData.getType()
+                                    == InfoRequestData.INFOREQUESTDATA_TYPE_SOCIALACTIONS) {
+                                //legacy for users with v1 loggedOps in their queue
                                 hatchet.postRelationship(accessToken,
                                         new TypedByteArray("application/json; charset=utf-8",
                                                 data.getBytes(Charsets.UTF_8)));
-                            } else if (infoRequestData.getHttpType()
-                                    == InfoRequestData.HTTPTYPE_DELETE) {
-                                hatchet.deleteRelationShip(accessToken,
-                                        infoRequestData.getQueryParams().relationship_id);
+                            } else if (infoRequestData.getType()
+                                    == InfoRequestData.INFOREQUESTDATA_TYPE_PLAYLISTS) {
+                                if (infoRequestData.getHttpType()
+                                        == InfoRequestData.HTTPTYPE_POST) {
+                                    HatchetPlaylistEntries entries = hatchet.postPlaylists(
+                                            accessToken, new TypedByteArray(
+                                                    "application/json; charset=utf-8",
+                                                    data.getBytes(Charsets.UTF_8)));
+                                    List<HatchetPlaylistEntries> results = new ArrayList<>();
+                                    results.add(entries);
+                                    infoRequestData.setResultList(results);
+                                } else if (infoRequestData.getHttpType()
+                                        == InfoRequestData.HTTPTYPE_DELETE) {
+                                    hatchet.deletePlaylists(accessToken,
+                                            infoRequestData.getQueryParams().playlist_id);
+                                } else if (infoRequestData.getHttpType()
+                                        == InfoRequestData.HTTPTYPE_PUT) {
+                                    hatchet.putPlaylists(accessToken,
+                                            infoRequestData.getQueryParams().playlist_id,
+                                            new TypedByteArray("application/json; charset=utf-8",
+                                                    data.getBytes(Charsets.UTF_8)));
+                                }
+                            } else if (infoRequestData.getType()
+                                    == InfoRequestData
+                                    .INFOREQUESTDATA_TYPE_PLAYLISTS_PLAYLISTENTRIES) {
+                                if (infoRequestData.getHttpType()
+                                        == InfoRequestData.HTTPTYPE_POST) {
+                                    hatchet.postPlaylistsPlaylistEntries(accessToken,
+                                            new TypedByteArray("application/json; charset=utf-8",
+                                                    data.getBytes(Charsets.UTF_8)));
+                                } else if (infoRequestData.getHttpType()
+                                        == InfoRequestData.HTTPTYPE_DELETE) {
+                                    hatchet.deletePlaylistsPlaylistEntries(accessToken,
+                                            infoRequestData.getQueryParams().entry_id);
+                                }
+                            } else if (infoRequestData.getType()
+                                    == InfoRequestData.INFOREQUESTDATA_TYPE_RELATIONSHIPS) {
+                                if (infoRequestData.getHttpType()
+                                        == InfoRequestData.HTTPTYPE_POST) {
+                                    hatchet.postRelationship(accessToken,
+                                            new TypedByteArray("application/json; charset=utf-8",
+                                                    data.getBytes(Charsets.UTF_8)));
+                                } else if (infoRequestData.getHttpType()
+                                        == InfoRequestData.HTTPTYPE_DELETE) {
+                                    hatchet.deleteRelationShip(accessToken,
+                                            infoRequestData.getQueryParams().relationship_id);
+                                }
                             }
-                        }
-                        success = true;
-                        discard = true;
-                    } catch (RetrofitError e) {
-                        Log.e(TAG, "send: Request to " + e.getUrl() + " failed: " + e.getClass()
-                                + ": " + e.getLocalizedMessage());
-                        if (e.getResponse().getStatus() == 500) {
-                            Log.e(TAG, "send: discarding oplog that has failed to be sent to " + e
-                                    .getUrl());
+                            success = true;
                             discard = true;
+                        } catch (RetrofitError e) {
+                            Log.e(TAG, "send: Request to " + e.getUrl() + " failed: " + e.getClass()
+                                    + ": " + e.getLocalizedMessage());
+                            if (e.getResponse() != null && e.getResponse().getStatus() == 500) {
+                                Log.e(TAG, "send: discarding oplog that has failed to be sent "
+                                        + "to " + e.getUrl());
+                                discard = true;
+                            }
                         }
                     }
+                } finally {
+                    // Always free the loggedOp's slot, so that sending isn't stalled for good
+                    InfoSystem.get().onLoggedOpsSent(doneRequestsIds, discard);
                 }
-                InfoSystem.get().onLoggedOpsSent(doneRequestsIds, discard);
                 InfoSystem.get().reportResults(infoRequestData, success);
             }
         };
@@ -17,12 +17,14 @@ import org.tomahawk.libtomahawk.collection.ListItemString;
 import org.tomahawk.libtomahawk.collection.Playlist;
 import org.tomahawk.libtomahawk.collection.PlaylistEntry;
 import org.tomahawk.libtomahawk.database.DatabaseHelper;
+import org.tomahawk.libtomahawk.database.EntityCacheDb;
 import org.tomahawk.libtomahawk.infosystem.InfoRequestData;
 import org.tomahawk.libtomahawk.infosystem.QueryParams;
 import org.tomahawk.libtomahawk.infosystem.SocialAction;
 import org.tomahawk.libtomahawk.infosystem.User;
 import org.tomahawk.libtomahawk.resolver.Query;
 import org.tomahawk.libtomahawk.utils.GsonHelper;
+import org.tomahawk.libtomahawk.utils.HttpClientManager;
 import org.tomahawk.libtomahawk.utils.ISO8601Utils;
 import org.tomahawk.libtomahawk.utils.NetworkUtils;
 import org.tomahawk.tomahawk_android.TomahawkApp;
@@ -33,17 +35,29 @@ import android.util.SparseArray;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import retrofit.RequestInterceptor;
 import retrofit.RestAdapter;
+import retrofit.RetrofitError;
 import retrofit.android.MainThreadExecutor;
 import retrofit.client.OkClient;
 import retrofit.converter.GsonConverter;
@@ -78,6 +92,44 @@ public class Store {
 
     public static final int TYPE_SEARCHRESULTS = 9;
 
+    /**
+     * The maximum number of ids that are being fetched in a single request
+     */
+    private static final int MAX_IDS_PER_REQUEST = 50;
+
+    private static final int MAX_HYDRATION_THREADS = 4;
+
+    private static final ThreadPoolExecutor sHydrationExecutor = new ThreadPoolExecutor(
+            MAX_HYDRATION_THREADS, MAX_HYDRATION_THREADS, 10, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>());
+
+    /**
+     * Refreshes stale records that have been loaded from the {@link EntityCacheDb}. Separate from
+     * sHydrationExecutor, because refreshing a record hydrates it as well.
+     */
+    private static final ThreadPoolExecutor sRevalidationExecutor = new ThreadPoolExecutor(
+            1, 1, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+
+    static {
+        sHydrationExecutor.allowCoreThreadTimeOut(true);
+        sRevalidationExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private static final long DAY = 24 * HOUR;
+
+    /**
+     * Records that have been persisted longer ago than this are being ignored
+     */
+    private static final long MAX_PERSISTED_AGE = 90 * DAY;
+
+    /**
+     * The ids of all persisted records that are currently being refreshed, prefixed by their type
+     */
+    private final Set<String> mRevalidatingIds =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
     private final SparseArray<Map> mCache = new SparseArray<>();
 
     private final OkHttpClient mOkHttpClient;
@@ -97,7 +149,7 @@ public class Store {
                 request.addHeader("Content-type", "application/json; charset=utf-8");
             }
         };
-        mOkHttpClient = new OkHttpClient();
+        mOkHttpClient = HttpClientManager.get().newClient();
         File cacheDir = new File(TomahawkApp.getContext().getCacheDir(), "responseCache");
         Cache cache = new Cache(cacheDir, 1024 * 1024 * 20);
         mOkHttpClient.setCache(cache);
@@ -156,27 +208,22 @@ public class Store {
         }
         Object record = cache.get(id);
         if (record == null) {
-            Hatchet hatchet = getImplementation(isBackgroundRequest);
             List<String> ids = new ArrayList<>();
             ids.add(String.valueOf(id));
-            if (resultType == TYPE_IMAGES) {
-                storeRecords(hatchet.getImages(ids), resultType, isBackgroundRequest);
-            } else if (resultType == TYPE_ARTISTS) {
-                storeRecords(hatchet.getArtists(ids, null), resultType, isBackgroundRequest);
-            } else if (resultType == TYPE_ALBUMS) {
-                storeRecords(hatchet.getAlbums(ids, null, null), resultType, isBackgroundRequest);
-            } else if (resultType == TYPE_TRACKS) {
-                storeRecords(hatchet.getTracks(ids, null, null), resultType, isBackgroundRequest);
-            } else if (resultType == TYPE_USERS) {
-                storeRecords(hatchet.getUsers(ids, null, null, null), resultType,
-                        isBackgroundRequest);
-            } else if (resultType == TYPE_PLAYLISTENTRIES) {
-                throw new IOException(
-                        "Can't fetch playlist entry. There's no endpoint for that :(");
-            } else if (resultType == TYPE_PLAYLISTS) {
-                storeRecords(hatchet.getPlaylists(ids), resultType, isBackgroundRequest);
-            } else if (resultType == TYPE_SOCIALACTIONS) {
-                throw new IOException("Can't fetch social action. There's no endpoint for that :(");
+            SparseArray<List<String>> missingIds = new SparseArray<>();
+            missingIds.put(resultType, ids);
+            JsonObject persisted = loadPersistedRecords(missingIds);
+            if (persisted != null) {
+                List<JsonObject> objects = new ArrayList<>();
+                objects.add(persisted);
+                hydrate(objects, isBackgroundRequest);
+                buildRecords(persisted, -1, -1, isBackgroundRequest, null);
+            } else {
+                JsonObject object =
+                        fetchRecords(getImplementation(isBackgroundRequest), ids, resultType);
+                if (object != null) {
+                    storeRecords(object, resultType, isBackgroundRequest);
+                }
             }
             record = cache.get(id);
             if (record == null) {
@@ -187,6 +234,33 @@ public class Store {
         return record;
     }
 
+    /**
+     * Fetches the records with the given ids in a single request.
+     *
+     * @return the raw response or null, if there's no endpoint for the given type
+     */
+    private JsonObject fetchRecords(Hatchet hatchet, List<String> ids, int resultType)
+            throws IOException {
+        if (resultType == TYPE_IMAGES) {
+            return hatchet.getImages(ids);
+        } else if (resultType == TYPE_ARTISTS) {
+            return hatchet.getArtists(ids, null);
+        } else if (resultType == TYPE_ALBUMS) {
+            return hatchet.getAlbums(ids, null, null);
+        } else if (resultType == TYPE_TRACKS) {
+            return hatchet.getTracks(ids, null, null);
+        } else if (resultType == TYPE_USERS) {
+            return hatchet.getUsers(ids, null, null, null);
+        } else if (resultType == TYPE_PLAYLISTENTRIES) {
+            throw new IOException("Can't fetch playlist entry. There's no endpoint for that :(");
+        } else if (resultType == TYPE_PLAYLISTS) {
+            return hatchet.getPlaylists(ids);
+        } else if (resultType == TYPE_SOCIALACTIONS) {
+            throw new IOException("Can't fetch social action. There's no endpoint for that :(");
+        }
+        return null;
+    }
+
     public List storeRecords(JsonObject object, int resultType, boolean isBackgroundRequest)
             throws IOException {
         return storeRecords(object, resultType, -1, isBackgroundRequest);
@@ -198,9 +272,25 @@ public class Store {
         return storeRecords(object, resultType, requestType, isBackgroundRequest, null);
     }
 
+    /**
+     * Stores all records contained in the given response and persists them in the {@link
+     * EntityCacheDb}. All records that are being referenced, but that are neither cached nor
+     * contained in the response, are being fetched up front (see {@link #hydrate(List,
+     * boolean)}), so that building the records doesn't have to fetch them one by one.
+     */
     public List storeRecords(JsonObject object, int resultType, int requestType,
             boolean isBackgroundRequest, QueryParams params)
             throws IOException {
+        persistRecords(object);
+        List<JsonObject> objects = new ArrayList<>();
+        objects.add(object);
+        hydrate(objects, isBackgroundRequest);
+        return buildRecords(object, resultType, requestType, isBackgroundRequest, params);
+    }
+
+    private List buildRecords(JsonObject object, int resultType, int requestType,
+            boolean isBackgroundRequest, QueryParams params)
+            throws IOException {
         List results = new ArrayList();
         JsonElement elements = object.get("images");
         if (elements instanceof JsonArray) {
@@ -246,17 +336,17 @@ public class Store {
 
                     if (requestType
                             == InfoRequestData.INFOREQUESTDATA_TYPE_ARTISTS_ALBUMS) {
-                        JsonElement rawAlbums = get(o, "albums");
+                        JsonElement rawAlbums = getHydrated(o, "albums", isBackgroundRequest);
                         if (rawAlbums instanceof JsonObject) {
-                            results.addAll(storeRecords((JsonObject) rawAlbums, TYPE_ALBUMS,
-                                    isBackgroundRequest));
+                            results.addAll(buildRecords((JsonObject) rawAlbums, TYPE_ALBUMS,
+                                    -1, isBackgroundRequest, null));
                         }
                     } else if (requestType
                             == InfoRequestData.INFOREQUESTDATA_TYPE_ARTISTS_TOPHITS) {
-                        JsonElement rawTopHits = get(o, "topHits");
+                        JsonElement rawTopHits = getHydrated(o, "topHits", isBackgroundRequest);
                         if (rawTopHits instanceof JsonObject) {
-                            results.addAll(storeRecords((JsonObject) rawTopHits, TYPE_TRACKS,
-                                    isBackgroundRequest));
+                            results.addAll(buildRecords((JsonObject) rawTopHits, TYPE_TRACKS,
+                                    -1, isBackgroundRequest, null));
                         }
                     }
                     if (resultType == TYPE_ARTISTS) {
@@ -289,10 +379,10 @@ public class Store {
                     }
 
                     if (requestType == InfoRequestData.INFOREQUESTDATA_TYPE_ALBUMS_TRACKS) {
-                        JsonElement rawTracks = get(o, "tracks");
+                        JsonElement rawTracks = getHydrated(o, "tracks", isBackgroundRequest);
                         if (rawTracks instanceof JsonObject) {
-                            results.addAll(storeRecords((JsonObject) rawTracks, TYPE_TRACKS,
-                                    isBackgroundRequest));
+                            results.addAll(buildRecords((JsonObject) rawTracks, TYPE_TRACKS,
+                                    -1, isBackgroundRequest, null));
                         }
                     }
                     if (resultType == TYPE_ALBUMS) {
@@ -353,49 +443,53 @@ public class Store {
 
                     if (requestType
                             == InfoRequestData.INFOREQUESTDATA_TYPE_USERS_PLAYLISTS) {
-                        JsonElement rawPlaylists = get(o, "playlists");
+                        JsonElement rawPlaylists = getHydrated(o, "playlists", isBackgroundRequest);
                         if (rawPlaylists instanceof JsonObject) {
                             List playlists =
-                                    storeRecords((JsonObject) rawPlaylists, TYPE_PLAYLISTS,
-                                            isBackgroundRequest);
+                                    buildRecords((JsonObject) rawPlaylists, TYPE_PLAYLISTS,
+                                            -1, isBackgroundRequest, null);
                             user.setPlaylists(playlists);
                         }
                     } else if (requestType
                             == InfoRequestData.INFOREQUESTDATA_TYPE_USERS_LOVEDITEMS) {
-                        JsonElement rawLovedItems = get(o, "lovedItems");
+                        JsonElement rawLovedItems = getHydrated(o, "lovedItems",
+                                isBackgroundRequest);
                         if (rawLovedItems instanceof JsonObject) {
                             List playlists =
-                                    storeRecords((JsonObject) rawLovedItems, TYPE_PLAYLISTS,
-                                            isBackgroundRequest);
+                                    buildRecords((JsonObject) rawLovedItems, TYPE_PLAYLISTS,
+                                            -1, isBackgroundRequest, null);
                             if (playlists != null && playlists.size() > 0) {
                                 user.setFavorites((Playlist) playlists.get(0));
                             }
                         }
                     } else if (requestType
                             == InfoRequestData.INFOREQUESTDATA_TYPE_USERS_LOVEDALBUMS) {
-                        JsonElement rawLovedAlbums = get(o, "lovedAlbums");
+                        JsonElement rawLovedAlbums = getHydrated(o, "lovedAlbums",
+                                isBackgroundRequest);
                         if (rawLovedAlbums instanceof JsonObject) {
                             List albums =
-                                    storeRecords((JsonObject) rawLovedAlbums, TYPE_ALBUMS,
-                                            isBackgroundRequest);
+                                    buildRecords((JsonObject) rawLovedAlbums, TYPE_ALBUMS,
+                                            -1, isBackgroundRequest, null);
                             user.setStarredAlbums(albums);
                         }
                     } else if (requestType
                             == InfoRequestData.INFOREQUESTDATA_TYPE_USERS_LOVEDARTISTS) {
-                        JsonElement rawLovedArtists = get(o, "lovedArtists");
+                        JsonElement rawLovedArtists = getHydrated(o, "lovedArtists",
+                                isBackgroundRequest);
                         if (rawLovedArtists instanceof JsonObject) {
                             List artists =
-                                    storeRecords((JsonObject) rawLovedArtists, TYPE_ARTISTS,
-                                            isBackgroundRequest);
+                                    buildRecords((JsonObject) rawLovedArtists, TYPE_ARTISTS,
+                                            -1, isBackgroundRequest, null);
                             user.setStarredArtists(artists);
                         }
                     } else if (requestType
                             == InfoRequestData.INFOREQUESTDATA_TYPE_USERS_PLAYBACKLOG) {
-                        JsonElement rawPlaybackLog = get(o, "playbacklog");
+                        JsonElement rawPlaybackLog = getHydrated(o, "playbacklog",
+                                isBackgroundRequest);
                         if (rawPlaybackLog instanceof JsonObject) {
                             List playlists =
-                                    storeRecords((JsonObject) rawPlaybackLog, TYPE_PLAYLISTS,
-                                            isBackgroundRequest);
+                                    buildRecords((JsonObject) rawPlaybackLog, TYPE_PLAYLISTS,
+                                            -1, isBackgroundRequest, null);
                             if (playlists != null && playlists.size() > 0) {
                                 user.setPlaybackLog((Playlist) playlists.get(0));
                             }
@@ -406,10 +500,12 @@ public class Store {
                             == InfoRequestData.INFOREQUESTDATA_TYPE_USERS_FOLLOWERS) {
                         boolean isFollows =
                                 requestType == InfoRequestData.INFOREQUESTDATA_TYPE_USERS_FOLLOWS;
-                        JsonElement rawFollows = get(o, isFollows ? "follows" : "followers");
+                        JsonElement rawFollows =
+                                getHydrated(o, isFollows ? "follows" : "followers",
+                                        isBackgroundRequest);
                         if (rawFollows instanceof JsonObject) {
                             JsonObject follows = (JsonObject) rawFollows;
-                            storeRecords(follows, -1, isBackgroundRequest);
+                            buildRecords(follows, -1, -1, isBackgroundRequest, null);
                             JsonElement relationships = get(follows, "relationships");
                             if (relationships instanceof JsonArray) {
                                 TreeMap<User, String> followsMap =
@@ -432,11 +528,12 @@ public class Store {
                         }
                     } else if (requestType
                             == InfoRequestData.INFOREQUESTDATA_TYPE_USERS_PLAYBACKLOG) {
-                        JsonElement rawPlaybackLog = get(o, "playbacklog");
+                        JsonElement rawPlaybackLog = getHydrated(o, "playbacklog",
+                                isBackgroundRequest);
                         if (rawPlaybackLog instanceof JsonObject) {
                             List playlists =
-                                    storeRecords((JsonObject) rawPlaybackLog, TYPE_PLAYLISTS,
-                                            isBackgroundRequest);
+                                    buildRecords((JsonObject) rawPlaybackLog, TYPE_PLAYLISTS,
+                                            -1, isBackgroundRequest, null);
                             if (playlists != null && playlists.size() > 0) {
                                 user.setPlaybackLog((Playlist) playlists.get(0));
                             }
@@ -482,10 +579,11 @@ public class Store {
                     Playlist playlist = null;
                     if (requestType
                             == InfoRequestData.INFOREQUESTDATA_TYPE_PLAYLISTS_PLAYLISTENTRIES) {
-                        JsonElement rawEntries = get(o, "playlistEntries");
+                        JsonElement rawEntries = getHydrated(o, "playlistEntries",
+                                isBackgroundRequest);
                         if (rawEntries instanceof JsonObject) {
-                            List<PlaylistEntry> entries = storeRecords((JsonObject) rawEntries,
-                                    TYPE_PLAYLISTENTRIES, isBackgroundRequest);
+                            List<PlaylistEntry> entries = buildRecords((JsonObject) rawEntries,
+                                    TYPE_PLAYLISTENTRIES, -1, isBackgroundRequest, null);
                             if (entries != null) {
                                 playlist = Playlist.fromEntriesList(localId, null, null, entries);
                                 playlist.setFilled(true);
@@ -754,6 +852,381 @@ public class Store {
         return results;
     }
 
+    /**
+     * Fetches all records that are being referenced in the given responses, but that are neither
+     * cached nor contained in the responses themselves. Records that have been persisted in the
+     * {@link EntityCacheDb} are being loaded from there. All other ids of a type are being fetched
+     * in batches of up to {@link #MAX_IDS_PER_REQUEST} ids and all batches are being requested in
+     * parallel. Since the fetched records can reference other records as well, they are being
+     * hydrated in the same way before they are being stored. This way the number of round-trips
+     * only depends on how deeply records reference each other and not on the number of records.
+     */
+    private void hydrate(List<JsonObject> objects, boolean isBackgroundRequest)
+            throws IOException {
+        SparseArray<Set<String>> referencedIds = new SparseArray<>();
+        SparseArray<Set<String>> containedIds = new SparseArray<>();
+        for (JsonObject object : objects) {
+            collectIds(object, referencedIds, containedIds);
+        }
+        SparseArray<List<String>> missingIds = new SparseArray<>();
+        for (int i = 0; i < referencedIds.size(); i++) {
+            int type = referencedIds.keyAt(i);
+            Map cache = mCache.get(type);
+            Set<String> contained = containedIds.get(type);
+            List<String> ids = new ArrayList<>();
+            for (String id : referencedIds.valueAt(i)) {
+                if (!cache.containsKey(id) && (contained == null || !contained.contains(id))) {
+                    ids.add(id);
+                }
+            }
+            missingIds.put(type, ids);
+        }
+        JsonObject persisted = loadPersistedRecords(missingIds);
+        final Hatchet hatchet = getImplementation(isBackgroundRequest);
+        List<Callable<JsonObject>> batches = new ArrayList<>();
+        for (int i = 0; i < missingIds.size(); i++) {
+            final int type = missingIds.keyAt(i);
+            List<String> typeIds = missingIds.valueAt(i);
+            for (int j = 0; j < typeIds.size(); j += MAX_IDS_PER_REQUEST) {
+                final List<String> ids = new ArrayList<>(typeIds.subList(j,
+                        Math.min(j + MAX_IDS_PER_REQUEST, typeIds.size())));
+                batches.add(new Callable<JsonObject>() {
+                    @Override
+                    public JsonObject call() throws Exception {
+                        return fetchRecords(hatchet, ids, type);
+                    }
+                });
+            }
+        }
+        List<JsonObject> responses = new ArrayList<>();
+        if (persisted != null) {
+            responses.add(persisted);
+        }
+        try {
+            for (Future<JsonObject> future : sHydrationExecutor.invokeAll(batches)) {
+                try {
+                    JsonObject response = future.get();
+                    if (response != null) {
+                        persistRecords(response);
+                        responses.add(response);
+                    }
+                } catch (ExecutionException e) {
+                    // The referenced records will be fetched one by one in findRecord instead
+                    Log.e(TAG, "hydrate - " + e.getClass() + ": " + e.getLocalizedMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching referenced records");
+        }
+        if (responses.isEmpty()) {
+            return;
+        }
+        hydrate(responses, isBackgroundRequest);
+        for (JsonObject response : responses) {
+            buildRecords(response, -1, -1, isBackgroundRequest, null);
+        }
+    }
+
+    /**
+     * Collects the ids of all records that are contained in the given response and the ids of all
+     * records they reference. Only members that are part of the response itself are being looked
+     * at, so no links are being followed.
+     */
+    private void collectIds(JsonObject object, SparseArray<Set<String>> referencedIds,
+            SparseArray<Set<String>> containedIds) {
+        for (Map.Entry<String, JsonElement> member : object.entrySet()) {
+            if (!(member.getValue() instanceof JsonArray)) {
+                continue;
+            }
+            String name = member.getKey();
+            for (JsonElement element : (JsonArray) member.getValue()) {
+                if (!(element instanceof JsonObject)) {
+                    continue;
+                }
+                JsonObject o = (JsonObject) element;
+                String id = peekString(o, "id");
+                if (id == null) {
+                    continue;
+                }
+                if (name.equals("images")) {
+                    addId(containedIds, TYPE_IMAGES, id);
+                } else if (name.equals("artists")) {
+                    addId(containedIds, TYPE_ARTISTS, id);
+                    if (!mCache.get(TYPE_ARTISTS).containsKey(id)) {
+                        addId(referencedIds, TYPE_IMAGES, peekFirstString(o, "images"));
+                    }
+                } else if (name.equals("albums")) {
+                    addId(containedIds, TYPE_ALBUMS, id);
+                    if (!mCache.get(TYPE_ALBUMS).containsKey(id)) {
+                        addId(referencedIds, TYPE_ARTISTS, peekString(o, "artist"));
+                        addId(referencedIds, TYPE_IMAGES, peekFirstString(o, "images"));
+                    }
+                } else if (name.equals("tracks")) {
+                    addId(containedIds, TYPE_TRACKS, id);
+                    if (!mCache.get(TYPE_TRACKS).containsKey(id)) {
+                        addId(referencedIds, TYPE_ARTISTS, peekString(o, "artist"));
+                    }
+                } else if (name.equals("users")) {
+                    addId(containedIds, TYPE_USERS, id);
+                    addId(referencedIds, TYPE_TRACKS, peekString(o, "nowplaying"));
+                    addId(referencedIds, TYPE_IMAGES, peekString(o, "avatar"));
+                } else if (name.equals("playlistEntries") || name.equals("playbacklogEntries")) {
+                    if (!mCache.get(TYPE_PLAYLISTENTRIES).containsKey(id)) {
+                        addId(referencedIds, TYPE_TRACKS, peekString(o, "track"));
+                    }
+                } else if (name.equals("playlists")) {
+                    addId(containedIds, TYPE_PLAYLISTS, id);
+                    JsonElement popularArtists = o.get("popularArtists");
+                    if (popularArtists instanceof JsonArray) {
+                        for (JsonElement popularArtist : (JsonArray) popularArtists) {
+                            if (popularArtist.isJsonPrimitive()) {
+                                addId(referencedIds, TYPE_ARTISTS, popularArtist.getAsString());
+                            }
+                        }
+                    }
+                } else if (name.equals("socialActions") || name.equals("searchResults")) {
+                    int type = name.equals("socialActions") ? TYPE_SOCIALACTIONS
+                            : TYPE_SEARCHRESULTS;
+                    if (!mCache.get(type).containsKey(id)) {
+                        addId(referencedIds, TYPE_TRACKS, peekString(o, "track"));
+                        addId(referencedIds, TYPE_ARTISTS, peekString(o, "artist"));
+                        addId(referencedIds, TYPE_ALBUMS, peekString(o, "album"));
+                        addId(referencedIds, TYPE_USERS, peekString(o, "user"));
+                        addId(referencedIds, TYPE_USERS, peekString(o, "target"));
+                        addId(referencedIds, TYPE_PLAYLISTS, peekString(o, "playlist"));
+                    }
+                } else if (name.equals("relationships")) {
+                    addId(referencedIds, TYPE_USERS, peekString(o, "user"));
+                    addId(referencedIds, TYPE_USERS, peekString(o, "targetUser"));
+                    addId(referencedIds, TYPE_TRACKS, peekString(o, "targetTrack"));
+                    addId(referencedIds, TYPE_ALBUMS, peekString(o, "targetAlbum"));
+                    addId(referencedIds, TYPE_ARTISTS, peekString(o, "targetArtist"));
+                }
+                // Records can contain nested responses (e.g. an artist's albums)
+                for (Map.Entry<String, JsonElement> nested : o.entrySet()) {
+                    if (nested.getValue() instanceof JsonObject
+                            && !nested.getKey().equals("links")) {
+                        collectIds((JsonObject) nested.getValue(), referencedIds, containedIds);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void addId(SparseArray<Set<String>> ids, int type, String id) {
+        if (id != null) {
+            Set<String> set = ids.get(type);
+            if (set == null) {
+                set = new HashSet<>();
+                ids.put(type, set);
+            }
+            set.add(id);
+        }
+    }
+
+    /**
+     * @return the given member as a String, without following any links
+     */
+    private static String peekString(JsonObject object, String memberName) {
+        JsonElement element = object.get(memberName);
+        if (element != null && element.isJsonPrimitive()) {
+            return element.getAsString();
+        }
+        return null;
+    }
+
+    /**
+     * @return the first element of the given array member as a String, without following any
+     * links
+     */
+    private static String peekFirstString(JsonObject object, String memberName) {
+        JsonElement element = object.get(memberName);
+        if (element instanceof JsonArray && ((JsonArray) element).size() > 0
+                && ((JsonArray) element).get(0).isJsonPrimitive()) {
+            return ((JsonArray) element).get(0).getAsString();
+        }
+        return null;
+    }
+
+    /**
+     * @return the name of the array that contains records of the given type in a response, or
+     * null if records of that type aren't being persisted. Playlists, social actions etc. are only
+     * valid for a short time or can't be fetched by id, so they aren't being persisted.
+     */
+    private static String getPersistedRecordsName(int type) {
+        switch (type) {
+            case TYPE_IMAGES:
+                return "images";
+            case TYPE_ARTISTS:
+                return "artists";
+            case TYPE_ALBUMS:
+                return "albums";
+            case TYPE_TRACKS:
+                return "tracks";
+            case TYPE_USERS:
+                return "users";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return the time in ms after which a persisted record of the given type is being refreshed
+     */
+    private static long getTimeToLive(int type) {
+        switch (type) {
+            case TYPE_IMAGES:
+            case TYPE_TRACKS:
+                return 30 * DAY;
+            case TYPE_ARTISTS:
+            case TYPE_ALBUMS:
+                return 7 * DAY;
+            default:
+                return HOUR;
+        }
+    }
+
+    /**
+     * Persists all records in the given response (including nested responses) in the {@link
+     * EntityCacheDb}
+     */
+    private void persistRecords(JsonObject object) {
+        SparseArray<Map<String, String>> jsons = new SparseArray<>();
+        collectPersistableRecords(object, jsons);
+        try {
+            for (int i = 0; i < jsons.size(); i++) {
+                EntityCacheDb.get().put(jsons.keyAt(i), jsons.valueAt(i));
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "persistRecords - " + e.getClass() + ": " + e.getLocalizedMessage());
+        }
+    }
+
+    private void collectPersistableRecords(JsonObject object,
+            SparseArray<Map<String, String>> jsons) {
+        for (int type : new int[]{TYPE_IMAGES, TYPE_ARTISTS, TYPE_ALBUMS, TYPE_TRACKS,
+                TYPE_USERS}) {
+            JsonElement elements = object.get(getPersistedRecordsName(type));
+            if (!(elements instanceof JsonArray)) {
+                continue;
+            }
+            for (JsonElement element : (JsonArray) elements) {
+                if (!(element instanceof JsonObject)) {
+                    continue;
+                }
+                JsonObject o = (JsonObject) element;
+                String id = peekString(o, "id");
+                if (id == null) {
+                    continue;
+                }
+                // Nested responses (e.g. an artist's albums) are being persisted separately
+                JsonObject stripped = new JsonObject();
+                for (Map.Entry<String, JsonElement> member : o.entrySet()) {
+                    if (member.getValue() instanceof JsonObject
+                            && !member.getKey().equals("links")) {
+                        collectPersistableRecords((JsonObject) member.getValue(), jsons);
+                    } else {
+                        stripped.add(member.getKey(), member.getValue());
+                    }
+                }
+                Map<String, String> typeJsons = jsons.get(type);
+                if (typeJsons == null) {
+                    typeJsons = new HashMap<>();
+                    jsons.put(type, typeJsons);
+                }
+                typeJsons.put(id, stripped.toString());
+            }
+        }
+    }
+
+    /**
+     * Loads the records with the given ids from the {@link EntityCacheDb}. The ids of all found
+     * records are being removed from the given lists. Records that are older than their time to
+     * live are being returned nevertheless, but are being refreshed in the background.
+     *
+     * @return a response that contains all found records or null, if none have been found
+     */
+    private JsonObject loadPersistedRecords(SparseArray<List<String>> ids) {
+        JsonObject persisted = null;
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < ids.size(); i++) {
+            int type = ids.keyAt(i);
+            String name = getPersistedRecordsName(type);
+            List<String> typeIds = ids.valueAt(i);
+            if (name == null || typeIds.isEmpty()) {
+                continue;
+            }
+            Map<String, EntityCacheDb.Entry> entries;
+            try {
+                entries = EntityCacheDb.get().get(type, typeIds, MAX_PERSISTED_AGE);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "loadPersistedRecords - " + e.getClass() + ": "
+                        + e.getLocalizedMessage());
+                continue;
+            }
+            if (entries.isEmpty()) {
+                continue;
+            }
+            if (persisted == null) {
+                persisted = new JsonObject();
+            }
+            JsonArray records = new JsonArray();
+            List<String> staleIds = new ArrayList<>();
+            for (Map.Entry<String, EntityCacheDb.Entry> entry : entries.entrySet()) {
+                records.add(GsonHelper.get().fromJson(entry.getValue().json, JsonObject.class));
+                if (now - entry.getValue().updated > getTimeToLive(type)) {
+                    staleIds.add(entry.getKey());
+                }
+            }
+            persisted.add(name, records);
+            typeIds.removeAll(entries.keySet());
+            if (!staleIds.isEmpty()) {
+                revalidate(type, staleIds);
+            }
+        }
+        return persisted;
+    }
+
+    /**
+     * Refetches the given persisted records in the background and replaces the cached records
+     */
+    private void revalidate(final int type, List<String> ids) {
+        final List<String> revalidatedIds = new ArrayList<>();
+        for (String id : ids) {
+            if (mRevalidatingIds.add(type + "\t" + id)) {
+                revalidatedIds.add(id);
+            }
+        }
+        if (revalidatedIds.isEmpty()) {
+            return;
+        }
+        sRevalidationExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < revalidatedIds.size(); i += MAX_IDS_PER_REQUEST) {
+                        List<String> batch = revalidatedIds.subList(i,
+                                Math.min(i + MAX_IDS_PER_REQUEST, revalidatedIds.size()));
+                        JsonObject response = fetchRecords(mHatchetBackground, batch, type);
+                        if (response != null) {
+                            for (String id : batch) {
+                                mCache.get(type).remove(id);
+                            }
+                            storeRecords(response, -1, true);
+                        }
+                    }
+                } catch (IOException | RetrofitError e) {
+                    Log.e(TAG, "revalidate - " + e.getClass() + ": " + e.getLocalizedMessage());
+                } finally {
+                    for (String id : revalidatedIds) {
+                        mRevalidatingIds.remove(type + "\t" + id);
+                    }
+                }
+            }
+        });
+    }
+
     public int getAsInt(JsonObject object, String memberName) throws IOException {
         JsonElement element = get(object, memberName);
         if (element != null && element.isJsonPrimitive()) {
@@ -798,4 +1271,24 @@ public class Store {
         }
         return element;
     }
+
+    /**
+     * Same as {@link #get(JsonObject, String)}, but a response that had to be fetched by following
+     * a link is being hydrated (see {@link #hydrate(List, boolean)}) before it is being returned.
+     * Members that are part of the given object have already been hydrated along with it.
+     */
+    private JsonElement getHydrated(JsonObject object, String memberName,
+            boolean isBackgroundRequest) throws IOException {
+        if (object.has(memberName)) {
+            return object.get(memberName);
+        }
+        JsonElement element = get(object, memberName);
+        if (element instanceof JsonObject) {
+            persistRecords((JsonObject) element);
+            List<JsonObject> objects = new ArrayList<>();
+            objects.add((JsonObject) element);
+            hydrate(objects, isBackgroundRequest);
+        }
+        return element;
+    }
 }
\ No newline at end of file
@@ -18,15 +18,19 @@
 package org.tomahawk.libtomahawk.resolver;
 
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.util.CharArraySet;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.IntField;
-import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.Term;
-import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.FuzzyQuery;
@@ -34,11 +38,18 @@ import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.SearcherFactory;
 import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.NumericUtils;
 import org.apache.lucene.util.Version;
 import org.tomahawk.libtomahawk.database.CollectionDb;
 import org.tomahawk.libtomahawk.database.CollectionDbManager;
+import org.tomahawk.libtomahawk.database.SqlUtils;
 import org.tomahawk.tomahawk_android.TomahawkApp;
 
 import android.content.SharedPreferences;
@@ -50,7 +61,18 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import de.greenrobot.event.EventBus;
+
+/**
+ * A Lucene index of all tracks of a {@link CollectionDb}. The artist, album and track names are
+ * being indexed as analyzed {@link TextField}s and additionally combined in a "fulltext" field.
+ * Searches are being scored with BM25 and match misspelled words through {@link FuzzyQuery}s,
+ * whose score decreases with the edit distance. Every document stores everything that is needed
+ * to construct a {@link Result}, so that no {@link CollectionDb} lookup is needed afterwards.
+ */
 public class FuzzyIndex {
 
     private final static String TAG = FuzzyIndex.class.getSimpleName();
@@ -61,35 +83,132 @@ public class FuzzyIndex {
 
     private static final String LAST_FUZZY_INDEX_UPDATE_SUFFIX = "_last_fuzzy_index_update";
 
+    private static final String FUZZY_INDEX_VERSION_SUFFIX = "_fuzzy_index_version";
+
+    /**
+     * Has to be increased whenever the structure of the indexed documents changes, so that old
+     * indexes are being recreated
+     */
+    private static final int INDEX_VERSION = 2;
+
+    private static final String FIELD_ID = "id";
+
+    private static final String FIELD_ARTIST = "artist";
+
+    private static final String FIELD_ALBUM = "album";
+
+    private static final String FIELD_TRACK = "track";
+
+    private static final String FIELD_FULLTEXT = "fulltext";
+
+    private static final String FIELD_DURATION = "duration";
+
+    private static final String FIELD_URL = "url";
+
+    private static final String FIELD_ALBUMPOS = "albumpos";
+
+    private static final float BOOST_ARTIST = 2f;
+
+    private static final float BOOST_ALBUM = 1f;
+
+    private static final float BOOST_TRACK = 2.5f;
+
+    private static final float BOOST_FULLTEXT = 1f;
+
+    /**
+     * The boost of the fuzzy match of a word relative to its exact match
+     */
+    private static final float BOOST_FUZZY = 0.4f;
+
+    private static final int MAX_HITS = 50;
+
     private final String mLastUpdateStorageKey;
 
+    private final String mVersionStorageKey;
+
+    /**
+     * Music titles consist of stop words surprisingly often ("The The", "Let It Be"), so none are
+     * being removed
+     */
+    private final Analyzer mAnalyzer =
+            new StandardAnalyzer(Version.LUCENE_47, CharArraySet.EMPTY_SET);
+
+    private final Similarity mSimilarity = new BM25Similarity();
+
     private String mCollectionId;
 
     private String mLucenePath;
 
     private IndexWriter mLuceneWriter;
 
-    private SearcherManager mSearcherManager;
+    /**
+     * Volatile, so that searches don't have to wait for a running update
+     */
+    private volatile SearcherManager mSearcherManager;
+
+    /**
+     * Applies the {@link CollectionDb.Changeset}s one after another in the order in which they
+     * have been posted, so that e.g. a wipe can't remove the tracks that have been added after it
+     */
+    private final ExecutorService mUpdateExecutor = Executors.newSingleThreadExecutor();
+
+    private static final String[] FIELDS = new String[]{
+            CollectionDb.TABLE_TRACKS + "." + CollectionDb.ID, CollectionDb.ARTISTS_ARTIST,
+            CollectionDb.ALBUMS_ALBUM, CollectionDb.TRACKS_TRACK, CollectionDb.TRACKS_DURATION,
+            CollectionDb.TRACKS_URL, CollectionDb.TRACKS_ALBUMPOS};
 
     public static class IndexResult {
 
         public int id;
 
         public float score;
+
+        public String artist;
+
+        public String album;
+
+        public String track;
+
+        /**
+         * The duration in seconds
+         */
+        public int duration;
+
+        public String url;
+
+        public int albumPos;
     }
 
     public FuzzyIndex(String collectionId) {
         mCollectionId = collectionId;
         mLucenePath = LUCENE_ROOT_FOLDER + collectionId;
 
+        // Register before comparing the timestamps, so that we don't miss any changes that are
+        // being made to the CollectionDb while we're initializing
+        EventBus.getDefault().register(this);
+
         CollectionDb collectionDb = CollectionDbManager.get().getCollectionDb(mCollectionId);
 
         mLastUpdateStorageKey = mCollectionId + LAST_FUZZY_INDEX_UPDATE_SUFFIX;
+        mVersionStorageKey = mCollectionId + FUZZY_INDEX_VERSION_SUFFIX;
         SharedPreferences preferences =
                 PreferenceManager.getDefaultSharedPreferences(TomahawkApp.getContext());
         long lastDbUpdate = preferences.getLong(collectionDb.getLastUpdateStorageKey(), -1);
         long lastIndexUpdate = preferences.getLong(mLastUpdateStorageKey, -2);
-        create(lastDbUpdate > lastIndexUpdate);
+        int indexVersion = preferences.getInt(mVersionStorageKey, -1);
+        create(lastDbUpdate > lastIndexUpdate || indexVersion != INDEX_VERSION);
+    }
+
+    @SuppressWarnings("unused")
+    public void onEvent(final CollectionDb.TracksUpdatedEvent event) {
+        if (mCollectionId.equals(event.mCollectionId)) {
+            mUpdateExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    update(event.mChangeset);
+                }
+            });
+        }
     }
 
     /**
@@ -99,66 +218,141 @@ public class FuzzyIndex {
      * @return whether or not the creation has been successful
      */
     public synchronized boolean create(boolean recreate) {
-        CollectionDb collectionDb = CollectionDbManager.get().getCollectionDb(mCollectionId);
-        String[] fields = new String[]{CollectionDb.TABLE_TRACKS + "." + CollectionDb.ID,
-                CollectionDb.ARTISTS_ARTIST, CollectionDb.ALBUMS_ALBUM, CollectionDb.TRACKS_TRACK};
-        Cursor cursor = collectionDb.tracks(null, null, fields);
+        Log.d(TAG, "create - recreate:" + recreate);
         try {
-            Log.d(TAG, "create - recreate:" + recreate);
             beginIndexing(recreate);
             if (recreate) {
-                Log.d(TAG, "Adding tracks to index - count: " + cursor.getCount());
-                cursor.moveToFirst();
-                if (!cursor.isAfterLast()) {
-                    do {
-                        Document document = new Document();
-                        document.add(new IntField("id", cursor.getInt(0),
-                                Field.Store.YES));
-                        document.add(new StringField("artist", cursor.getString(1),
-                                Field.Store.YES));
-                        document.add(new StringField("album", cursor.getString(2),
-                                Field.Store.YES));
-                        document.add(new StringField("track", cursor.getString(3),
-                                Field.Store.YES));
-                        mLuceneWriter.addDocument(document);
-                    } while (cursor.moveToNext());
+                mLuceneWriter.deleteAll();
+                CollectionDb collectionDb =
+                        CollectionDbManager.get().getCollectionDb(mCollectionId);
+                Cursor cursor = collectionDb.tracks(null, null, FIELDS);
+                try {
+                    Log.d(TAG, "Adding tracks to index - count: " + cursor.getCount());
+                    addDocuments(cursor, false);
+                } finally {
+                    cursor.close();
                 }
-                SharedPreferences preferences =
-                        PreferenceManager.getDefaultSharedPreferences(TomahawkApp.getContext());
-                preferences.edit().putLong(mLastUpdateStorageKey, System.currentTimeMillis())
-                        .commit();
+                commit();
             }
+            mSearcherManager.maybeRefresh();
         } catch (IOException e) {
             Log.e(TAG, "create - " + e.getClass() + ": " + e.getLocalizedMessage());
-            close();
+            closeIndex();
             return false;
-        } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
-            endIndexing();
-            updateSearcherManager();
         }
         return true;
     }
 
-    private void updateSearcherManager() {
-        Log.d(TAG, "updateSearcherManager");
+    /**
+     * Incrementally applies the given {@link CollectionDb.Changeset} to this fuzzy index. Removed
+     * tracks are being deleted by their id and added tracks are being read from the {@link
+     * CollectionDb} and added to the index. Afterwards the {@link SearcherManager} is being
+     * refreshed, so that searches immediately see the changes.
+     *
+     * @param changeset the {@link CollectionDb.Changeset} that should be applied
+     * @return whether or not the update has been successful
+     */
+    public synchronized boolean update(CollectionDb.Changeset changeset) {
+        if (mLuceneWriter == null) {
+            Log.e(TAG, "update - index isn't open, recreating it");
+            return create(true);
+        }
+        long time = System.currentTimeMillis();
         try {
-            if (mSearcherManager != null) {
-                mSearcherManager.close();
+            if (changeset.wiped) {
+                mLuceneWriter.deleteAll();
+            }
+            for (Integer trackId : changeset.removedTrackIds) {
+                mLuceneWriter.deleteDocuments(idTerm(trackId));
+            }
+            CollectionDb collectionDb = CollectionDbManager.get().getCollectionDb(mCollectionId);
+            List<String> ids = new ArrayList<>();
+            for (Integer trackId : changeset.addedTrackIds) {
+                ids.add(String.valueOf(trackId));
+            }
+            for (int i = 0; i < ids.size(); i += SqlUtils.MAX_SQL_VARIABLES) {
+                List<String> chunk =
+                        ids.subList(i, Math.min(i + SqlUtils.MAX_SQL_VARIABLES, ids.size()));
+                CollectionDb.WhereInfo whereInfo = new CollectionDb.WhereInfo();
+                whereInfo.connection = "OR";
+                whereInfo.where.put(CollectionDb.ID, chunk.toArray(new String[chunk.size()]));
+                Cursor cursor = collectionDb.tracks(whereInfo, null, FIELDS);
+                try {
+                    addDocuments(cursor, !changeset.wiped);
+                } finally {
+                    cursor.close();
+                }
             }
-            File indexDirFile = new File(mLucenePath);
-            Directory dir = FSDirectory.open(indexDirFile);
-            mSearcherManager = new SearcherManager(dir, new SearcherFactory());
+            commit();
+            mSearcherManager.maybeRefresh();
         } catch (IOException e) {
-            Log.e(TAG, "updateSearcherManager - " + e.getClass() + ": " + e.getLocalizedMessage());
+            Log.e(TAG, "update - " + e.getClass() + ": " + e.getLocalizedMessage());
+            return false;
+        }
+        Log.d(TAG, "update - added " + changeset.addedTrackIds.size() + ", removed "
+                + changeset.removedTrackIds.size() + " tracks in "
+                + (System.currentTimeMillis() - time) + "ms");
+        return true;
+    }
+
+    /**
+     * Adds a {@link Document} for every row of the given cursor, which has to contain the columns
+     * given in {@link #FIELDS}.
+     *
+     * @param replace whether or not to replace already existing documents with the same id
+     */
+    private void addDocuments(Cursor cursor, boolean replace) throws IOException {
+        while (cursor.moveToNext()) {
+            String artist = nonNull(cursor.getString(1));
+            String album = nonNull(cursor.getString(2));
+            String track = nonNull(cursor.getString(3));
+            Document document = new Document();
+            document.add(new IntField(FIELD_ID, cursor.getInt(0), Field.Store.YES));
+            document.add(new TextField(FIELD_ARTIST, artist, Field.Store.YES));
+            document.add(new TextField(FIELD_ALBUM, album, Field.Store.YES));
+            document.add(new TextField(FIELD_TRACK, track, Field.Store.YES));
+            document.add(new TextField(FIELD_FULLTEXT, artist + " " + album + " " + track,
+                    Field.Store.NO));
+            document.add(new StoredField(FIELD_DURATION, cursor.getInt(4)));
+            document.add(new StoredField(FIELD_URL, nonNull(cursor.getString(5))));
+            document.add(new StoredField(FIELD_ALBUMPOS, cursor.getInt(6)));
+            if (replace) {
+                mLuceneWriter.updateDocument(idTerm(cursor.getInt(0)), document);
+            } else {
+                mLuceneWriter.addDocument(document);
+            }
         }
     }
 
-    public void close() {
+    /**
+     * @return a {@link Term} matching the indexed {@link IntField} "id" with the given value
+     */
+    private static Term idTerm(int id) {
+        BytesRef bytes = new BytesRef(NumericUtils.BUF_SIZE_INT);
+        NumericUtils.intToPrefixCoded(id, 0, bytes);
+        return new Term(FIELD_ID, bytes);
+    }
+
+    private static String nonNull(String s) {
+        return s != null ? s : "";
+    }
+
+    private void commit() throws IOException {
+        mLuceneWriter.commit();
+        SharedPreferences preferences =
+                PreferenceManager.getDefaultSharedPreferences(TomahawkApp.getContext());
+        preferences.edit().putLong(mLastUpdateStorageKey, System.currentTimeMillis())
+                .putInt(mVersionStorageKey, INDEX_VERSION).commit();
+    }
+
+    public synchronized void close() {
         Log.d(TAG, "close");
-        endIndexing();
+        EventBus.getDefault().unregister(this);
+        mUpdateExecutor.shutdownNow();
+        closeIndex();
+    }
+
+    private void closeIndex() {
         if (mSearcherManager != null) {
             try {
                 mSearcherManager.close();
@@ -167,78 +361,173 @@ public class FuzzyIndex {
             }
             mSearcherManager = null;
         }
+        endIndexing();
     }
 
-    public synchronized List<IndexResult> searchIndex(Query query) {
+    /**
+     * @return the best matching tracks for the given {@link Query}, ordered by their score. A full
+     * text {@link Query} has to match about half of its words in any field. Otherwise the artist
+     * and track name have to match individually.
+     */
+    public List<IndexResult> searchIndex(Query query) {
         List<IndexResult> indexResults = new ArrayList<>();
+        SearcherManager searcherManager = mSearcherManager;
+        if (searcherManager == null) {
+            Log.e(TAG, "searchIndex - index isn't open");
+            return indexResults;
+        }
         try {
-            BooleanQuery qry = new BooleanQuery();
+            BooleanQuery qry;
             if (query.isFullTextQuery()) {
-                String escapedQuery = MultiFieldQueryParser.escape(query.getFullTextQuery());
-                Term term = new Term("track", escapedQuery);
-                org.apache.lucene.search.Query fqry = new FuzzyQuery(term);
-                qry.add(fqry, BooleanClause.Occur.SHOULD);
-                term = new Term("artist", escapedQuery);
-                fqry = new FuzzyQuery(term);
-                qry.add(fqry, BooleanClause.Occur.SHOULD);
-                term = new Term("fulltext", escapedQuery);
-                fqry = new FuzzyQuery(term);
-                qry.add(fqry, BooleanClause.Occur.SHOULD);
-                Log.d(TAG, "searchIndex - fulltext: " + escapedQuery);
+                qry = new BooleanQuery();
+                List<String> words = analyze(query.getFullTextQuery());
+                for (String word : words) {
+                    BooleanQuery wordQuery = new BooleanQuery();
+                    addWordClauses(wordQuery, FIELD_ARTIST, word, BOOST_ARTIST);
+                    addWordClauses(wordQuery, FIELD_ALBUM, word, BOOST_ALBUM);
+                    addWordClauses(wordQuery, FIELD_TRACK, word, BOOST_TRACK);
+                    addWordClauses(wordQuery, FIELD_FULLTEXT, word, BOOST_FULLTEXT);
+                    qry.add(wordQuery, BooleanClause.Occur.SHOULD);
+                }
+                qry.setMinimumNumberShouldMatch((words.size() + 1) / 2);
+                Log.d(TAG, "searchIndex - fulltext: " + words);
             } else {
-                String escapedTrackName = MultiFieldQueryParser
-                        .escape(query.getBasicTrack().getName());
-                String escapedArtistName = MultiFieldQueryParser
-                        .escape(query.getArtist().getName());
-                Term term = new Term("track", escapedTrackName);
-                org.apache.lucene.search.Query fqry = new FuzzyQuery(term);
-                qry.add(fqry, BooleanClause.Occur.MUST);
-                term = new Term("artist", escapedArtistName);
-                fqry = new FuzzyQuery(term);
-                qry.add(fqry, BooleanClause.Occur.MUST);
-                Log.d(TAG, "searchIndex - non-fulltext: " + escapedArtistName + ", "
-                        + escapedTrackName);
+                BooleanQuery trackQuery = fieldQuery(FIELD_TRACK,
+                        query.getBasicTrack().getName(), BOOST_TRACK);
+                BooleanQuery artistQuery = fieldQuery(FIELD_ARTIST,
+                        query.getArtist().getName(), BOOST_ARTIST);
+                if (trackQuery == null || artistQuery == null) {
+                    return indexResults;
+                }
+                qry = new BooleanQuery();
+                qry.add(trackQuery, BooleanClause.Occur.MUST);
+                qry.add(artistQuery, BooleanClause.Occur.MUST);
+                Log.d(TAG, "searchIndex - non-fulltext: " + query.getArtist().getName() + ", "
+                        + query.getBasicTrack().getName());
             }
-            IndexSearcher searcher = mSearcherManager.acquire();
-            long time = System.currentTimeMillis();
-            ScoreDoc[] hits = searcher.search(qry, 50).scoreDocs;
-            Log.d(TAG,
-                    "searchIndex - searching took " + (System.currentTimeMillis() - time) + "ms");
-            for (ScoreDoc doc : hits) {
-                Document document = searcher.doc(doc.doc);
-                IndexResult indexResult = new IndexResult();
-                indexResult.id = document.getField("id").numericValue().intValue();
-                indexResult.score = doc.score;
-                indexResults.add(indexResult);
+            if (qry.clauses().isEmpty()) {
+                return indexResults;
             }
-            mSearcherManager.release(searcher);
-        } catch (IOException e) {
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                long time = System.currentTimeMillis();
+                ScoreDoc[] hits = searcher.search(qry, MAX_HITS).scoreDocs;
+                for (ScoreDoc doc : hits) {
+                    Document document = searcher.doc(doc.doc);
+                    IndexResult indexResult = new IndexResult();
+                    indexResult.id = document.getField(FIELD_ID).numericValue().intValue();
+                    indexResult.score = doc.score;
+                    indexResult.artist = document.get(FIELD_ARTIST);
+                    indexResult.album = document.get(FIELD_ALBUM);
+                    indexResult.track = document.get(FIELD_TRACK);
+                    indexResult.duration =
+                            document.getField(FIELD_DURATION).numericValue().intValue();
+                    indexResult.url = document.get(FIELD_URL);
+                    indexResult.albumPos =
+                            document.getField(FIELD_ALBUMPOS).numericValue().intValue();
+                    indexResults.add(indexResult);
+                }
+                Log.d(TAG, "searchIndex - searching took " + (System.currentTimeMillis() - time)
+                        + "ms, " + hits.length + " hits");
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (IOException | AlreadyClosedException e) {
             Log.e(TAG, "searchIndex - " + e.getClass() + ": " + e.getLocalizedMessage());
         }
         return indexResults;
     }
 
     /**
-     * Initializes the IndexWriter to be able to add entries to the index.
+     * @return a {@link BooleanQuery} that requires about half of the words of the given text to
+     * match the given field, or null if the text doesn't contain any words
+     */
+    private BooleanQuery fieldQuery(String field, String text, float boost) throws IOException {
+        List<String> words = analyze(text);
+        if (words.isEmpty()) {
+            return null;
+        }
+        BooleanQuery fieldQuery = new BooleanQuery();
+        for (String word : words) {
+            BooleanQuery wordQuery = new BooleanQuery();
+            addWordClauses(wordQuery, field, word, boost);
+            fieldQuery.add(wordQuery, BooleanClause.Occur.SHOULD);
+        }
+        fieldQuery.setMinimumNumberShouldMatch((words.size() + 1) / 2);
+        return fieldQuery;
+    }
+
+    /**
+     * Adds an exact and, for words long enough, a fuzzy match of the given word in the given field.
+     * The number of allowed edits grows with the length of the word. The first character has to
+     * match, so that the fuzzy match doesn't have to scan the whole term dictionary.
+     */
+    private static void addWordClauses(BooleanQuery query, String field, String word,
+            float boost) {
+        Term term = new Term(field, word);
+        TermQuery termQuery = new TermQuery(term);
+        termQuery.setBoost(boost);
+        query.add(termQuery, BooleanClause.Occur.SHOULD);
+        int maxEdits = word.length() <= 2 ? 0 : word.length() <= 5 ? 1 : 2;
+        if (maxEdits > 0) {
+            FuzzyQuery fuzzyQuery = new FuzzyQuery(term, maxEdits, 1);
+            fuzzyQuery.setBoost(boost * BOOST_FUZZY);
+            query.add(fuzzyQuery, BooleanClause.Occur.SHOULD);
+        }
+    }
+
+    /**
+     * @return the words of the given text, as they have been indexed by the {@link Analyzer}
+     */
+    private List<String> analyze(String text) throws IOException {
+        List<String> words = new ArrayList<>();
+        TokenStream tokenStream = mAnalyzer.tokenStream(FIELD_FULLTEXT, text);
+        try {
+            CharTermAttribute term = tokenStream.addAttribute(CharTermAttribute.class);
+            tokenStream.reset();
+            while (tokenStream.incrementToken()) {
+                words.add(term.toString());
+            }
+            tokenStream.end();
+        } finally {
+            tokenStream.close();
+        }
+        return words;
+    }
+
+    /**
+     * Initializes the IndexWriter and the near-real-time SearcherManager on top of it, if this
+     * hasn't been done already. Both are being kept open, so that incremental updates become
+     * visible to searches through {@link SearcherManager#maybeRefresh()}.
      *
      * @param recreate whether or not to wipe any previously existing index
      */
     private void beginIndexing(boolean recreate) throws IOException {
         Log.d(TAG, "beginIndexing - recreate: " + recreate);
-        endIndexing();
+        if (mLuceneWriter != null) {
+            return;
+        }
         File indexDirFile = new File(mLucenePath);
         Directory dir = FSDirectory.open(indexDirFile);
-        Analyzer analyzer = new StandardAnalyzer(Version.LUCENE_47);
-        IndexWriterConfig iwc = new IndexWriterConfig(Version.LUCENE_47, analyzer);
+        IndexWriterConfig iwc = new IndexWriterConfig(Version.LUCENE_47, mAnalyzer);
+        iwc.setSimilarity(mSimilarity);
         if (recreate) {
             SharedPreferences preferences =
                     PreferenceManager.getDefaultSharedPreferences(TomahawkApp.getContext());
             preferences.edit().putLong(mLastUpdateStorageKey, -2).commit();
             iwc.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
         } else {
-            iwc.setOpenMode(IndexWriterConfig.OpenMode.APPEND);
+            iwc.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
         }
         mLuceneWriter = new IndexWriter(dir, iwc);
+        mSearcherManager = new SearcherManager(mLuceneWriter, true, new SearcherFactory() {
+            @Override
+            public IndexSearcher newSearcher(IndexReader reader) throws IOException {
+                IndexSearcher searcher = new IndexSearcher(reader);
+                searcher.setSimilarity(mSimilarity);
+                return searcher;
+            }
+        });
     }
 
     private void endIndexing() {
@@ -247,10 +536,10 @@ public class FuzzyIndex {
             try {
                 mLuceneWriter.commit();
                 mLuceneWriter.close(true);
-                mLuceneWriter = null;
             } catch (IOException e) {
                 Log.e(TAG, "endIndexing - " + e.getClass() + ": " + e.getLocalizedMessage());
             }
+            mLuceneWriter = null;
         }
     }
 }
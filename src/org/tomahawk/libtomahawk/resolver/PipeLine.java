@@ -17,9 +17,13 @@
  */
 package org.tomahawk.libtomahawk.resolver;
 
+import org.tomahawk.libtomahawk.collection.Album;
+import org.tomahawk.libtomahawk.collection.Artist;
 import org.tomahawk.libtomahawk.collection.Collection;
 import org.tomahawk.libtomahawk.collection.CollectionManager;
 import org.tomahawk.libtomahawk.collection.DbCollection;
+import org.tomahawk.libtomahawk.collection.Track;
+import org.tomahawk.libtomahawk.database.ResolutionCacheDb;
 import org.tomahawk.libtomahawk.resolver.models.ScriptResolverUrlResult;
 import org.tomahawk.tomahawk_android.TomahawkApp;
 import org.tomahawk.tomahawk_android.utils.ThreadManager;
@@ -32,7 +36,10 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -59,6 +66,12 @@ public class PipeLine {
 
     private static final float MINSCORE = 0.5F;
 
+    /**
+     * The maximum number of {@link Query}s that are being sent to a {@link ScriptResolver} within
+     * a single "resolveBatch" {@link ScriptJob}
+     */
+    private static final int RESOLVE_BATCH_SIZE = 25;
+
     private static class Holder {
 
         private static final PipeLine instance = new PipeLine();
@@ -155,9 +168,7 @@ public class PipeLine {
             Log.d(TAG, "All plugins loaded. All resolvers initialized. Resolving "
                     + mWaitingQueries.size() + " waiting queries. Looking up "
                     + mWaitingUrlLookups.size() + " waiting URLs.");
-            for (Query query : mWaitingQueries) {
-                resolve(query);
-            }
+            resolve(new HashSet<>(mWaitingQueries));
             mWaitingQueries.clear();
             for (String url : mWaitingUrlLookups) {
                 lookupUrl(url);
@@ -247,9 +258,22 @@ public class PipeLine {
                 if (!mLoadingPlugins.isEmpty() || !mInitializingResolvers.isEmpty()) {
                     mWaitingQueries.add(q);
                 } else {
+                    ResolutionPolicy policy = ResolutionPolicy.get();
+                    policy.onResolving(q);
+                    restoreCachedResults(q, forceOnlyLocal);
+                    // A cached Result might already be good enough to skip the ScriptResolvers
+                    boolean settled = policy.isSettled(q);
                     for (Resolver resolver : mResolvers) {
+                        if (settled && resolver instanceof ScriptResolver) {
+                            continue;
+                        }
                         if (shouldResolve(resolver, q, forceOnlyLocal)) {
-                            resolver.resolve(q);
+                            if (!q.isFullTextQuery() && policy.isHedged(resolver)) {
+                                policy.resolveHedged((ScriptResolver) resolver,
+                                        Collections.singletonList(q));
+                            } else {
+                                resolver.resolve(q);
+                            }
                         }
                     }
                 }
@@ -293,18 +317,122 @@ public class PipeLine {
 
     /**
      * Resolve the given ArrayList of {@link org.tomahawk.libtomahawk.resolver.Query}s and return a
-     * HashSet containing all query keys
+     * HashSet containing all query keys. Non-fulltext {@link Query}s are being grouped into windows
+     * of RESOLVE_BATCH_SIZE, so that every {@link ScriptResolver} only has to be invoked once per
+     * window.
      */
     public HashSet<Query> resolve(Set<Query> queries, boolean forceOnlyLocal) {
         HashSet<Query> queryKeys = new HashSet<>();
         if (queries != null) {
+            List<Query> batch = new ArrayList<>();
             for (Query query : queries) {
-                queryKeys.add(resolve(query, forceOnlyLocal));
+                if (query.isFullTextQuery()) {
+                    queryKeys.add(resolve(query, forceOnlyLocal));
+                } else {
+                    queryKeys.add(query);
+                    batch.add(query);
+                }
+            }
+            for (int i = 0; i < batch.size(); i += RESOLVE_BATCH_SIZE) {
+                resolveBatch(batch.subList(i, Math.min(i + RESOLVE_BATCH_SIZE, batch.size())),
+                        forceOnlyLocal);
             }
         }
         return queryKeys;
     }
 
+    /**
+     * This will invoke every {@link Resolver} to resolve the given window of {@link Query}s.
+     * {@link ScriptResolver}s get the whole window at once, all other {@link Resolver}s and every
+     * {@link DbCollection} get one call per {@link Query}.
+     */
+    private void resolveBatch(List<Query> queryList, final boolean forceOnlyLocal) {
+        final List<Query> queries = new ArrayList<>(queryList);
+        final TomahawkRunnable r = new TomahawkRunnable(TomahawkRunnable.PRIORITY_IS_RESOLVING) {
+            @Override
+            public void run() {
+                if (!mLoadingPlugins.isEmpty() || !mInitializingResolvers.isEmpty()) {
+                    mWaitingQueries.addAll(queries);
+                } else {
+                    ResolutionPolicy policy = ResolutionPolicy.get();
+                    List<Query> unsettledQueries = new ArrayList<>();
+                    for (Query query : queries) {
+                        policy.onResolving(query);
+                        restoreCachedResults(query, forceOnlyLocal);
+                        if (!policy.isSettled(query)) {
+                            unsettledQueries.add(query);
+                        }
+                    }
+                    for (Resolver resolver : mResolvers) {
+                        // Queries with a good enough cached Result skip the ScriptResolvers
+                        List<Query> candidates =
+                                resolver instanceof ScriptResolver ? unsettledQueries : queries;
+                        List<Query> resolverQueries = new ArrayList<>();
+                        for (Query query : candidates) {
+                            if (shouldResolve(resolver, query, forceOnlyLocal)) {
+                                resolverQueries.add(query);
+                            }
+                        }
+                        if (!resolverQueries.isEmpty() && policy.isHedged(resolver)) {
+                            policy.resolveHedged((ScriptResolver) resolver, resolverQueries);
+                        } else if (resolverQueries.size() > 1
+                                && resolver instanceof ScriptResolver) {
+                            ((ScriptResolver) resolver).resolve(resolverQueries);
+                        } else {
+                            for (Query query : resolverQueries) {
+                                resolver.resolve(query);
+                            }
+                        }
+                    }
+                }
+                for (Query query : queries) {
+                    if (!forceOnlyLocal && !query.isOnlyLocal()) {
+                        for (Collection collection : CollectionManager.get().getCollections()) {
+                            if (collection instanceof DbCollection) {
+                                ((DbCollection) collection).resolve(query);
+                            }
+                        }
+                    }
+                }
+            }
+        };
+        ThreadManager.get().execute(r, queries);
+    }
+
+    /**
+     * Adds the {@link Result}s that have been cached for the given {@link Query} during an earlier
+     * session, as long as their {@link Resolver} is still enabled.
+     */
+    private void restoreCachedResults(Query query, boolean forceOnlyLocal) {
+        if (query.isFullTextQuery() || forceOnlyLocal || query.isOnlyLocal()) {
+            return;
+        }
+        boolean restored = false;
+        for (ResolutionCacheDb.Entry entry : ResolutionCacheDb.get().get(query)) {
+            Resolver resolver = getResolver(entry.resolverId);
+            if (resolver == null || !shouldResolve(resolver, query, false)) {
+                continue;
+            }
+            Artist artist = Artist.get(entry.artistName);
+            Album album = Album.get(entry.albumName, artist);
+            Track track = Track.get(entry.trackName, album, artist);
+            track.setDuration(entry.duration);
+            Result result = Result.get(entry.url, track, resolver);
+            result.setBitrate(entry.bitrate);
+            result.setSize(entry.size);
+            result.setLinkUrl(entry.linkUrl);
+            result.setPurchaseUrl(entry.purchaseUrl);
+            query.addTrackResult(result, entry.score);
+            ResolutionPolicy.get().onResultAdded(query, result, entry.score);
+            restored = true;
+        }
+        if (restored) {
+            ResultsEvent event = new ResultsEvent();
+            event.mQuery = query;
+            EventBus.getDefault().post(event);
+        }
+    }
+
     /**
      * If the {@link ScriptResolver} has resolved the {@link Query}, this method will be called.
      * This method will then calculate a score and assign it to every {@link Result}. If the score
@@ -331,14 +459,24 @@ public class PipeLine {
                     @Override
                     public void run() {
                         if (query != null) {
+                            Map<Result, Float> cacheableResults = new HashMap<>();
                             for (Result r : results) {
                                 if (r != null) {
-                                    float trackScore = query.howSimilar(r);
+                                    float trackScore = query.howSimilar(r, MINSCORE);
                                     if (trackScore >= MINSCORE) {
                                         query.addTrackResult(r, trackScore);
+                                        ResolutionPolicy.get()
+                                                .onResultAdded(query, r, trackScore);
+                                        if (!query.isFullTextQuery() && !r.isLocal()
+                                                && r.isResolved()
+                                                && !Query.getBlacklistedResults()
+                                                .contains(r.getCacheKey())) {
+                                            cacheableResults.put(r, trackScore);
+                                        }
                                     }
                                 }
                             }
+                            ResolutionCacheDb.get().put(query, cacheableResults);
                             ResultsEvent event = new ResultsEvent();
                             event.mQuery = query;
                             EventBus.getDefault().post(event);
@@ -25,9 +25,13 @@ import org.tomahawk.libtomahawk.collection.Cacheable;
 import org.tomahawk.libtomahawk.collection.Image;
 import org.tomahawk.libtomahawk.collection.Playlist;
 import org.tomahawk.libtomahawk.collection.Track;
+import org.tomahawk.libtomahawk.database.ResolutionCacheDb;
 import org.tomahawk.libtomahawk.utils.LevensteinDistance;
+import org.tomahawk.libtomahawk.utils.VariousUtils;
 import org.tomahawk.tomahawk_android.activities.TomahawkMainActivity;
 import org.tomahawk.tomahawk_android.mediaplayers.TomahawkMediaPlayer;
+import org.tomahawk.tomahawk_android.utils.ThreadManager;
+import org.tomahawk.tomahawk_android.utils.TomahawkRunnable;
 
 import android.text.TextUtils;
 
@@ -53,6 +57,14 @@ public class Query extends Cacheable implements AlphaComparable, ArtistAlphaComp
 
     private String mFullTextQuery;
 
+    /**
+     * The cleaned up forms of mFullTextQuery, which are being used to compute scores. They are
+     * being computed once in the constructor, so that they can be read from multiple threads.
+     */
+    private final String mNormalizedFullTextQuery;
+
+    private final String mNormalizedFullTextQueryWithoutArticle;
+
     private final boolean mIsFullTextQuery;
 
     private final boolean mIsOnlyLocal;
@@ -132,6 +144,8 @@ public class Query extends Cacheable implements AlphaComparable, ArtistAlphaComp
         super(Query.class, getCacheKey(fullTextQuery, onlyLocal));
 
         mFullTextQuery = fullTextQuery != null ? fullTextQuery : "";
+        mNormalizedFullTextQuery = VariousUtils.cleanUpString(mFullTextQuery, false);
+        mNormalizedFullTextQueryWithoutArticle = VariousUtils.cleanUpString(mFullTextQuery, true);
         mIsFullTextQuery = true;
         mIsOnlyLocal = onlyLocal;
     }
@@ -154,6 +168,8 @@ public class Query extends Cacheable implements AlphaComparable, ArtistAlphaComp
         Album album = Album.get(albumName, artist);
         mBasicTrack = Track.get(trackName, album, artist);
         mResultHint = resultHint != null ? resultHint : "";
+        mNormalizedFullTextQuery = null;
+        mNormalizedFullTextQueryWithoutArticle = null;
         mIsFullTextQuery = false;
         mIsOnlyLocal = onlyLocal;
         mIsFetchedViaHatchet = isFetchedViaHatchet;
@@ -290,6 +306,16 @@ public class Query extends Cacheable implements AlphaComparable, ArtistAlphaComp
         }
         mTrackResults.remove(result);
         mTrackResultScores.remove(result);
+        if (!isFullTextQuery()) {
+            final Result blacklistedResult = result;
+            ThreadManager.get().execute(
+                    new TomahawkRunnable(TomahawkRunnable.PRIORITY_IS_DATABASEACTION) {
+                        @Override
+                        public void run() {
+                            ResolutionCacheDb.get().remove(Query.this, blacklistedResult);
+                        }
+                    });
+        }
     }
 
     public String getResultHint() {
@@ -333,84 +359,94 @@ public class Query extends Cacheable implements AlphaComparable, ArtistAlphaComp
      * This method determines how similar the given result is to the search string.
      */
     public float howSimilar(Result r) {
-        String resultArtistName = "";
-        String resultAlbumName = "";
-        String resultTrackName = "";
-        String artistName;
-        String albumName;
-        String trackName;
-        if (isFullTextQuery()) {
-            artistName = cleanUpString(mFullTextQuery, true);
-            albumName = cleanUpString(mFullTextQuery, false);
-            trackName = albumName;
-        } else {
-            artistName = cleanUpString(mBasicTrack.getArtist().getName(), false);
-            albumName = cleanUpString(mBasicTrack.getAlbum().getName(), false);
-            trackName = cleanUpString(mBasicTrack.getName(), false);
-        }
-        if (r.getArtist().getName() != null) {
-            resultArtistName = cleanUpString(r.getArtist().getName(), false);
-        }
-        if (r.getAlbum().getName() != null) {
-            resultAlbumName = cleanUpString(r.getAlbum().getName(), false);
-        }
-        if (r.getTrack().getName() != null) {
-            resultTrackName = cleanUpString(r.getTrack().getName(), false);
-        }
-
-        int distanceArtist = LevensteinDistance.getDistance(artistName, resultArtistName);
-        int distanceAlbum = LevensteinDistance.getDistance(albumName, resultAlbumName);
-        int distanceTrack = LevensteinDistance.getDistance(trackName, resultTrackName);
-
-        int maxLengthArtist = Math
-                .max(artistName.length(), resultArtistName.length());
-        int maxLengthAlbum = Math
-                .max(albumName.length(), resultAlbumName.length());
-        int maxLengthTrack = Math.max(trackName.length(), resultTrackName.length());
+        return howSimilar(r, 0F);
+    }
 
-        float distanceScoreArtist = (float) (maxLengthArtist - distanceArtist) / maxLengthArtist;
-        float distanceScoreAlbum;
-        if (maxLengthAlbum > 0) {
-            distanceScoreAlbum = (float) (maxLengthAlbum - distanceAlbum) / maxLengthAlbum;
-        } else {
-            distanceScoreAlbum = 0F;
-        }
-        float distanceScoreTrack = (float) (maxLengthTrack - distanceTrack) / maxLengthTrack;
+    /**
+     * This method determines how similar the given result is to the search string. As soon as it
+     * is certain that the score will be lower than minScore, the computation stops and a value
+     * lower than minScore is being returned instead of the exact score.
+     *
+     * @param minScore the minimum score that is of interest to the caller
+     */
+    public float howSimilar(Result r, float minScore) {
+        String resultArtistName = r.getArtist().getNormalizedName();
+        String resultAlbumName = r.getAlbum().getNormalizedName();
+        String resultTrackName = r.getTrack().getNormalizedName();
 
         if (isFullTextQuery()) {
-            final String searchString = cleanUpString(getFullTextQuery(), false);
-            ArrayList<String> resultSearchStrings = new ArrayList<>();
-            resultSearchStrings
-                    .add(cleanUpString(resultArtistName + " " + resultTrackName, false));
-            resultSearchStrings.add(cleanUpString(resultTrackName, false));
-
-            float maxResult = 0F;
-            for (String resultSearchString : resultSearchStrings) {
-                int distanceArtistTrack =
-                        LevensteinDistance.getDistance(searchString, resultSearchString);
-                int maxLengthArtistTrack = Math
-                        .max(searchString.length(), resultSearchString.length());
-                float distanceScoreArtistTrack =
-                        (float) (maxLengthArtistTrack - distanceArtistTrack) / maxLengthArtistTrack;
-
-                float result = Math.max(distanceScoreArtist, distanceScoreAlbum);
-                result = Math.max(result, distanceScoreArtistTrack);
-                result = Math.max(result, distanceScoreTrack);
-                if (resultSearchString.contains(searchString)) {
-                    result = Math.max(result, 0.9F);
-                }
-                maxResult = Math.max(result, maxResult);
+            // The result is the maximum of all partial scores. So every partial score that is
+            // lower than minScore is irrelevant as long as another one isn't.
+            String searchString = mNormalizedFullTextQuery;
+            String resultArtistTrackName =
+                    cleanUpString(resultArtistName + " " + resultTrackName, false);
+
+            float result = similarity(mNormalizedFullTextQueryWithoutArticle, resultArtistName,
+                    minScore);
+            if (Math.max(searchString.length(), resultAlbumName.length()) > 0) {
+                result = Math.max(result,
+                        similarity(searchString, resultAlbumName, minScore));
+            } else {
+                result = Math.max(result, 0F);
+            }
+            result = Math.max(result, similarity(searchString, resultArtistTrackName, minScore));
+            result = Math.max(result, similarity(searchString, resultTrackName, minScore));
+            if (resultArtistTrackName.contains(searchString)
+                    || resultTrackName.contains(searchString)) {
+                result = Math.max(result, 0.9F);
             }
-            return maxResult;
+            return result;
         } else {
+            // The score is the weighted sum of the artist (4), album (1) and track (5) scores.
+            // Before a partial score is being computed, the remaining partial scores are assumed
+            // to be perfect, which yields the minimum partial score that's still of interest.
+            float requiredSum = minScore * 10;
+            float distanceScoreArtist = similarity(mBasicTrack.getArtist().getNormalizedName(),
+                    resultArtistName, (requiredSum - 6) / 4);
+            if (distanceScoreArtist * 4 + 6 < requiredSum) {
+                return (distanceScoreArtist * 4 + 6) / 10;
+            }
+            float distanceScoreTrack = similarity(mBasicTrack.getNormalizedName(),
+                    resultTrackName, (requiredSum - distanceScoreArtist * 4 - 1) / 5);
+            if (distanceScoreArtist * 4 + 1 + distanceScoreTrack * 5 < requiredSum) {
+                return (distanceScoreArtist * 4 + 1 + distanceScoreTrack * 5) / 10;
+            }
+            float distanceScoreAlbum;
             if (TextUtils.isEmpty(mBasicTrack.getAlbum().getName())) {
                 distanceScoreAlbum = 1F;
+            } else {
+                String albumName = mBasicTrack.getAlbum().getNormalizedName();
+                if (Math.max(albumName.length(), resultAlbumName.length()) > 0) {
+                    distanceScoreAlbum = similarity(albumName, resultAlbumName,
+                            requiredSum - distanceScoreArtist * 4 - distanceScoreTrack * 5);
+                } else {
+                    distanceScoreAlbum = 0F;
+                }
             }
 
             return (distanceScoreArtist * 4 + distanceScoreAlbum + distanceScoreTrack * 5) / 10;
         }
     }
 
+    /**
+     * @param minScore the minimum score that is of interest to the caller
+     * @return the similarity of the two given Strings between 0 and 1 based on their edit
+     * distance. If the similarity is lower than minScore, a value lower than minScore is being
+     * returned instead.
+     */
+    private static float similarity(String a, String b, float minScore) {
+        int maxLength = Math.max(a.length(), b.length());
+        int distance;
+        if (maxLength > 0 && minScore > 0F) {
+            // Allow for a bit of rounding error. Greater distances are being computed exactly.
+            int maxDistance = (int) (maxLength * (1F - minScore) + 0.001F);
+            distance = LevensteinDistance.getDistance(a, b, Math.max(maxDistance, 0));
+        } else {
+            distance = LevensteinDistance.getDistance(a, b);
+        }
+        return (float) (maxLength - distance) / maxLength;
+    }
+
     /**
      * Clean up the given String.
      *
@@ -418,11 +454,7 @@ public class Query extends Cacheable implements AlphaComparable, ArtistAlphaComp
      * @return the clean String
      */
     public String cleanUpString(String in, boolean replaceArticle) {
-        String out = in.toLowerCase().trim().replaceAll("[\\s]{2,}", " ");
-        if (replaceArticle && out.startsWith("the ")) {
-            out = out.substring(4);
-        }
-        return out;
+        return VariousUtils.cleanUpString(in, replaceArticle);
     }
 
     public String getName() {
@@ -0,0 +1,311 @@
+/* == This file is part of Tomahawk Player - <http://tomahawk-player.org> ===
+ *
+ *   Copyright 2015, Enno Gottschalk <mrmaffen@googlemail.com>
+ *
+ *   Tomahawk is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Tomahawk is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Tomahawk. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tomahawk.libtomahawk.resolver;
+
+import org.tomahawk.tomahawk_android.utils.ThreadManager;
+import org.tomahawk.tomahawk_android.utils.TomahawkRunnable;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Decides when the resolution of a {@link Query} is good enough to stop. As soon as a {@link
+ * Result} with a score of at least the "good enough" score has been reported by a local source or
+ * a {@link Resolver} with at least the racing weight, the {@link Query} is being settled: all
+ * {@link ScriptJob}s that are still running for it are being cancelled. {@link ScriptResolver}s
+ * with a weight below the hedge weight are only being started after the hedge delay, and only for
+ * the {@link Query}s that haven't been settled in the meantime. Full text {@link Query}s are
+ * always being resolved by every {@link Resolver}.
+ */
+public class ResolutionPolicy {
+
+    private final static String TAG = ResolutionPolicy.class.getSimpleName();
+
+    public static final float DEFAULT_GOOD_ENOUGH_SCORE = 0.9F;
+
+    public static final int DEFAULT_RACING_WEIGHT = 85;
+
+    public static final int DEFAULT_HEDGE_WEIGHT = 80;
+
+    public static final long DEFAULT_HEDGE_DELAY = 1500;
+
+    private static class Holder {
+
+        private static final ResolutionPolicy instance = new ResolutionPolicy();
+
+    }
+
+    private static class QueryState {
+
+        private boolean mSettled;
+
+        private final List<HedgedStart> mHedgedStarts = new ArrayList<>();
+
+    }
+
+    /**
+     * Starts a {@link ScriptResolver} for all of its {@link Query}s that haven't been settled
+     */
+    private class HedgedStart implements Runnable {
+
+        private final ScriptResolver mResolver;
+
+        private final List<Query> mQueries;
+
+        public HedgedStart(ScriptResolver resolver, List<Query> queries) {
+            mResolver = resolver;
+            mQueries = queries;
+        }
+
+        @Override
+        public void run() {
+            final List<Query> unsettledQueries = new ArrayList<>();
+            synchronized (ResolutionPolicy.this) {
+                for (Query query : mQueries) {
+                    QueryState state = mQueryStates.get(query);
+                    if (state != null) {
+                        state.mHedgedStarts.remove(this);
+                    }
+                    if (state == null || !state.mSettled) {
+                        unsettledQueries.add(query);
+                    }
+                }
+            }
+            if (unsettledQueries.isEmpty()) {
+                return;
+            }
+            TomahawkRunnable r = new TomahawkRunnable(TomahawkRunnable.PRIORITY_IS_RESOLVING) {
+                @Override
+                public void run() {
+                    if (unsettledQueries.size() > 1) {
+                        mResolver.resolve(unsettledQueries);
+                    } else {
+                        mResolver.resolve(unsettledQueries.get(0));
+                    }
+                }
+            };
+            ThreadManager.get().execute(r, unsettledQueries);
+        }
+    }
+
+    private volatile float mGoodEnoughScore = DEFAULT_GOOD_ENOUGH_SCORE;
+
+    private volatile int mRacingWeight = DEFAULT_RACING_WEIGHT;
+
+    private volatile int mHedgeWeight = DEFAULT_HEDGE_WEIGHT;
+
+    private volatile long mHedgeDelay = DEFAULT_HEDGE_DELAY;
+
+    /**
+     * Guarded by this object's lock
+     */
+    private final Map<Query, QueryState> mQueryStates = new WeakHashMap<>();
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private ResolutionPolicy() {
+    }
+
+    public static ResolutionPolicy get() {
+        return Holder.instance;
+    }
+
+    public float getGoodEnoughScore() {
+        return mGoodEnoughScore;
+    }
+
+    /**
+     * @param goodEnoughScore the minimum score of a {@link Result} that settles its {@link Query}.
+     *                        A value above 1 disables settling {@link Query}s early.
+     */
+    public void setGoodEnoughScore(float goodEnoughScore) {
+        mGoodEnoughScore = goodEnoughScore;
+    }
+
+    public int getRacingWeight() {
+        return mRacingWeight;
+    }
+
+    /**
+     * @param racingWeight the minimum weight of a {@link Resolver} whose {@link Result}s can settle
+     *                     a {@link Query}
+     */
+    public void setRacingWeight(int racingWeight) {
+        mRacingWeight = racingWeight;
+    }
+
+    public int getHedgeWeight() {
+        return mHedgeWeight;
+    }
+
+    /**
+     * @param hedgeWeight {@link ScriptResolver}s with a weight below this one are only being
+     *                    started after the hedge delay
+     */
+    public void setHedgeWeight(int hedgeWeight) {
+        mHedgeWeight = hedgeWeight;
+    }
+
+    public long getHedgeDelay() {
+        return mHedgeDelay;
+    }
+
+    /**
+     * @param hedgeDelay the time in ms after which {@link ScriptResolver}s with a weight below the
+     *                   hedge weight are being started. 0 starts them right away.
+     */
+    public void setHedgeDelay(long hedgeDelay) {
+        mHedgeDelay = hedgeDelay;
+    }
+
+    /**
+     * Must be called before the given {@link Query} is being resolved. Resets any state of a
+     * previous resolution.
+     */
+    public synchronized void onResolving(Query query) {
+        QueryState state = mQueryStates.get(query);
+        if (state != null) {
+            cancelHedgedStarts(state);
+        }
+        mQueryStates.put(query, new QueryState());
+    }
+
+    /**
+     * @return whether or not the given {@link Resolver} should only be started after the hedge
+     * delay
+     */
+    public boolean isHedged(Resolver resolver) {
+        return mHedgeDelay > 0 && resolver instanceof ScriptResolver
+                && resolver.getWeight() < mHedgeWeight;
+    }
+
+    /**
+     * Resolves the given {@link Query}s with the given {@link ScriptResolver} after the hedge
+     * delay. All {@link Query}s that have been settled in the meantime are being left out.
+     */
+    public void resolveHedged(ScriptResolver resolver, List<Query> queries) {
+        HedgedStart start = new HedgedStart(resolver, new ArrayList<>(queries));
+        synchronized (this) {
+            for (Query query : queries) {
+                QueryState state = mQueryStates.get(query);
+                if (state == null) {
+                    state = new QueryState();
+                    mQueryStates.put(query, state);
+                }
+                state.mHedgedStarts.add(start);
+            }
+        }
+        mHandler.postDelayed(start, mHedgeDelay);
+    }
+
+    /**
+     * Must be called for every {@link Result} that has been added to the given {@link Query}.
+     * Settles the {@link Query} if the {@link Result} is good enough.
+     */
+    public void onResultAdded(Query query, Result result, float score) {
+        if (!query.isFullTextQuery() && score >= mGoodEnoughScore
+                && (result.isLocal() || result.getResolvedBy().getWeight() >= mRacingWeight)) {
+            if (settle(query)) {
+                Log.d(TAG, "onResultAdded - settled query " + query.getName() + " with a result"
+                        + " of " + result.getResolvedBy().getId() + " (score: " + score + ")");
+                cancelJobs(query);
+            }
+        }
+    }
+
+    /**
+     * Settles the given {@link Query} and cancels everything that is still running for it.
+     *
+     * @return whether or not any {@link ScriptJob} has been cancelled
+     */
+    public boolean stop(Query query) {
+        settle(query);
+        return cancelJobs(query);
+    }
+
+    public synchronized boolean isSettled(Query query) {
+        QueryState state = mQueryStates.get(query);
+        return state != null && state.mSettled;
+    }
+
+    /**
+     * @return whether or not every one of the given {@link Query}s has been settled
+     */
+    public synchronized boolean areSettled(Collection<Query> queries) {
+        for (Query query : queries) {
+            if (!isSettled(query)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return whether or not the given {@link Query} hasn't been settled before
+     */
+    private boolean settle(Query query) {
+        synchronized (this) {
+            QueryState state = mQueryStates.get(query);
+            if (state == null) {
+                state = new QueryState();
+                mQueryStates.put(query, state);
+            } else if (state.mSettled) {
+                return false;
+            }
+            state.mSettled = true;
+            cancelHedgedStarts(state);
+        }
+        return true;
+    }
+
+    private boolean cancelJobs(Query query) {
+        boolean cancelled = false;
+        for (ScriptResolver resolver : PipeLine.get().getScriptResolvers()) {
+            cancelled |= resolver.getScriptAccount().cancelJobs(query);
+        }
+        return cancelled;
+    }
+
+    /**
+     * Removes all pending {@link HedgedStart}s of the given {@link QueryState}, whose {@link
+     * Query}s have all been settled. Must be called while holding the lock on this object.
+     */
+    private void cancelHedgedStarts(QueryState state) {
+        for (HedgedStart start : state.mHedgedStarts) {
+            boolean settled = true;
+            for (Query query : start.mQueries) {
+                QueryState queryState = mQueryStates.get(query);
+                if (queryState != state && (queryState == null || !queryState.mSettled)) {
+                    settled = false;
+                    break;
+                }
+            }
+            if (settled) {
+                mHandler.removeCallbacks(start);
+            }
+        }
+        state.mHedgedStarts.clear();
+    }
+}
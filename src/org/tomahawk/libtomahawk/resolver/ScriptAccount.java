@@ -19,9 +19,11 @@ package org.tomahawk.libtomahawk.resolver;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
 
 import org.apache.commons.io.Charsets;
 import org.apache.commons.io.IOUtils;
+import org.tomahawk.libtomahawk.database.CollectionDb;
 import org.tomahawk.libtomahawk.database.CollectionDbManager;
 import org.tomahawk.libtomahawk.resolver.models.ScriptResolverMetaData;
 import org.tomahawk.libtomahawk.resolver.models.ScriptResolverTrack;
@@ -33,22 +35,25 @@ import org.tomahawk.libtomahawk.utils.StringEscapeUtils;
 import org.tomahawk.tomahawk_android.TomahawkApp;
 import org.tomahawk.tomahawk_android.activities.TomahawkMainActivity;
 
-import android.content.Context;
-import android.os.Build;
-import android.os.Handler;
-import android.os.Looper;
 import android.preference.PreferenceManager;
 import android.util.Log;
-import android.webkit.WebSettings;
-import android.webkit.WebView;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import de.greenrobot.event.EventBus;
 
 public class ScriptAccount implements ScriptWebViewClient.WebViewClientReadyListener {
 
@@ -60,15 +65,52 @@ public class ScriptAccount implements ScriptWebViewClient.WebViewClientReadyList
 
     public final static String ENABLED_KEY = "_enabled_";
 
+    /**
+     * Executor for the native script jobs of all {@link ScriptAccount}s
+     */
+    private static final ExecutorService sNativeScriptJobExecutor =
+            Executors.newSingleThreadExecutor();
+
+    /**
+     * Reports how many tracks of a collection have already been stored while a resolver is
+     * adding its tracks page by page
+     */
+    public static class CollectionAddTracksProgressEvent {
+
+        public String mCollectionId;
+
+        public int mAdded;
+
+        public int mTotal;
+
+    }
+
     private String mPath;
 
     private boolean mManuallyInstalled;
 
     private String mName;
 
-    private WebView mWebView;
+    /**
+     * The id of this {@link ScriptAccount}'s isolated javascript context in the {@link ScriptHost}
+     */
+    private String mContextId;
+
+    private final Map<String, ScriptJob> mJobs = new ConcurrentHashMap<>();
 
-    private HashMap<String, ScriptJob> mJobs = new HashMap<>();
+    /**
+     * Payloads that are waiting to be pulled by the javascript side through {@link
+     * ScriptInterface#takeMessage(String)}, keyed by their message id. This way large payloads are
+     * being passed as they are, instead of being escaped into the evaluated javascript source.
+     */
+    private final Map<String, String> mMessages = new ConcurrentHashMap<>();
+
+    /**
+     * The ids of the collections whose import is still running in a batch of the {@link
+     * CollectionDb}
+     */
+    private final Set<String> mBatchedCollectionIds =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
     private HashMap<String, ScriptObject> mObjects = new HashMap<>();
 
@@ -117,72 +159,37 @@ public class ScriptAccount implements ScriptWebViewClient.WebViewClientReadyList
             return;
         }
 
-        mWebView = new WebView(TomahawkApp.getContext());
-        WebSettings settings = mWebView.getSettings();
-        settings.setJavaScriptEnabled(true);
-        settings.setDatabaseEnabled(true);
-        if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.JELLY_BEAN_MR2) {
-            //noinspection deprecation
-            settings.setDatabasePath(
-                    TomahawkApp.getContext().getDir("databases", Context.MODE_PRIVATE)
-                            .getPath());
-        }
-        settings.setDomStorageEnabled(true);
-        mWebView.setWebChromeClient(new TomahawkWebChromeClient());
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
-            mWebView.getSettings().setAllowUniversalAccessFromFileURLs(true);
-        }
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-            WebView.setWebContentsDebuggingEnabled(true);
+        mContextId = "context" + TomahawkMainActivity.getSessionUniqueStringId();
+        String scripts = "<script src=\"file:///android_asset/js/rsvp-latest.min.js"
+                + "\" type=\"text/javascript\"></script>"
+                + "<script src=\"file:///android_asset/js/cryptojs-core.js"
+                + "\" type=\"text/javascript\"></script>";
+        if (mMetaData.manifest.scripts != null) {
+            for (String scriptPath : mMetaData.manifest.scripts) {
+                scripts += "<script src=\"" + mPath + "/content/" + scriptPath
+                        + "\" type=\"text/javascript\"></script>";
+            }
         }
-
-        new Handler(Looper.getMainLooper()).post(new Runnable() {
-            @Override
-            public void run() {
-                //initalize WebView
-                String data = "<!DOCTYPE html>" + "<html>"
-                        + "<head><title>" + mName + "</title></head>"
-                        + "<body>"
-                        + "<script src=\"file:///android_asset/js/rsvp-latest.min.js"
-                        + "\" type=\"text/javascript\"></script>"
-                        + "<script src=\"file:///android_asset/js/cryptojs-core.js"
+        try {
+            String[] cryptoJsScripts = TomahawkApp.getContext().getAssets().list("js/cryptojs");
+            for (String scriptPath : cryptoJsScripts) {
+                scripts += "<script src=\"file:///android_asset/js/cryptojs/" + scriptPath
                         + "\" type=\"text/javascript\"></script>";
-                if (mMetaData.manifest.scripts != null) {
-                    for (String scriptPath : mMetaData.manifest.scripts) {
-                        data += "<script src=\"" + mPath + "/content/" + scriptPath
-                                + "\" type=\"text/javascript\"></script>";
-                    }
-                }
-                try {
-                    String[] cryptoJsScripts =
-                            TomahawkApp.getContext().getAssets().list("js/cryptojs");
-                    for (String scriptPath : cryptoJsScripts) {
-                        data += "<script src=\"file:///android_asset/js/cryptojs/"
-                                + scriptPath
-                                + "\" type=\"text/javascript\"></script>";
-                    }
-                } catch (IOException e) {
-                    Log.e(TAG,
-                            "ScriptResolver: " + e.getClass() + ": " + e.getLocalizedMessage());
-                }
-                data += "<script src=\"file:///android_asset/js/tomahawk_android_pre.js"
-                        + "\" type=\"text/javascript\"></script>"
-                        + "<script src=\"file:///android_asset/js/tomahawk.js"
-                        + "\" type=\"text/javascript\"></script>"
-                        + "<script src=\"file:///android_asset/js/tomahawk-infosystem.js"
-                        + "\" type=\"text/javascript\"></script>"
-                        + "<script src=\"file:///android_asset/js/tomahawk_android_post.js"
-                        + "\" type=\"text/javascript\"></script>"
-                        + "<script src=\"" + mPath + "/content/" + mMetaData.manifest.main
-                        + "\" type=\"text/javascript\"></script>"
-                        + "</body></html>";
-                mWebView.setWebViewClient(new ScriptWebViewClient(ScriptAccount.this));
-                mWebView.addJavascriptInterface(new ScriptInterface(ScriptAccount.this),
-                        SCRIPT_INTERFACE_NAME);
-                mWebView.loadDataWithBaseURL("file:///android_asset/test.html", data,
-                        "text/html", null, null);
             }
-        });
+        } catch (IOException e) {
+            Log.e(TAG, "ScriptResolver: " + e.getClass() + ": " + e.getLocalizedMessage());
+        }
+        scripts += "<script src=\"file:///android_asset/js/tomahawk_android_pre.js"
+                + "\" type=\"text/javascript\"></script>"
+                + "<script src=\"file:///android_asset/js/tomahawk.js"
+                + "\" type=\"text/javascript\"></script>"
+                + "<script src=\"file:///android_asset/js/tomahawk-infosystem.js"
+                + "\" type=\"text/javascript\"></script>"
+                + "<script src=\"file:///android_asset/js/tomahawk_android_post.js"
+                + "\" type=\"text/javascript\"></script>"
+                + "<script src=\"" + mPath + "/content/" + mMetaData.manifest.main
+                + "\" type=\"text/javascript\"></script>";
+        ScriptHost.get().createContext(mContextId, scripts, new ScriptInterface(this), this);
     }
 
     /**
@@ -261,33 +268,81 @@ public class ScriptAccount implements ScriptWebViewClient.WebViewClientReadyList
             evaluateJavaScript("Tomahawk.PluginManager.unregisterPlugin('"
                     + ScriptObject.TYPE_INFOPLUGIN + "', " + objectId + ");");
         }
+        // Close the batches of the imports that won't be finished anymore. This is done on the
+        // native script job executor, so that the already queued pages are being written first.
+        sNativeScriptJobExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                endBatches();
+            }
+        });
     }
 
     public void startJob(final ScriptJob job) {
         final String requestId = TomahawkMainActivity.getSessionUniqueStringId();
         mJobs.put(requestId, job);
-        new Handler(Looper.getMainLooper()).post(new Runnable() {
-            @Override
-            public void run() {
-                String serializedArgs = GsonHelper.get().toJson(job.getArguments());
-                serializedArgs = "JSON.parse('" + StringEscapeUtils
-                        .escapeJavaScript(serializedArgs) + "')";
-                evaluateJavaScript("Tomahawk.PluginManager.invoke("
-                        + "'" + requestId + "',"
-                        + "'" + job.getScriptObject().getId() + "',"
-                        + "'" + job.getMethodName() + "',"
-                        + serializedArgs + ")");
-            }
-        });
+        // Serializing the arguments is being done on the calling thread, so that it doesn't block
+        // the main thread
+        String messageId = postMessage(GsonHelper.get().toJson(job.getArguments()));
+        evaluateJavaScript("Tomahawk.PluginManager.invoke("
+                + "'" + requestId + "',"
+                + "'" + job.getScriptObject().getId() + "',"
+                + "'" + job.getMethodName() + "',"
+                + "JSON.parse(Tomahawk.takeMessage('" + messageId + "')))");
     }
 
-    private void evaluateJavaScript(final String code) {
-        new Handler(Looper.getMainLooper()).post(new Runnable() {
-            @Override
-            public void run() {
-                mWebView.loadUrl("javascript: " + code);
+    /**
+     * Stores the given payload until the javascript side pulls it via {@link #takeMessage(String)}
+     *
+     * @return the id of the stored message
+     */
+    private String postMessage(String payload) {
+        String messageId = TomahawkMainActivity.getSessionUniqueStringId();
+        mMessages.put(messageId, payload);
+        return messageId;
+    }
+
+    /**
+     * Removes the message with the given id
+     *
+     * @return the payload of the message, or null if it doesn't exist or has already been taken
+     */
+    public String takeMessage(String messageId) {
+        return messageId == null ? null : mMessages.remove(messageId);
+    }
+
+    private void evaluateJavaScript(String code) {
+        ScriptHost.get().evaluate(mContextId, code);
+    }
+
+    /**
+     * @return the {@link ScriptJob} with the given requestId, or null if it doesn't exist or has
+     * already reported back
+     */
+    public ScriptJob getJob(String requestId) {
+        return requestId == null ? null : mJobs.get(requestId);
+    }
+
+    /**
+     * Cancels all running {@link ScriptJob}s of this {@link ScriptAccount} that have been started
+     * for the given {@link Query}, as long as all of their other {@link Query}s have been settled
+     * as well. Results that are being reported for a cancelled {@link ScriptJob} are being
+     * ignored.
+     *
+     * @return whether or not any {@link ScriptJob} has been cancelled
+     */
+    public boolean cancelJobs(Query query) {
+        boolean cancelled = false;
+        for (Map.Entry<String, ScriptJob> entry : mJobs.entrySet()) {
+            ScriptJob job = entry.getValue();
+            if (job.getQueries().contains(query)
+                    && ResolutionPolicy.get().areSettled(job.getQueries())
+                    && mJobs.remove(entry.getKey()) != null) {
+                ScriptRequestManager.get().stop(job);
+                cancelled = true;
             }
-        });
+        }
+        return cancelled;
     }
 
     public void reportScriptJobResult(JsonObject result) {
@@ -297,7 +352,7 @@ public class ScriptAccount implements ScriptWebViewClient.WebViewClientReadyList
             requestId = result.get("requestId").getAsString();
         }
         if (requestId != null && !requestId.isEmpty()) {
-            ScriptJob job = mJobs.get(requestId);
+            ScriptJob job = mJobs.remove(requestId);
             if (job != null) {
                 JsonElement errorNode = result.get("error");
                 if (errorNode == null) {
@@ -308,8 +363,9 @@ public class ScriptAccount implements ScriptWebViewClient.WebViewClientReadyList
                     job.reportFailure("no error message provided");
                 }
             } else {
-                Log.e(TAG, "reportScriptJobResult - ScriptAccount:" + mName
-                        + ", couldn't find ScriptJob with given requestId");
+                Log.d(TAG, "reportScriptJobResult - ScriptAccount:" + mName
+                        + ", couldn't find ScriptJob with given requestId, it might have been"
+                        + " cancelled");
             }
         } else {
             Log.e(TAG, "reportScriptJobResult - ScriptAccount:" + mName
@@ -382,37 +438,134 @@ public class ScriptAccount implements ScriptWebViewClient.WebViewClientReadyList
             }
         }
         String headersString = GsonHelper.get().toJson(headers);
+        // Only the small header and status Strings are being escaped, the response body is being
+        // pulled through the message channel
+        String messageId = postMessage(responseText);
         evaluateJavaScript("Tomahawk._nativeAsyncRequestDone(" + requestId + ","
-                + "'" + StringEscapeUtils.escapeJavaScript(responseText) + "',"
+                + "Tomahawk.takeMessage('" + messageId + "'),"
                 + "'" + StringEscapeUtils.escapeJavaScript(headersString) + "',"
                 + status + ","
                 + "'" + StringEscapeUtils.escapeJavaScript(statusText) + "');");
     }
 
-    public class CollectionAddTracksResult {
+    public class CollectionWipeResult {
 
         String id;
-
-        ScriptResolverTrack[] tracks;
     }
 
-    public class CollectionWipeResult {
+    /**
+     * Executes the given native script job off the JavaBridge thread. Native script jobs of all
+     * {@link ScriptAccount}s are being executed one after another, so that e.g. a wipe and the
+     * following pages of tracks are being applied in the order in which they have been sent.
+     */
+    public void invokeNativeScriptJob(final int requestId, final String methodName,
+            final String paramsString) {
+        sNativeScriptJobExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (methodName.equals("collectionAddTracks")) {
+                        collectionAddTracks(paramsString);
+                    } else if (methodName.equals("collectionWipe")) {
+                        CollectionWipeResult result = GsonHelper.get()
+                                .fromJson(paramsString, CollectionWipeResult.class);
+                        CollectionDb collectionDb =
+                                CollectionDbManager.get().getCollectionDb(result.id);
+                        // Close the batch of an import that has been aborted
+                        mBatchedCollectionIds.remove(result.id);
+                        collectionDb.endBatch();
+                        collectionDb.wipe();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    Log.e(TAG, "invokeNativeScriptJob - " + e.getClass() + ": "
+                            + e.getLocalizedMessage());
+                    // The import won't be continued, so the pages that have been stored so far
+                    // are being posted right away
+                    endBatches();
+                    evaluateJavaScript(
+                            "Tomahawk.NativeScriptJobManager.reportNativeScriptJobFailure("
+                                    + requestId + ", '" + StringEscapeUtils.escapeJavaScript(
+                                    e.getClass().getSimpleName() + ": " + e.getLocalizedMessage())
+                                    + "');");
+                    return;
+                }
+                evaluateJavaScript("Tomahawk.NativeScriptJobManager.reportNativeScriptJobResult("
+                        + requestId + ");");
+            }
+        });
+    }
 
-        String id;
+    /**
+     * Ends the batches of all collection imports of this {@link ScriptAccount} that are still
+     * running. Must be called on the native script job executor.
+     */
+    private void endBatches() {
+        for (String collectionId : mBatchedCollectionIds) {
+            CollectionDbManager.get().getCollectionDb(collectionId).endBatch();
+        }
+        mBatchedCollectionIds.clear();
     }
 
-    public void invokeNativeScriptJob(int requestId, String methodName, String paramsString) {
-        if (methodName.equals("collectionAddTracks")) {
-            CollectionAddTracksResult result =
-                    GsonHelper.get().fromJson(paramsString, CollectionAddTracksResult.class);
-            CollectionDbManager.get().getCollectionDb(result.id).addTracks(result.tracks);
-        } else if (methodName.equals("collectionWipe")) {
-            CollectionWipeResult result =
-                    GsonHelper.get().fromJson(paramsString, CollectionWipeResult.class);
-            CollectionDbManager.get().getCollectionDb(result.id).wipe();
+    /**
+     * Stores a single page of tracks. The page arrives as one String over the javascript bridge,
+     * which can't pass a stream. It is being parsed with a {@link JsonReader}, so that no
+     * intermediate JSON tree has to be built next to the page's {@link ScriptResolverTrack}s.
+     *
+     * All pages of an import are being written in one batch of the {@link CollectionDb}, so that
+     * a single {@link CollectionDb.TracksUpdatedEvent} is being posted after the last page.
+     */
+    private void collectionAddTracks(String paramsString) throws IOException {
+        String id = null;
+        List<ScriptResolverTrack> tracks = new ArrayList<>();
+        int added = -1;
+        int total = -1;
+        JsonReader reader = new JsonReader(new StringReader(paramsString));
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("id")) {
+                    id = reader.nextString();
+                } else if (name.equals("tracks")) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        ScriptResolverTrack track =
+                                GsonHelper.get().fromJson(reader, ScriptResolverTrack.class);
+                        tracks.add(track);
+                    }
+                    reader.endArray();
+                } else if (name.equals("added")) {
+                    added = reader.nextInt();
+                } else if (name.equals("total")) {
+                    total = reader.nextInt();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } finally {
+            reader.close();
+        }
+        CollectionDb collectionDb = CollectionDbManager.get().getCollectionDb(id);
+        boolean lastPage = added < 0 || total < 0 || added >= total;
+        if (!lastPage) {
+            mBatchedCollectionIds.add(id);
+            collectionDb.beginBatch();
+        }
+        collectionDb.addTracks(tracks.toArray(new ScriptResolverTrack[tracks.size()]));
+        if (lastPage) {
+            mBatchedCollectionIds.remove(id);
+            collectionDb.endBatch();
+        }
+        if (added >= 0 && total >= 0) {
+            Log.d(TAG, "collectionAddTracks - ScriptAccount: " + mName + ", added " + added
+                    + " of " + total + " tracks to collection " + id);
+            CollectionAddTracksProgressEvent event = new CollectionAddTracksProgressEvent();
+            event.mCollectionId = id;
+            event.mAdded = added;
+            event.mTotal = total;
+            EventBus.getDefault().post(event);
         }
-        evaluateJavaScript(
-                "Tomahawk.NativeScriptJobManager.reportNativeScriptJobResult(" + requestId + ");");
     }
 
 }
@@ -0,0 +1,361 @@
+/* == This file is part of Tomahawk Player - <http://tomahawk-player.org> ===
+ *
+ *   Copyright 2015, Enno Gottschalk <mrmaffen@googlemail.com>
+ *
+ *   Tomahawk is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Tomahawk is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Tomahawk. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tomahawk.libtomahawk.resolver;
+
+import org.tomahawk.libtomahawk.utils.GsonHelper;
+import org.tomahawk.libtomahawk.utils.StringEscapeUtils;
+import org.tomahawk.tomahawk_android.TomahawkApp;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.webkit.JavascriptInterface;
+import android.webkit.WebSettings;
+import android.webkit.WebView;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hosts the javascript of all {@link ScriptAccount}s in a single {@link WebView}. Every {@link
+ * ScriptAccount} gets its own iframe, so that its scripts run in their own global context, while
+ * all of them share one renderer. Calls from the javascript side are being routed to the {@link
+ * ScriptInterface} of the calling context through the single {@link HostInterface}. Every context
+ * is identified by a random token, which only its own proxy object knows, so that a script can't
+ * call into the {@link ScriptInterface} of another context by passing that context's id.
+ *
+ * The javascript that is being evaluated in the contexts is being queued and sent to the {@link
+ * WebView} in as few calls as possible, so that the main thread isn't being flooded with one
+ * message per evaluated snippet.
+ */
+public class ScriptHost implements ScriptWebViewClient.WebViewClientReadyListener {
+
+    private final static String TAG = ScriptHost.class.getSimpleName();
+
+    public final static String HOST_INTERFACE_NAME = "TomahawkHost";
+
+    /**
+     * The maximum number of arguments of the methods in {@link ScriptInterface}
+     */
+    private static final int MAX_ARGUMENTS = 5;
+
+    private static final String HOST_PAGE = "<!DOCTYPE html>"
+            + "<html><head><title>ScriptHost</title></head><body><script>"
+            + "function createScriptProxy(token) {"
+            + "  var proxy = {};"
+            + "  var s = function (value) {"
+            + "    return value === null || value === undefined ? null : String(value);"
+            + "  };"
+            + "  var methods = JSON.parse(" + HOST_INTERFACE_NAME + ".methods());"
+            + "  Object.keys(methods).forEach(function (name) {"
+            + "    proxy[name] = function () {"
+            + "      var a = arguments;"
+            + "      var result = " + HOST_INTERFACE_NAME + ".call(token, name, a.length,"
+            + "          s(a[0]), s(a[1]), s(a[2]), s(a[3]), s(a[4]));"
+            + "      if (methods[name]) {"
+            + "        return result;"
+            + "      }"
+            + "      return result ? JSON.parse(result) : null;"
+            + "    };"
+            + "  });"
+            + "  return proxy;"
+            + "}"
+            + "function createContext(contextId, html) {"
+            + "  var iframe = document.createElement('iframe');"
+            + "  iframe.id = contextId;"
+            + "  iframe.style.display = 'none';"
+            + "  document.body.appendChild(iframe);"
+            + "  iframe.contentDocument.open();"
+            + "  iframe.contentDocument.write(html);"
+            + "  iframe.contentDocument.close();"
+            + "}"
+            + "</script></body></html>";
+
+    private static class Holder {
+
+        private static final ScriptHost instance = new ScriptHost();
+
+    }
+
+    /**
+     * The single javascript interface of the {@link WebView}. Every call is being dispatched to
+     * the {@link ScriptInterface} of the context it has been made from.
+     */
+    public class HostInterface {
+
+        /**
+         * @return a JSON object, which maps the names of all methods of {@link ScriptInterface} to
+         * whether or not they return a String, so that the javascript side can build a proxy object
+         * for every context
+         */
+        @JavascriptInterface
+        public String methods() {
+            Map<String, Boolean> methods = new HashMap<>();
+            for (Method method : sMethods.values()) {
+                methods.put(method.getName(), method.getReturnType() == String.class);
+            }
+            return GsonHelper.get().toJson(methods);
+        }
+
+        /**
+         * Calls the {@link ScriptInterface} method with the given name and number of arguments.
+         * The arguments are being passed as Strings and converted to the method's parameter types.
+         *
+         * @param token the token of the calling context, which has been given to its proxy object
+         *
+         * @return the returned String as it is, so that large payloads don't have to be escaped,
+         * the JSON serialized return value of any other type, or null if there is none
+         */
+        @JavascriptInterface
+        public String call(String token, String methodName, int argumentCount, String a0,
+                String a1, String a2, String a3, String a4) {
+            ScriptInterface scriptInterface = token != null ? mInterfaces.get(token) : null;
+            if (scriptInterface == null) {
+                Log.e(TAG, "call - rejected call of " + methodName + " with an unknown token");
+                return null;
+            }
+            Method method = sMethods.get(methodName + "/" + argumentCount);
+            if (method == null) {
+                Log.e(TAG, "call - couldn't find method " + methodName + " with "
+                        + argumentCount + " arguments");
+                return null;
+            }
+            String[] strings = new String[]{a0, a1, a2, a3, a4};
+            Class<?>[] types = method.getParameterTypes();
+            Object[] arguments = new Object[types.length];
+            try {
+                for (int i = 0; i < types.length; i++) {
+                    if (types[i] == int.class) {
+                        arguments[i] =
+                                strings[i] == null ? 0 : (int) Double.parseDouble(strings[i]);
+                    } else if (types[i] == boolean.class) {
+                        arguments[i] = Boolean.parseBoolean(strings[i]);
+                    } else {
+                        arguments[i] = strings[i];
+                    }
+                }
+                Object result = method.invoke(scriptInterface, arguments);
+                if (method.getReturnType() == void.class) {
+                    return null;
+                } else if (method.getReturnType() == String.class) {
+                    return (String) result;
+                }
+                return GsonHelper.get().toJson(result);
+            } catch (NumberFormatException | IllegalAccessException e) {
+                Log.e(TAG, "call - " + methodName + ": " + e.getClass() + ": "
+                        + e.getLocalizedMessage());
+            } catch (InvocationTargetException e) {
+                Log.e(TAG, "call - " + methodName + ": " + e.getCause().getClass() + ": "
+                        + e.getCause().getLocalizedMessage());
+            }
+            return null;
+        }
+
+        /**
+         * Called by the last script of a context, after all of its scripts have been loaded
+         */
+        @JavascriptInterface
+        public void onContextReady(String token) {
+            if (token == null) {
+                return;
+            }
+            final ScriptWebViewClient.WebViewClientReadyListener listener =
+                    mReadyListeners.remove(token);
+            if (listener != null) {
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onWebViewClientReady();
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * All methods of {@link ScriptInterface} that are being exposed to javascript, keyed by their
+     * name and number of parameters
+     */
+    private static final Map<String, Method> sMethods = new HashMap<>();
+
+    static {
+        for (Method method : ScriptInterface.class.getMethods()) {
+            if (method.isAnnotationPresent(JavascriptInterface.class)
+                    && method.getParameterTypes().length <= MAX_ARGUMENTS) {
+                sMethods.put(method.getName() + "/" + method.getParameterTypes().length, method);
+            }
+        }
+    }
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private WebView mWebView;
+
+    /**
+     * The {@link ScriptInterface} of every context, keyed by the context's token
+     */
+    private final Map<String, ScriptInterface> mInterfaces = new ConcurrentHashMap<>();
+
+    /**
+     * The listeners of the contexts that haven't finished loading yet, keyed by their token
+     */
+    private final Map<String, ScriptWebViewClient.WebViewClientReadyListener> mReadyListeners =
+            new ConcurrentHashMap<>();
+
+    /**
+     * The javascript that hasn't been sent to the {@link WebView} yet. Guarded by this object's
+     * lock.
+     */
+    private final StringBuilder mPendingScript = new StringBuilder();
+
+    private boolean mFlushScheduled;
+
+    private boolean mReady;
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            String script;
+            synchronized (ScriptHost.this) {
+                mFlushScheduled = false;
+                if (!mReady || mPendingScript.length() == 0) {
+                    return;
+                }
+                script = mPendingScript.toString();
+                mPendingScript.setLength(0);
+            }
+            mWebView.loadUrl("javascript: " + script);
+        }
+    };
+
+    private ScriptHost() {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                long time = System.currentTimeMillis();
+                mWebView = new WebView(TomahawkApp.getContext());
+                WebSettings settings = mWebView.getSettings();
+                settings.setJavaScriptEnabled(true);
+                settings.setDatabaseEnabled(true);
+                if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+                    //noinspection deprecation
+                    settings.setDatabasePath(
+                            TomahawkApp.getContext().getDir("databases", Context.MODE_PRIVATE)
+                                    .getPath());
+                }
+                settings.setDomStorageEnabled(true);
+                mWebView.setWebChromeClient(new TomahawkWebChromeClient());
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                    settings.setAllowUniversalAccessFromFileURLs(true);
+                }
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                    WebView.setWebContentsDebuggingEnabled(true);
+                }
+                mWebView.setWebViewClient(new ScriptWebViewClient(ScriptHost.this));
+                mWebView.addJavascriptInterface(new HostInterface(), HOST_INTERFACE_NAME);
+                mWebView.loadDataWithBaseURL("file:///android_asset/test.html", HOST_PAGE,
+                        "text/html", null, null);
+                Log.d(TAG, "ScriptHost - created WebView in "
+                        + (System.currentTimeMillis() - time) + "ms");
+            }
+        });
+    }
+
+    public static ScriptHost get() {
+        return Holder.instance;
+    }
+
+    /**
+     * Called when the host page has been loaded. Everything that has been queued until now is
+     * being sent to the {@link WebView}.
+     */
+    @Override
+    public void onWebViewClientReady() {
+        synchronized (this) {
+            if (mReady) {
+                return;
+            }
+            mReady = true;
+        }
+        flush();
+    }
+
+    /**
+     * Creates a new isolated context, in which the given scripts are being loaded.
+     *
+     * @param contextId       the id of the new context
+     * @param scripts         the html script tags that should be loaded in the new context
+     * @param scriptInterface the {@link ScriptInterface} that handles the calls from the context
+     * @param readyListener   is being called on the main thread after all scripts have been
+     *                        loaded
+     */
+    public void createContext(String contextId, String scripts, ScriptInterface scriptInterface,
+            ScriptWebViewClient.WebViewClientReadyListener readyListener) {
+        // UUID.randomUUID() is backed by a SecureRandom, so the token can't be guessed
+        String token = UUID.randomUUID().toString();
+        mInterfaces.put(token, scriptInterface);
+        mReadyListeners.put(token, readyListener);
+        String html = "<!DOCTYPE html><html><head><title>" + contextId + "</title></head><body>"
+                + "<script>var " + ScriptAccount.SCRIPT_INTERFACE_NAME
+                + " = parent.createScriptProxy('" + token + "');</script>"
+                + scripts
+                + "<script>parent." + HOST_INTERFACE_NAME + ".onContextReady('" + token
+                + "');</script>"
+                + "</body></html>";
+        enqueue("createContext('" + contextId + "', '"
+                + StringEscapeUtils.escapeJavaScript(html) + "');");
+    }
+
+    /**
+     * Evaluates the given javascript in the global scope of the given context. Can be called from
+     * any thread. The code is being evaluated by the context's own eval function, so that its
+     * declarations end up in the context's global object and not in the host page's one.
+     */
+    public void evaluate(String contextId, String code) {
+        enqueue("document.getElementById('" + contextId + "').contentWindow.eval('"
+                + StringEscapeUtils.escapeJavaScript(code) + "');");
+    }
+
+    /**
+     * Queues the given javascript. Every snippet is being wrapped in its own try block, so that
+     * an exception doesn't prevent the other queued snippets from being evaluated.
+     */
+    private void enqueue(String code) {
+        synchronized (this) {
+            mPendingScript.append("try {").append(code).append("\n} catch (e) { console.error("
+                    + "'ScriptHost - ' + e); }\n");
+        }
+        flush();
+    }
+
+    private void flush() {
+        synchronized (this) {
+            if (!mReady || mFlushScheduled) {
+                return;
+            }
+            mFlushScheduled = true;
+        }
+        mHandler.post(mFlushRunnable);
+    }
+}
@@ -112,10 +112,22 @@ public class ScriptInterface {
         return "";
     }
 
+    /**
+     * Queues a HTTP request in the {@link ScriptRequestManager}. The response is being reported
+     * back through the JS callback with the given reqId. If the request is being rejected or
+     * dropped before it has been done, the JS callback is being called with a corresponding status
+     * code.
+     *
+     * @param requestContext the requestId of the {@link ScriptJob} on whose behalf this request is
+     *                       being done (optional)
+     */
     @JavascriptInterface
     public void nativeAsyncRequestString(final int reqId, final String url,
-            final String stringifiedExtraHeaders, final String stringifiedOptions) {
-        new Thread(new Runnable() {
+            final String stringifiedExtraHeaders, final String stringifiedOptions,
+            String requestContext) {
+        final JsCallback callback = reqId >= 0 ? new JsCallback(reqId) : null;
+        ScriptJob job = mScriptAccount.getJob(requestContext);
+        ScriptRequestManager.get().execute(new ScriptRequestManager.Request(mScriptAccount, job) {
             @Override
             public void run() {
                 try {
@@ -129,10 +141,6 @@ public class ScriptInterface {
                         options = GsonHelper.get().fromJson(stringifiedOptions,
                                 ScriptInterfaceRequestOptions.class);
                     }
-                    JsCallback callback = null;
-                    if (reqId >= 0) {
-                        callback = new JsCallback(reqId);
-                    }
                     String method = null;
                     String username = null;
                     String password = null;
@@ -161,7 +169,34 @@ public class ScriptInterface {
                             + e.getLocalizedMessage());
                 }
             }
-        }).start();
+
+            @Override
+            public void reject(int status, String statusText) {
+                if (callback != null) {
+                    callback.call("", new HashMap<String, List<String>>(), status, statusText);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the number of native requests of this {@link ScriptAccount} that are waiting to be
+     * done
+     */
+    @JavascriptInterface
+    public int nativeAsyncRequestQueueSize() {
+        return ScriptRequestManager.get().getQueueSize(mScriptAccount);
+    }
+
+    /**
+     * Pulls the payload of a message that has been posted by the native side. The payload is being
+     * returned as it is, so that it doesn't have to be escaped into javascript source code.
+     *
+     * @return the payload, or null if the message doesn't exist or has already been taken
+     */
+    @JavascriptInterface
+    public String takeMessage(String messageId) {
+        return mScriptAccount.takeMessage(messageId);
     }
 
     @JavascriptInterface
@@ -26,7 +26,11 @@ import org.tomahawk.libtomahawk.utils.GsonHelper;
 
 import android.util.Log;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A {@link ScriptJob} is an object that is being passed to the JavaScript side to handle a certain
@@ -48,6 +52,9 @@ public class ScriptJob {
 
     private FailureCallback mFailureCallback;
 
+    private final Set<Query> mQueries =
+            Collections.newSetFromMap(new ConcurrentHashMap<Query, Boolean>());
+
     private interface SuccessCallback {
 
     }
@@ -104,12 +111,42 @@ public class ScriptJob {
      * @param successCallback A callback object that will get called when the request has
      *                        successfully returned from the JS side.
      * @param failureCallback A callback object that will get called when the request has failed.
+     * @return the started {@link ScriptJob}
      */
-    public static void start(ScriptObject object, String methodName, Map<String, Object> arguments,
+    public static ScriptJob start(ScriptObject object, String methodName,
+            Map<String, Object> arguments, SuccessCallback successCallback,
+            FailureCallback failureCallback) {
+        ScriptJob job = new ScriptJob(object, methodName, arguments, successCallback,
+                failureCallback);
+        object.getScriptAccount().startJob(job);
+        return job;
+    }
+
+    /**
+     * Constructs and starts a new ScriptJob, which is being done on behalf of the given {@link
+     * Query}s. The {@link Query}s are being attached before the ScriptJob is being started, so
+     * that it can always be cancelled, once all of them have been stopped.
+     *
+     * @param object          The {@link ScriptObject} that is associated with this {@link
+     *                        ScriptJob}. The {@link ScriptObject} represents the Java-{@link
+     *                        ScriptPlugin} on the JS side.
+     * @param methodName      The name of the method that will be called on the JS side.
+     * @param arguments       The set of arguments (parameters) that is provided to the called
+     *                        method.
+     * @param queries         The {@link Query}s on whose behalf this ScriptJob is being done.
+     * @param successCallback A callback object that will get called when the request has
+     *                        successfully returned from the JS side.
+     * @param failureCallback A callback object that will get called when the request has failed.
+     * @return the started {@link ScriptJob}
+     */
+    public static ScriptJob start(ScriptObject object, String methodName,
+            Map<String, Object> arguments, Collection<Query> queries,
             SuccessCallback successCallback, FailureCallback failureCallback) {
         ScriptJob job = new ScriptJob(object, methodName, arguments, successCallback,
                 failureCallback);
+        job.mQueries.addAll(queries);
         object.getScriptAccount().startJob(job);
+        return job;
     }
 
     /**
@@ -123,11 +160,13 @@ public class ScriptJob {
      *                        method.
      * @param successCallback A callback object that will get called when the request has
      *                        successfully returned from the JS side.
+     * @return the started {@link ScriptJob}
      */
-    public static void start(ScriptObject object, String methodName, Map<String, Object> arguments,
-            SuccessCallback successCallback) {
+    public static ScriptJob start(ScriptObject object, String methodName,
+            Map<String, Object> arguments, SuccessCallback successCallback) {
         ScriptJob job = new ScriptJob(object, methodName, arguments, successCallback, null);
         object.getScriptAccount().startJob(job);
+        return job;
     }
 
     /**
@@ -139,11 +178,13 @@ public class ScriptJob {
      * @param methodName      The name of the method that will be called on the JS side.
      * @param successCallback A callback object that will get called when the request has
      *                        successfully returned from the JS side.
+     * @return the started {@link ScriptJob}
      */
-    public static void start(ScriptObject object, String methodName,
+    public static ScriptJob start(ScriptObject object, String methodName,
             SuccessCallback successCallback) {
         ScriptJob job = new ScriptJob(object, methodName, null, successCallback, null);
         object.getScriptAccount().startJob(job);
+        return job;
     }
 
     /**
@@ -156,11 +197,13 @@ public class ScriptJob {
      * @param successCallback A callback object that will get called when the request has
      *                        successfully returned from the JS side.
      * @param failureCallback A callback object that will get called when the request has failed.
+     * @return the started {@link ScriptJob}
      */
-    public static void start(ScriptObject object, String methodName,
+    public static ScriptJob start(ScriptObject object, String methodName,
             SuccessCallback successCallback, FailureCallback failureCallback) {
         ScriptJob job = new ScriptJob(object, methodName, null, successCallback, failureCallback);
         object.getScriptAccount().startJob(job);
+        return job;
     }
 
     /**
@@ -171,11 +214,13 @@ public class ScriptJob {
      *                   side.
      * @param methodName The name of the method that will be called on the JS side.
      * @param arguments  The set of arguments (parameters) that is provided to the called method.
+     * @return the started {@link ScriptJob}
      */
-    public static void start(ScriptObject object, String methodName,
+    public static ScriptJob start(ScriptObject object, String methodName,
             Map<String, Object> arguments) {
         ScriptJob job = new ScriptJob(object, methodName, arguments, null, null);
         object.getScriptAccount().startJob(job);
+        return job;
     }
 
     /**
@@ -185,10 +230,12 @@ public class ScriptJob {
      *                   The {@link ScriptObject} represents the Java-{@link ScriptPlugin} on the JS
      *                   side.
      * @param methodName The name of the method that will be called on the JS side.
+     * @return the started {@link ScriptJob}
      */
-    public static void start(ScriptObject object, String methodName) {
+    public static ScriptJob start(ScriptObject object, String methodName) {
         ScriptJob job = new ScriptJob(object, methodName, null, null, null);
         object.getScriptAccount().startJob(job);
+        return job;
     }
 
     private ScriptJob(ScriptObject object, String methodName, Map<String, Object> arguments,
@@ -224,6 +271,10 @@ public class ScriptJob {
         return mArguments;
     }
 
+    public Set<Query> getQueries() {
+        return mQueries;
+    }
+
     /**
      * This method is being called if the request was successful.
      *
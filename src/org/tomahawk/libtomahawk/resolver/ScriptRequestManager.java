@@ -0,0 +1,219 @@
+/* == This file is part of Tomahawk Player - <http://tomahawk-player.org> ===
+ *
+ *   Copyright 2015, Enno Gottschalk <mrmaffen@googlemail.com>
+ *
+ *   Tomahawk is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Tomahawk is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Tomahawk. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tomahawk.libtomahawk.resolver;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executes the native network requests of all {@link ScriptAccount}s on a small, bounded set of
+ * threads. Every {@link ScriptAccount} has its own queue and the queues are being served in a
+ * round-robin fashion, so that a single busy resolver can't starve the others. Requests are being
+ * rejected once a {@link ScriptAccount}'s queue is full, and queued requests are being dropped as
+ * soon as the {@link ScriptJob} they have been made for is being cancelled. A {@link ScriptJob}
+ * that serves several {@link Query}s is only being cancelled once all of them have been stopped.
+ */
+public class ScriptRequestManager {
+
+    private final static String TAG = ScriptRequestManager.class.getSimpleName();
+
+    private static final int MAX_THREADS = 4;
+
+    private static final int MAX_QUEUED_REQUESTS_PER_ACCOUNT = 32;
+
+    // Sets the amount of time an idle thread waits before terminating
+    private static final int KEEP_ALIVE_TIME = 10;
+
+    public static final int STATUS_CANCELLED = 0;
+
+    public static final String STATUS_TEXT_CANCELLED = "Cancelled";
+
+    public static final int STATUS_TOO_MANY_REQUESTS = 429;
+
+    public static final String STATUS_TEXT_TOO_MANY_REQUESTS = "Too Many Requests";
+
+    private static class Holder {
+
+        private static final ScriptRequestManager instance = new ScriptRequestManager();
+
+    }
+
+    /**
+     * A native request of a {@link ScriptAccount}. If the request is being dropped before it has
+     * been run, reject is being called instead, so that the JS side is always being called back.
+     */
+    public static abstract class Request implements Runnable {
+
+        private final ScriptAccount mScriptAccount;
+
+        private final ScriptJob mScriptJob;
+
+        /**
+         * @param scriptAccount the {@link ScriptAccount} that made this request
+         * @param scriptJob     the {@link ScriptJob} on whose behalf this request has been made
+         *                      (optional)
+         */
+        public Request(ScriptAccount scriptAccount, ScriptJob scriptJob) {
+            mScriptAccount = scriptAccount;
+            mScriptJob = scriptJob;
+        }
+
+        public abstract void reject(int status, String statusText);
+    }
+
+    private final ThreadPoolExecutor mThreadPool;
+
+    private final Map<ScriptAccount, ArrayDeque<Request>> mQueues = new HashMap<>();
+
+    /**
+     * The {@link ScriptAccount}s that have queued requests, in the order they will be served
+     */
+    private final ArrayDeque<ScriptAccount> mTurns = new ArrayDeque<>();
+
+    private int mActiveWorkers;
+
+    private final Runnable mWorker = new Runnable() {
+        @Override
+        public void run() {
+            while (true) {
+                Request request;
+                synchronized (ScriptRequestManager.this) {
+                    request = poll();
+                    if (request == null) {
+                        mActiveWorkers--;
+                        return;
+                    }
+                }
+                try {
+                    request.run();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "run - " + e.getClass() + ": " + e.getLocalizedMessage());
+                }
+            }
+        }
+    };
+
+    private ScriptRequestManager() {
+        mThreadPool = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, KEEP_ALIVE_TIME,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        mThreadPool.allowCoreThreadTimeOut(true);
+    }
+
+    public static ScriptRequestManager get() {
+        return Holder.instance;
+    }
+
+    /**
+     * Queues the given {@link Request}. If the queue of the {@link Request}'s {@link
+     * ScriptAccount} is full, the {@link Request} is being rejected right away.
+     *
+     * @return whether or not the {@link Request} has been queued
+     */
+    public boolean execute(Request request) {
+        synchronized (this) {
+            ArrayDeque<Request> queue = mQueues.get(request.mScriptAccount);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                mQueues.put(request.mScriptAccount, queue);
+                mTurns.add(request.mScriptAccount);
+            }
+            if (queue.size() < MAX_QUEUED_REQUESTS_PER_ACCOUNT) {
+                queue.add(request);
+                if (mActiveWorkers < MAX_THREADS) {
+                    mActiveWorkers++;
+                    mThreadPool.execute(mWorker);
+                }
+                return true;
+            }
+        }
+        Log.d(TAG, "execute - too many queued requests, rejecting request of "
+                + request.mScriptAccount.getName());
+        request.reject(STATUS_TOO_MANY_REQUESTS, STATUS_TEXT_TOO_MANY_REQUESTS);
+        return false;
+    }
+
+    /**
+     * Drops all queued {@link Request}s that have been made on behalf of the given {@link
+     * ScriptJob}.
+     *
+     * @return whether or not any {@link Request} has been dropped
+     */
+    public boolean stop(ScriptJob job) {
+        List<Request> dropped = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Map.Entry<ScriptAccount, ArrayDeque<Request>>> queues =
+                    mQueues.entrySet().iterator();
+            while (queues.hasNext()) {
+                Map.Entry<ScriptAccount, ArrayDeque<Request>> entry = queues.next();
+                Iterator<Request> requests = entry.getValue().iterator();
+                while (requests.hasNext()) {
+                    Request request = requests.next();
+                    if (request.mScriptJob == job) {
+                        requests.remove();
+                        dropped.add(request);
+                    }
+                }
+                if (entry.getValue().isEmpty()) {
+                    queues.remove();
+                    mTurns.remove(entry.getKey());
+                }
+            }
+        }
+        for (Request request : dropped) {
+            request.reject(STATUS_CANCELLED, STATUS_TEXT_CANCELLED);
+        }
+        return !dropped.isEmpty();
+    }
+
+    /**
+     * @return the number of {@link Request}s of the given {@link ScriptAccount} that are waiting
+     * for a free thread
+     */
+    public synchronized int getQueueSize(ScriptAccount scriptAccount) {
+        ArrayDeque<Request> queue = mQueues.get(scriptAccount);
+        return queue == null ? 0 : queue.size();
+    }
+
+    /**
+     * @return the next {@link Request} of the {@link ScriptAccount} whose turn it is. Must be
+     * called while holding the lock on this object.
+     */
+    private Request poll() {
+        ScriptAccount scriptAccount = mTurns.poll();
+        if (scriptAccount == null) {
+            return null;
+        }
+        ArrayDeque<Request> queue = mQueues.get(scriptAccount);
+        Request request = queue.poll();
+        if (queue.isEmpty()) {
+            mQueues.remove(scriptAccount);
+        } else {
+            mTurns.add(scriptAccount);
+        }
+        return request;
+    }
+}
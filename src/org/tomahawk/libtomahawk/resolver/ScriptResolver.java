@@ -18,12 +18,14 @@
 package org.tomahawk.libtomahawk.resolver;
 
 import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonPrimitive;
 
 import com.squareup.okhttp.Response;
 
 import org.tomahawk.libtomahawk.authentication.AuthenticatorManager;
 import org.tomahawk.libtomahawk.authentication.AuthenticatorUtils;
+import org.tomahawk.libtomahawk.database.ResolutionCacheDb;
 import org.tomahawk.libtomahawk.resolver.models.ScriptResolverAccessTokenResult;
 import org.tomahawk.libtomahawk.resolver.models.ScriptResolverConfigUi;
 import org.tomahawk.libtomahawk.resolver.models.ScriptResolverSettings;
@@ -33,6 +35,8 @@ import org.tomahawk.libtomahawk.utils.ImageUtils;
 import org.tomahawk.libtomahawk.utils.NetworkUtils;
 import org.tomahawk.tomahawk_android.R;
 import org.tomahawk.tomahawk_android.TomahawkApp;
+import org.tomahawk.tomahawk_android.utils.ThreadManager;
+import org.tomahawk.tomahawk_android.utils.TomahawkRunnable;
 import org.tomahawk.tomahawk_android.utils.WeakReferenceHandler;
 
 import android.os.Looper;
@@ -43,7 +47,9 @@ import android.widget.ImageView;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import de.greenrobot.event.EventBus;
@@ -300,18 +306,76 @@ public class ScriptResolver implements Resolver, ScriptPlugin {
             if (query.isFullTextQuery()) {
                 HashMap<String, Object> args = new HashMap<>();
                 args.put("query", query.getFullTextQuery());
-                ScriptJob.start(mScriptObject, "search", args, callback);
+                ScriptJob.start(mScriptObject, "search", args, Collections.singleton(query),
+                        callback, null);
             } else {
                 HashMap<String, Object> args = new HashMap<>();
                 args.put("artist", query.getArtist().getName());
                 args.put("album", query.getAlbum().getName());
                 args.put("track", query.getName());
-                ScriptJob.start(mScriptObject, "resolve", args, callback);
+                ScriptJob.start(mScriptObject, "resolve", args, Collections.singleton(query),
+                        callback, null);
             }
         }
         return mInitialized;
     }
 
+    /**
+     * Invoke the javascript to resolve all of the given {@link Query}s with a single {@link
+     * ScriptJob}. If the batch job fails, every {@link Query} is being resolved on its own.
+     *
+     * @param queries the {@link Query}s which should be resolved. Full text queries are not
+     *                supported.
+     * @return whether or not the Resolver is ready to resolve
+     */
+    public boolean resolve(final List<Query> queries) {
+        if (mInitialized) {
+            mStopped = false;
+            mTimeOutHandler.removeCallbacksAndMessages(null);
+            mTimeOutHandler.sendEmptyMessageDelayed(TIMEOUT_HANDLER_MSG, mTimeout);
+
+            List<Map<String, Object>> queryArgs = new ArrayList<>();
+            for (Query query : queries) {
+                HashMap<String, Object> queryArg = new HashMap<>();
+                queryArg.put("artist", query.getArtist().getName());
+                queryArg.put("album", query.getAlbum().getName());
+                queryArg.put("track", query.getName());
+                queryArgs.add(queryArg);
+            }
+            HashMap<String, Object> args = new HashMap<>();
+            args.put("queries", queryArgs);
+            args.put("timeout", mTimeout);
+            ScriptJob.start(mScriptObject, "resolveBatch", args, queries,
+                    new ScriptJob.ResultsArrayCallback() {
+                        @Override
+                        public void onReportResults(JsonArray results) {
+                            for (int i = 0; i < queries.size() && i < results.size(); i++) {
+                                JsonElement queryResults = results.get(i);
+                                if (queryResults.isJsonArray()) {
+                                    ArrayList<Result> parsedResults = ScriptUtils.parseResultList(
+                                            ScriptResolver.this, queryResults.getAsJsonArray());
+                                    PipeLine.get().reportResults(queries.get(i), parsedResults,
+                                            mId);
+                                }
+                            }
+                            mTimeOutHandler.removeCallbacksAndMessages(null);
+                            mStopped = true;
+                        }
+                    }, new ScriptJob.FailureCallback() {
+                        @Override
+                        public void onReportFailure(String errormessage) {
+                            Log.d(TAG, "ScriptResolver " + mId + " failed to resolve a batch of "
+                                    + queries.size() + " queries, resolving them one by one - "
+                                    + errormessage);
+                            for (Query query : queries) {
+                                resolve(query);
+                            }
+                        }
+                    });
+        }
+        return mInitialized;
+    }
+
     public void getStreamUrl(final Result result) {
         if (result != null) {
             HashMap<String, Object> args = new HashMap<>();
@@ -407,8 +471,24 @@ public class ScriptResolver implements Resolver, ScriptPlugin {
         return mEnabled;
     }
 
-    public void setEnabled(boolean enabled) {
+    public void setEnabled(final boolean enabled) {
         Log.d(TAG, this.mId + " has been " + (enabled ? "enabled" : "disabled"));
+        if (mEnabled != enabled) {
+            // This is being called from the UI, so don't block it while deleting the cached rows
+            ThreadManager.get().execute(
+                    new TomahawkRunnable(TomahawkRunnable.PRIORITY_IS_DATABASEACTION) {
+                        @Override
+                        public void run() {
+                            if (enabled) {
+                                // Cached resolutions might have been settled without this
+                                // resolver's Results
+                                ResolutionCacheDb.get().wipe();
+                            } else {
+                                ResolutionCacheDb.get().removeResolver(mId);
+                            }
+                        }
+                    });
+        }
         mEnabled = enabled;
         Map<String, Object> config = getConfig();
         config.put(ScriptAccount.ENABLED_KEY, enabled);
@@ -0,0 +1,364 @@
+/* == This file is part of Tomahawk Player - <http://tomahawk-player.org> ===
+ *
+ *   Copyright 2015, Enno Gottschalk <mrmaffen@googlemail.com>
+ *
+ *   Tomahawk is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Tomahawk is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Tomahawk. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tomahawk.libtomahawk.resolver;
+
+import org.tomahawk.libtomahawk.database.CollectionDb;
+import org.tomahawk.libtomahawk.database.CollectionDbManager;
+import org.tomahawk.tomahawk_android.utils.ThreadManager;
+import org.tomahawk.tomahawk_android.utils.TomahawkRunnable;
+
+import android.database.Cursor;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+import de.greenrobot.event.EventBus;
+
+/**
+ * An in-memory index of all artist, album and track names of a {@link CollectionDb}, which
+ * provides ranked suggestions for a partially typed search String. Every word of every name is
+ * being stored in one sorted array, so that all names containing a word with a given prefix can be
+ * found by a binary search. Changes of the {@link CollectionDb} only mark the index as dirty. It is
+ * being rebuilt in the background once suggestions are being requested again, so that any number of
+ * changes in between cause a single rebuild.
+ */
+public class TypeAheadIndex {
+
+    private final static String TAG = TypeAheadIndex.class.getSimpleName();
+
+    public static final int TYPE_ARTIST = 0;
+
+    public static final int TYPE_ALBUM = 1;
+
+    public static final int TYPE_TRACK = 2;
+
+    private static final float[] TYPE_BOOSTS = new float[]{0.3f, 0.2f, 0f};
+
+    private static final String[] FIELDS = new String[]{
+            CollectionDb.ARTISTS_ARTIST, CollectionDb.ALBUMS_ALBUM, CollectionDb.TRACKS_TRACK};
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
+
+    public static class Suggestion {
+
+        public String name;
+
+        public int type;
+
+        public float score;
+    }
+
+    private static final Comparator<Suggestion> SCORE_COMPARATOR = new Comparator<Suggestion>() {
+        @Override
+        public int compare(Suggestion lhs, Suggestion rhs) {
+            return Float.compare(lhs.score, rhs.score);
+        }
+    };
+
+    /**
+     * An immutable build of the index, so that suggestions can be served while the next one is
+     * being built
+     */
+    private static class Snapshot {
+
+        /**
+         * The names of all entries, their normalized words joined by single spaces, their types
+         * and the number of tracks they occur in
+         */
+        private String[] mNames;
+
+        private String[] mNormalizedNames;
+
+        private byte[] mTypes;
+
+        private int[] mWeights;
+
+        /**
+         * All words of all entries in ascending order and the entry each of them belongs to
+         */
+        private String[] mWords;
+
+        private int[] mWordEntries;
+    }
+
+    private final String mCollectionId;
+
+    private volatile boolean mDirty = true;
+
+    private volatile Snapshot mSnapshot;
+
+    private final AtomicBoolean mRebuildScheduled = new AtomicBoolean();
+
+    public TypeAheadIndex(String collectionId) {
+        mCollectionId = collectionId;
+
+        EventBus.getDefault().register(this);
+    }
+
+    @SuppressWarnings("unused")
+    public void onEvent(CollectionDb.TracksUpdatedEvent event) {
+        if (mCollectionId.equals(event.mCollectionId)) {
+            mDirty = true;
+        }
+    }
+
+    public void close() {
+        EventBus.getDefault().unregister(this);
+    }
+
+    /**
+     * Builds the index from the {@link CollectionDb}, if it has been changed since the last build.
+     * Suggestions are being served from the previous build in the meantime.
+     */
+    public synchronized void ensureBuilt() {
+        if (!mDirty) {
+            return;
+        }
+        mDirty = false;
+        long time = System.currentTimeMillis();
+        Map<String, Integer> entryIds = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        List<String> normalizedNames = new ArrayList<>();
+        List<Byte> types = new ArrayList<>();
+        List<Integer> weights = new ArrayList<>();
+        CollectionDb collectionDb = CollectionDbManager.get().getCollectionDb(mCollectionId);
+        Cursor cursor = collectionDb.tracks(null, null, FIELDS);
+        try {
+            while (cursor.moveToNext()) {
+                for (int type = TYPE_ARTIST; type <= TYPE_TRACK; type++) {
+                    String name = cursor.getString(type);
+                    if (TextUtils.isEmpty(name)) {
+                        continue;
+                    }
+                    String key = type + "\t" + name;
+                    Integer entry = entryIds.get(key);
+                    if (entry == null) {
+                        entryIds.put(key, names.size());
+                        names.add(name);
+                        normalizedNames.add(TextUtils.join(" ", words(name)));
+                        types.add((byte) type);
+                        weights.add(1);
+                    } else {
+                        weights.set(entry, weights.get(entry) + 1);
+                    }
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        final List<String> words = new ArrayList<>();
+        List<Integer> wordEntries = new ArrayList<>();
+        for (int i = 0; i < normalizedNames.size(); i++) {
+            for (String word : new HashSet<>(Arrays.asList(normalizedNames.get(i).split(" ")))) {
+                if (word.isEmpty()) {
+                    continue;
+                }
+                words.add(word);
+                wordEntries.add(i);
+            }
+        }
+        Integer[] order = new Integer[words.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                return words.get(lhs).compareTo(words.get(rhs));
+            }
+        });
+
+        Snapshot snapshot = new Snapshot();
+        snapshot.mNames = names.toArray(new String[names.size()]);
+        snapshot.mNormalizedNames = normalizedNames.toArray(new String[normalizedNames.size()]);
+        snapshot.mTypes = new byte[types.size()];
+        snapshot.mWeights = new int[weights.size()];
+        for (int i = 0; i < snapshot.mTypes.length; i++) {
+            snapshot.mTypes[i] = types.get(i);
+            snapshot.mWeights[i] = weights.get(i);
+        }
+        snapshot.mWords = new String[order.length];
+        snapshot.mWordEntries = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            snapshot.mWords[i] = words.get(order[i]);
+            snapshot.mWordEntries[i] = wordEntries.get(order[i]);
+        }
+        mSnapshot = snapshot;
+        Log.d(TAG, mCollectionId + " - ensureBuilt - indexed " + snapshot.mNames.length
+                + " names with " + snapshot.mWords.length + " words in "
+                + (System.currentTimeMillis() - time) + "ms");
+    }
+
+    /**
+     * @param text  the partially typed search String. Every word of it has to be the prefix of a
+     *              word of a suggested name.
+     * @param limit the maximum number of returned {@link Suggestion}s
+     * @return the best {@link Suggestion}s for the given text, ordered by their score
+     */
+    public List<Suggestion> suggest(String text, int limit) {
+        Snapshot snapshot = mSnapshot;
+        if (snapshot == null) {
+            ensureBuilt();
+            snapshot = mSnapshot;
+        } else if (mDirty) {
+            scheduleRebuild();
+        }
+        List<Suggestion> suggestions = new ArrayList<>();
+        String[] queryWords = words(text);
+        if (snapshot == null || queryWords.length == 0 || limit <= 0) {
+            return suggestions;
+        }
+        String normalizedText = TextUtils.join(" ", queryWords);
+
+        // Only look at the entries of the query word with the fewest matching words
+        int from = 0;
+        int to = snapshot.mWords.length;
+        for (String queryWord : queryWords) {
+            int wordFrom = lowerBound(snapshot.mWords, queryWord);
+            int wordTo = lowerBound(snapshot.mWords, queryWord + Character.MAX_VALUE);
+            if (wordTo - wordFrom < to - from) {
+                from = wordFrom;
+                to = wordTo;
+            }
+        }
+
+        PriorityQueue<Suggestion> best = new PriorityQueue<>(limit + 1, SCORE_COMPARATOR);
+        BitSet visited = new BitSet(snapshot.mNames.length);
+        for (int i = from; i < to; i++) {
+            int entry = snapshot.mWordEntries[i];
+            if (visited.get(entry)) {
+                continue;
+            }
+            visited.set(entry);
+            String normalizedName = snapshot.mNormalizedNames[entry];
+            if (!matches(normalizedName, queryWords)) {
+                continue;
+            }
+            Suggestion suggestion = new Suggestion();
+            suggestion.name = snapshot.mNames[entry];
+            suggestion.type = snapshot.mTypes[entry];
+            suggestion.score = score(normalizedName, normalizedText, snapshot.mTypes[entry],
+                    snapshot.mWeights[entry]);
+            best.add(suggestion);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        suggestions.addAll(best);
+        Collections.sort(suggestions, Collections.reverseOrder(SCORE_COMPARATOR));
+        return suggestions;
+    }
+
+    /**
+     * Rebuilds the index in the background, unless a rebuild has already been scheduled
+     */
+    private void scheduleRebuild() {
+        if (mRebuildScheduled.compareAndSet(false, true)) {
+            ThreadManager.get().execute(
+                    new TomahawkRunnable(TomahawkRunnable.PRIORITY_IS_DATABASEACTION) {
+                        @Override
+                        public void run() {
+                            mRebuildScheduled.set(false);
+                            ensureBuilt();
+                        }
+                    });
+        }
+    }
+
+    /**
+     * @return the index of the first of the given sorted words that isn't sorted in front of the
+     * given String
+     */
+    private static int lowerBound(String[] words, String s) {
+        int low = 0;
+        int high = words.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (words[mid].compareTo(s) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return whether or not every one of the given query words is the prefix of a word of the
+     * given normalized name
+     */
+    private static boolean matches(String normalizedName, String[] queryWords) {
+        for (String queryWord : queryWords) {
+            if (!normalizedName.startsWith(queryWord)
+                    && !normalizedName.contains(" " + queryWord)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Names that equal or start with the whole text are ranked first, followed by the names that
+     * occur in many tracks. Artists are preferred over albums and albums over tracks.
+     */
+    private static float score(String normalizedName, String normalizedText, int type,
+            int weight) {
+        float score = TYPE_BOOSTS[type] + (float) Math.log(weight) * 0.25f;
+        if (normalizedName.equals(normalizedText)) {
+            score += 3f;
+        } else if (normalizedName.startsWith(normalizedText)) {
+            score += 2f;
+        }
+        return score - normalizedName.length() * 0.01f;
+    }
+
+    /**
+     * @return the lower case words of the given String without diacritics
+     */
+    private static String[] words(String s) {
+        String normalized = DIACRITICS.matcher(Normalizer.normalize(s, Normalizer.Form.NFD))
+                .replaceAll("").toLowerCase();
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean isWordChar = i < normalized.length()
+                    && Character.isLetterOrDigit(normalized.charAt(i));
+            if (isWordChar && start < 0) {
+                start = i;
+            } else if (!isWordChar && start >= 0) {
+                words.add(normalized.substring(start, i));
+                start = -1;
+            }
+        }
+        return words.toArray(new String[words.size()]);
+    }
+}
@@ -0,0 +1,256 @@
+/* == This file is part of Tomahawk Player - <http://tomahawk-player.org> ===
+ *
+ *   Copyright 2015, Enno Gottschalk <mrmaffen@googlemail.com>
+ *
+ *   Tomahawk is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Tomahawk is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Tomahawk. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tomahawk.libtomahawk.utils;
+
+import com.squareup.okhttp.Connection;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.Credentials;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Provides the process-wide {@link OkHttpClient}. All clients handed out by this class share the
+ * same {@link ConnectionPool}, so that connections (and their TLS sessions and HTTP/2 streams) are
+ * being reused across requests. The number of concurrent requests per host is limited and
+ * per-host latency and connection reuse statistics are being collected.
+ */
+public class HttpClientManager {
+
+    public static final String TAG = HttpClientManager.class.getSimpleName();
+
+    private static final int TIMEOUT = 15000;
+
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+
+    private static final long KEEP_ALIVE_DURATION = 5 * 60 * 1000;
+
+    private static final int MAX_REQUESTS_PER_HOST = 5;
+
+    private static class Holder {
+
+        private static final HttpClientManager instance = new HttpClientManager();
+
+    }
+
+    /**
+     * Latency and connection reuse statistics of all requests to a single host
+     */
+    public static class HostStats {
+
+        private final AtomicLong mRequestCount = new AtomicLong();
+
+        private final AtomicLong mReusedConnectionCount = new AtomicLong();
+
+        private final AtomicLong mTotalLatency = new AtomicLong();
+
+        public long getRequestCount() {
+            return mRequestCount.get();
+        }
+
+        /**
+         * @return the average time in ms until the response headers have been received
+         */
+        public long getAverageLatency() {
+            long requestCount = mRequestCount.get();
+            return requestCount > 0 ? mTotalLatency.get() / requestCount : 0;
+        }
+
+        /**
+         * @return the fraction of requests that have been sent over an already existing connection
+         */
+        public float getReuseRate() {
+            long requestCount = mRequestCount.get();
+            return requestCount > 0 ? (float) mReusedConnectionCount.get() / requestCount : 0f;
+        }
+
+        @Override
+        public String toString() {
+            return "requests: " + getRequestCount() + ", avg latency: " + getAverageLatency()
+                    + "ms, reuse rate: " + getReuseRate();
+        }
+    }
+
+    private final OkHttpClient mClient;
+
+    private final OkHttpClient mNoRedirectsClient;
+
+    private final ConcurrentHashMap<String, Semaphore> mHostPermits = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, HostStats> mHostStats = new ConcurrentHashMap<>();
+
+    private final Set<Connection> mSeenConnections =
+            Collections.newSetFromMap(new WeakHashMap<Connection, Boolean>());
+
+    /**
+     * Limits the number of concurrent requests per host. The permit is being held until the
+     * response headers have been received.
+     */
+    private final Interceptor mHostLimitInterceptor = new Interceptor() {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Semaphore permits = getHostPermits(chain.request().url().getHost());
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException(
+                        "Interrupted while waiting for a connection to " + chain.request().url());
+            }
+            try {
+                return chain.proceed(chain.request());
+            } finally {
+                permits.release();
+            }
+        }
+    };
+
+    /**
+     * Collects latency and connection reuse statistics for every request that hits the network
+     */
+    private final Interceptor mStatsInterceptor = new Interceptor() {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            long time = System.currentTimeMillis();
+            boolean reused;
+            synchronized (mSeenConnections) {
+                reused = !mSeenConnections.add(chain.connection());
+            }
+            Response response = chain.proceed(chain.request());
+            HostStats stats = getHostStats(chain.request().url().getHost());
+            stats.mRequestCount.incrementAndGet();
+            stats.mTotalLatency.addAndGet(System.currentTimeMillis() - time);
+            if (reused) {
+                stats.mReusedConnectionCount.incrementAndGet();
+            }
+            return response;
+        }
+    };
+
+    private HttpClientManager() {
+        mClient = new OkHttpClient();
+        mClient.setConnectTimeout(TIMEOUT, TimeUnit.MILLISECONDS);
+        mClient.setReadTimeout(TIMEOUT, TimeUnit.MILLISECONDS);
+        mClient.setConnectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_DURATION));
+        mClient.getDispatcher().setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+        mClient.interceptors().add(mHostLimitInterceptor);
+        mClient.networkInterceptors().add(mStatsInterceptor);
+
+        mNoRedirectsClient = mClient.clone();
+        mNoRedirectsClient.setFollowRedirects(false);
+    }
+
+    public static HttpClientManager get() {
+        return Holder.instance;
+    }
+
+    /**
+     * @return the shared {@link OkHttpClient}. Callers must not modify it. Use {@link
+     * #newClient()} to get a client that can be configured individually.
+     */
+    public OkHttpClient getClient() {
+        return mClient;
+    }
+
+    /**
+     * @param followRedirects whether or not the returned client should follow redirects
+     * @return the shared {@link OkHttpClient} with the given redirect behavior
+     */
+    public OkHttpClient getClient(boolean followRedirects) {
+        return followRedirects ? mClient : mNoRedirectsClient;
+    }
+
+    /**
+     * @return a new {@link OkHttpClient} that shares the connection pool, the per-host limits and
+     * the statistics of the shared client, but can be configured individually (e.g. with a
+     * cache)
+     */
+    public OkHttpClient newClient() {
+        return mClient.clone();
+    }
+
+    /**
+     * @return an {@link OkHttpClient} derived from the shared client, which authenticates with the
+     * given credentials through HTTP Basic Auth
+     */
+    public OkHttpClient getAuthClient(final String username, final String password,
+            boolean followRedirects) {
+        OkHttpClient client = getClient(followRedirects).clone();
+        client.setAuthenticator(new com.squareup.okhttp.Authenticator() {
+            @Override
+            public Request authenticate(Proxy proxy, Response response) throws IOException {
+                String credential = Credentials.basic(username, password);
+                return response.request().newBuilder().header("Authorization", credential)
+                        .build();
+            }
+
+            @Override
+            public Request authenticateProxy(Proxy proxy, Response response)
+                    throws IOException {
+                return null;
+            }
+        });
+        return client;
+    }
+
+    /**
+     * @return a snapshot of the {@link HostStats} of every host that has been requested so far
+     */
+    public Map<String, HostStats> getHostStats() {
+        return new HashMap<String, HostStats>(mHostStats);
+    }
+
+    public void logHostStats() {
+        for (Map.Entry<String, HostStats> entry : mHostStats.entrySet()) {
+            Log.d(TAG, entry.getKey() + " - " + entry.getValue());
+        }
+    }
+
+    private HostStats getHostStats(String host) {
+        HostStats stats = mHostStats.get(host);
+        if (stats == null) {
+            mHostStats.putIfAbsent(host, new HostStats());
+            stats = mHostStats.get(host);
+        }
+        return stats;
+    }
+
+    private Semaphore getHostPermits(String host) {
+        Semaphore permits = mHostPermits.get(host);
+        if (permits == null) {
+            mHostPermits.putIfAbsent(host, new Semaphore(MAX_REQUESTS_PER_HOST, true));
+            permits = mHostPermits.get(host);
+        }
+        return permits;
+    }
+}
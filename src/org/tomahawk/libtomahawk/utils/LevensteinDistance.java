@@ -1,5 +1,7 @@
 package org.tomahawk.libtomahawk.utils;
 
+import java.util.Arrays;
+
 /*
  * Licensed to the Apache Software Foundation (ASF) under one or more
  * contributor license agreements.  See the NOTICE file distributed with
@@ -29,12 +31,106 @@ public final class LevensteinDistance {
     public LevensteinDistance () {
     }
 
+    /**
+     * The two cost arrays of the current thread, so that they don't have to be allocated for
+     * every computed distance
+     */
+    private static final ThreadLocal<int[][]> sBuffers = new ThreadLocal<int[][]>() {
+        @Override
+        protected int[][] initialValue() {
+            return new int[2][0];
+        }
+    };
+
+    private static int[][] getBuffers(int length) {
+        int[][] buffers = sBuffers.get();
+        if (buffers[0].length < length) {
+            buffers[0] = new int[length];
+            buffers[1] = new int[length];
+        }
+        return buffers;
+    }
+
+    /**
+     * Same as {@link #getDistance(String, String)}, but only the cells within maxDistance of the
+     * diagonal are being computed and the computation stops as soon as the distance is known to
+     * be greater than maxDistance. See org.apache.commons.lang3.StringUtils#getLevenshteinDistance(
+     * CharSequence, CharSequence, int)
+     *
+     * @return the distance or maxDistance + 1, if the distance is greater than maxDistance
+     */
+    public static int getDistance(String target, String other, int maxDistance) {
+        int n = target.length();
+        int m = other.length();
+        if (n == 0 || m == 0) {
+            // Same results as getDistance(String, String)
+            return n == m ? 1 : 0;
+        }
+        if (Math.abs(n - m) > maxDistance) {
+            return maxDistance + 1;
+        }
+        if (n > m) {
+            // Iterate over the longer String, so that the arrays are as short as possible
+            String tmp = target;
+            target = other;
+            other = tmp;
+            n = m;
+            m = other.length();
+        }
+
+        int[][] buffers = getBuffers(n + 1);
+        int[] p = buffers[0];
+        int[] d = buffers[1];
+        int[] tmp;
+
+        int boundary = Math.min(n, maxDistance) + 1;
+        for (int i = 0; i < boundary; i++) {
+            p[i] = i;
+        }
+        // Cells outside of the stripe are never being computed and count as infinitely expensive
+        Arrays.fill(p, boundary, n + 1, Integer.MAX_VALUE);
+        Arrays.fill(d, 0, n + 1, Integer.MAX_VALUE);
+
+        for (int j = 1; j <= m; j++) {
+            char t_j = other.charAt(j - 1);
+            d[0] = j;
+
+            int min = Math.max(1, j - maxDistance);
+            int max = j > Integer.MAX_VALUE - maxDistance ? n : Math.min(n, j + maxDistance);
+            if (min > max) {
+                return maxDistance + 1;
+            }
+            if (min > 1) {
+                d[min - 1] = Integer.MAX_VALUE;
+            }
+
+            int rowMin = d[0];
+            for (int i = min; i <= max; i++) {
+                if (target.charAt(i - 1) == t_j) {
+                    d[i] = p[i - 1];
+                } else {
+                    d[i] = 1 + Math.min(Math.min(d[i - 1], p[i]), p[i - 1]);
+                }
+                rowMin = Math.min(rowMin, d[i]);
+            }
+            if (rowMin > maxDistance) {
+                // The costs never decrease from one row to the next
+                return maxDistance + 1;
+            }
+
+            tmp = p;
+            p = d;
+            d = tmp;
+        }
+
+        return p[n] <= maxDistance ? p[n] : maxDistance + 1;
+    }
+
 
     //*****************************
     // Compute Levenshtein distance: see org.apache.commons.lang.StringUtils#getLevenshteinDistance(String, String)
     //*****************************
     public static int getDistance (String target, String other) {
-      char[] sa;
       int n;
       int p[]; //'previous' cost array, horizontally
       int d[]; // cost array, horizontally
@@ -57,10 +153,10 @@ public final class LevensteinDistance {
            cause an out of memory condition when calculating the LD over two very large strings.
          */
 
-        sa = target.toCharArray();
-        n = sa.length;
-        p = new int[n+1]; 
-        d = new int[n+1]; 
+        n = target.length();
+        int[][] buffers = getBuffers(n + 1);
+        p = buffers[0];
+        d = buffers[1];
       
         final int m = other.length();
         if (n == 0 || m == 0) {
@@ -90,7 +186,7 @@ public final class LevensteinDistance {
             d[0] = j;
 
             for (i=1; i<=n; i++) {
-                cost = sa[i-1]==t_j ? 0 : 1;
+                cost = target.charAt(i-1)==t_j ? 0 : 1;
                 // minimum of cell to the left+1, to the top+1, diagonally left and up +cost
                 d[i] = Math.min(Math.min(d[i-1]+1, p[i]+1),  p[i-1]+cost);
             }
@@ -1,6 +1,5 @@
 package org.tomahawk.libtomahawk.utils;
 
-import com.squareup.okhttp.Credentials;
 import com.squareup.okhttp.MediaType;
 import com.squareup.okhttp.OkHttpClient;
 import com.squareup.okhttp.Request;
@@ -14,9 +13,7 @@ import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 
 import java.io.IOException;
-import java.net.Proxy;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
 
 public class NetworkUtils {
 
@@ -42,30 +39,13 @@ public class NetworkUtils {
     public static Response httpRequest(String method, String urlString,
             Map<String, String> extraHeaders, final String username, final String password,
             String data, boolean followRedirects) throws IOException {
-        OkHttpClient client = new OkHttpClient();
-
-        //Set time-outs
-        client.setConnectTimeout(15000, TimeUnit.MILLISECONDS);
-        client.setReadTimeout(15000, TimeUnit.MILLISECONDS);
-
-        client.setFollowRedirects(followRedirects);
-
-        // Configure HTTP Basic Auth if available
+        // Use the shared client so that pooled connections are being reused
+        OkHttpClient client;
         if (username != null && password != null) {
-            client.setAuthenticator(new com.squareup.okhttp.Authenticator() {
-                @Override
-                public Request authenticate(Proxy proxy, Response response) throws IOException {
-                    String credential = Credentials.basic(username, password);
-                    return response.request().newBuilder().header("Authorization", credential)
-                            .build();
-                }
-
-                @Override
-                public Request authenticateProxy(Proxy proxy, Response response)
-                        throws IOException {
-                    return null;
-                }
-            });
+            // Configure HTTP Basic Auth if available
+            client = HttpClientManager.get().getAuthClient(username, password, followRedirects);
+        } else {
+            client = HttpClientManager.get().getClient(followRedirects);
         }
 
         // Create request for remote resource.
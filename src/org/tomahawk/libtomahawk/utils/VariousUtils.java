@@ -17,6 +17,50 @@ public class VariousUtils {
         return str1.toLowerCase().contains(str2.toLowerCase());
     }
 
+    /**
+     * Clean up the given String by converting it to lower case, trimming it and replacing every
+     * sequence of two or more whitespace characters with a single space.
+     *
+     * @param replaceArticle wether or not the prefix "the " should be removed
+     * @return the clean String
+     */
+    public static String cleanUpString(String in, boolean replaceArticle) {
+        String out = in.toLowerCase().trim();
+        StringBuilder sb = null;
+        int length = out.length();
+        for (int i = 0; i < length; i++) {
+            int end = i;
+            while (end < length && isWhitespace(out.charAt(end))) {
+                end++;
+            }
+            if (end - i >= 2) {
+                if (sb == null) {
+                    // Only copy the String if there actually is something to replace
+                    sb = new StringBuilder(length);
+                    sb.append(out, 0, i);
+                }
+                sb.append(' ');
+                i = end - 1;
+            } else if (sb != null) {
+                sb.append(out.charAt(i));
+            }
+        }
+        if (sb != null) {
+            out = sb.toString();
+        }
+        if (replaceArticle && out.startsWith("the ")) {
+            out = out.substring(4);
+        }
+        return out;
+    }
+
+    /**
+     * @return whether or not the given char is matched by the regex character class "\\s"
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
     /**
      * By default File#delete fails for non-empty directories, it works like "rm". We need something
      * a little more brutal - this does the equivalent of "rm -r"
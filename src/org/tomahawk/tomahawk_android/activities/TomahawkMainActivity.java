@@ -42,6 +42,7 @@ import org.tomahawk.libtomahawk.infosystem.User;
 import org.tomahawk.libtomahawk.resolver.PipeLine;
 import org.tomahawk.libtomahawk.resolver.Query;
 import org.tomahawk.libtomahawk.resolver.Result;
+import org.tomahawk.libtomahawk.resolver.TypeAheadIndex;
 import org.tomahawk.libtomahawk.resolver.UserCollectionStubResolver;
 import org.tomahawk.libtomahawk.resolver.models.ScriptResolverUrlResult;
 import org.tomahawk.libtomahawk.utils.ViewUtils;
@@ -86,7 +87,7 @@ import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.content.res.Configuration;
 import android.database.Cursor;
-import android.database.sqlite.SQLiteCursor;
+import android.database.MatrixCursor;
 import android.media.AudioManager;
 import android.media.MediaMetadataRetriever;
 import android.net.ConnectivityManager;
@@ -118,6 +119,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import de.greenrobot.event.EventBus;
 import fr.castorflex.android.smoothprogressbar.SmoothProgressBar;
@@ -161,6 +163,14 @@ public class TomahawkMainActivity extends ActionBarActivity
     public static final String COACHMARK_SWIPELAYOUT_ENQUEUE_DISABLED
             = "coachmark_swipelayout_enqueue_disabled";
 
+    /**
+     * The time in ms the user has to stop typing before the collections are being searched for
+     * suggestions
+     */
+    private static final long TYPE_AHEAD_DELAY = 150;
+
+    private static final int TYPE_AHEAD_LIMIT = 8;
+
     public static int ACTIONBAR_HEIGHT;
 
     public static class SlidingLayoutChangedEvent {
@@ -183,6 +193,14 @@ public class TomahawkMainActivity extends ActionBarActivity
 
     private MenuItem mSearchItem;
 
+    private final Handler mTypeAheadHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Identifies the type-ahead lookup that has been started last, so that the results of
+     * superseded lookups can be dropped. Only accessed on the main thread.
+     */
+    private Object mTypeAheadToken;
+
     private DrawerLayout mDrawerLayout;
 
     private StickyListHeadersListView mDrawerList;
@@ -931,6 +949,7 @@ public class TomahawkMainActivity extends ActionBarActivity
             mShouldShowAnimationHandler.removeCallbacks(mShouldShowAnimationRunnable);
             mShouldShowAnimationHandler = null;
         }
+        cancelTypeAhead();
 
         if (mTomahawkMainReceiver != null) {
             unregisterReceiver(mTomahawkMainReceiver);
@@ -984,6 +1003,7 @@ public class TomahawkMainActivity extends ActionBarActivity
             @Override
             public boolean onQueryTextSubmit(String query) {
                 if (query != null && !TextUtils.isEmpty(query)) {
+                    cancelTypeAhead();
                     DatabaseHelper.get().addEntryToSearchHistory(query);
                     Bundle bundle = new Bundle();
                     bundle.putString(TomahawkFragment.QUERY_STRING, query);
@@ -1002,21 +1022,10 @@ public class TomahawkMainActivity extends ActionBarActivity
 
             @Override
             public boolean onQueryTextChange(String newText) {
+                requestTypeAhead(searchView, newText);
                 Cursor cursor = DatabaseHelper.get().getSearchHistoryCursor(newText);
                 if (cursor.getCount() != 0) {
-                    String[] columns = new String[]{
-                            TomahawkSQLiteHelper.SEARCHHISTORY_COLUMN_ENTRY};
-                    int[] columnTextId = new int[]{android.R.id.text1};
-
-                    SuggestionSimpleCursorAdapter simple = new SuggestionSimpleCursorAdapter(
-                            getBaseContext(), R.layout.searchview_dropdown_item,
-                            cursor, columns, columnTextId, 0);
-
-                    if (searchView.getSuggestionsAdapter() != null
-                            && searchView.getSuggestionsAdapter().getCursor() != null) {
-                        searchView.getSuggestionsAdapter().getCursor().close();
-                    }
-                    searchView.setSuggestionsAdapter(simple);
+                    setSuggestionsCursor(searchView, cursor);
                     return true;
                 } else {
                     cursor.close();
@@ -1027,8 +1036,7 @@ public class TomahawkMainActivity extends ActionBarActivity
         searchView.setOnSuggestionListener(new SearchView.OnSuggestionListener() {
             @Override
             public boolean onSuggestionSelect(int position) {
-                SQLiteCursor cursor = (SQLiteCursor) searchView.getSuggestionsAdapter()
-                        .getItem(position);
+                Cursor cursor = (Cursor) searchView.getSuggestionsAdapter().getItem(position);
                 int indexColumnSuggestion = cursor
                         .getColumnIndex(TomahawkSQLiteHelper.SEARCHHISTORY_COLUMN_ENTRY);
 
@@ -1039,8 +1047,7 @@ public class TomahawkMainActivity extends ActionBarActivity
 
             @Override
             public boolean onSuggestionClick(int position) {
-                SQLiteCursor cursor = (SQLiteCursor) searchView.getSuggestionsAdapter()
-                        .getItem(position);
+                Cursor cursor = (Cursor) searchView.getSuggestionsAdapter().getItem(position);
                 int indexColumnSuggestion = cursor
                         .getColumnIndex(TomahawkSQLiteHelper.SEARCHHISTORY_COLUMN_ENTRY);
 
@@ -1052,6 +1059,95 @@ public class TomahawkMainActivity extends ActionBarActivity
         return super.onCreateOptionsMenu(menu);
     }
 
+    private void setSuggestionsCursor(SearchView searchView, Cursor cursor) {
+        String[] columns = new String[]{TomahawkSQLiteHelper.SEARCHHISTORY_COLUMN_ENTRY};
+        int[] columnTextId = new int[]{android.R.id.text1};
+
+        SuggestionSimpleCursorAdapter simple = new SuggestionSimpleCursorAdapter(
+                getBaseContext(), R.layout.searchview_dropdown_item,
+                cursor, columns, columnTextId, 0);
+
+        if (searchView.getSuggestionsAdapter() != null
+                && searchView.getSuggestionsAdapter().getCursor() != null) {
+            searchView.getSuggestionsAdapter().getCursor().close();
+        }
+        searchView.setSuggestionsAdapter(simple);
+    }
+
+    /**
+     * Supersedes the previous type-ahead lookup and looks up the names in all local collections
+     * that match the given text, as soon as the user has stopped typing for {@link
+     * #TYPE_AHEAD_DELAY} ms. The suggestions are being shown below the matching search history
+     * entries.
+     */
+    private void requestTypeAhead(final SearchView searchView, final String text) {
+        cancelTypeAhead();
+        if (text == null || text.trim().isEmpty()) {
+            return;
+        }
+        mTypeAheadHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                final Object token = new Object();
+                mTypeAheadToken = token;
+                TomahawkRunnable r = new TomahawkRunnable(TomahawkRunnable.PRIORITY_IS_VERYHIGH) {
+                    @Override
+                    public void run() {
+                        final Cursor cursor = getTypeAheadCursor(text);
+                        runOnUiThread(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (token != mTypeAheadToken || cursor.getCount() == 0) {
+                                    // This lookup has been superseded in the meantime
+                                    cursor.close();
+                                } else {
+                                    setSuggestionsCursor(searchView, cursor);
+                                }
+                            }
+                        });
+                    }
+                };
+                ThreadManager.get().executeLatestOnly(r);
+            }
+        }, TYPE_AHEAD_DELAY);
+    }
+
+    private void cancelTypeAhead() {
+        mTypeAheadHandler.removeCallbacksAndMessages(null);
+        mTypeAheadToken = null;
+    }
+
+    /**
+     * @return a {@link Cursor} containing the search history entries starting with the given
+     * text, followed by the names in all local collections matching it
+     */
+    private Cursor getTypeAheadCursor(String text) {
+        MatrixCursor matrixCursor = new MatrixCursor(new String[]{
+                TomahawkSQLiteHelper.SEARCHHISTORY_COLUMN_ID,
+                TomahawkSQLiteHelper.SEARCHHISTORY_COLUMN_ENTRY});
+        Set<String> entries = new HashSet<>();
+        Cursor cursor = DatabaseHelper.get().getSearchHistoryCursor(text);
+        try {
+            int columnIndex =
+                    cursor.getColumnIndex(TomahawkSQLiteHelper.SEARCHHISTORY_COLUMN_ENTRY);
+            while (cursor.moveToNext()) {
+                String entry = cursor.getString(columnIndex);
+                if (entries.add(entry.toLowerCase())) {
+                    matrixCursor.addRow(new Object[]{matrixCursor.getCount(), entry});
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        for (TypeAheadIndex.Suggestion suggestion
+                : CollectionManager.get().suggest(text, TYPE_AHEAD_LIMIT)) {
+            if (entries.add(suggestion.name.toLowerCase())) {
+                matrixCursor.addRow(new Object[]{matrixCursor.getCount(), suggestion.name});
+            }
+        }
+        return matrixCursor;
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         // Pass the event to ActionBarDrawerToggle, if it returns
@@ -24,6 +24,7 @@ import com.nineoldandroids.animation.ValueAnimator;
 import org.jdeferred.DoneCallback;
 import org.tomahawk.libtomahawk.collection.Album;
 import org.tomahawk.libtomahawk.collection.Artist;
+import org.tomahawk.libtomahawk.collection.Cacheable;
 import org.tomahawk.libtomahawk.collection.Collection;
 import org.tomahawk.libtomahawk.collection.CollectionManager;
 import org.tomahawk.libtomahawk.collection.Image;
@@ -149,10 +150,17 @@ public class ContentHeaderFragment extends Fragment {
 
     protected boolean mHideRemoveButton;
 
+    /**
+     * The objects whose cache keys are stored in this fragment's arguments
+     */
+    private List<Cacheable> mPinnedArguments;
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
+        mPinnedArguments = FragmentUtils.pinArguments(getArguments());
+
         Resources res = getResources();
         if (getArguments() != null) {
             mCurrentMode = getArguments().getInt(TomahawkFragment.CONTENT_HEADER_MODE, -1);
@@ -234,6 +242,13 @@ public class ContentHeaderFragment extends Fragment {
         ((TomahawkMainActivity) getActivity()).showGradientActionBar();
     }
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+
+        FragmentUtils.unpinArguments(mPinnedArguments);
+    }
+
     public boolean isDynamicHeader() {
         return mHeaderScrollableHeight > 0;
     }
@@ -20,6 +20,7 @@ package org.tomahawk.tomahawk_android.fragments;
 import org.jdeferred.DoneCallback;
 import org.tomahawk.libtomahawk.collection.Album;
 import org.tomahawk.libtomahawk.collection.Artist;
+import org.tomahawk.libtomahawk.collection.Cacheable;
 import org.tomahawk.libtomahawk.collection.Collection;
 import org.tomahawk.libtomahawk.collection.CollectionManager;
 import org.tomahawk.libtomahawk.collection.Image;
@@ -85,6 +86,11 @@ public class ContextMenuFragment extends Fragment {
 
     private final HashSet<String> mCorrespondingRequestIds = new HashSet<>();
 
+    /**
+     * The objects whose cache keys are stored in this fragment's arguments
+     */
+    private List<Cacheable> mPinnedArguments;
+
     @SuppressWarnings("unused")
     public void onEventMainThread(InfoSystem.ResultsEvent event) {
         if (mCorrespondingRequestIds.contains(event.mInfoRequestData.getRequestId())
@@ -103,6 +109,13 @@ public class ContextMenuFragment extends Fragment {
         }
     }
 
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        mPinnedArguments = FragmentUtils.pinArguments(getArguments());
+    }
+
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
             Bundle savedInstanceState) {
@@ -159,6 +172,13 @@ public class ContextMenuFragment extends Fragment {
         super.onStop();
     }
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+
+        FragmentUtils.unpinArguments(mPinnedArguments);
+    }
+
     private void unpackArgs() {
         if (getArguments() != null) {
             if (getArguments().containsKey(TomahawkFragment.HIDE_REMOVE_BUTTON)) {
@@ -17,6 +17,7 @@
  */
 package org.tomahawk.tomahawk_android.fragments;
 
+import org.tomahawk.libtomahawk.collection.Cacheable;
 import org.tomahawk.libtomahawk.infosystem.InfoSystem;
 import org.tomahawk.libtomahawk.resolver.PipeLine;
 import org.tomahawk.libtomahawk.resolver.Query;
@@ -50,6 +51,11 @@ public abstract class SelectorFragment extends Fragment {
     protected final Set<Query> mCorrespondingQueries
             = Collections.newSetFromMap(new ConcurrentHashMap<Query, Boolean>());
 
+    /**
+     * The objects whose cache keys are stored in this fragment's arguments
+     */
+    private List<Cacheable> mPinnedArguments;
+
     @SuppressWarnings("unused")
     public void onEventMainThread(PipeLine.ResultsEvent event) {
         if (mCorrespondingQueries.contains(event.mQuery)) {
@@ -64,6 +70,13 @@ public abstract class SelectorFragment extends Fragment {
         }
     }
 
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        mPinnedArguments = FragmentUtils.pinArguments(getArguments());
+    }
+
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
             Bundle savedInstanceState) {
@@ -95,6 +108,13 @@ public abstract class SelectorFragment extends Fragment {
         super.onStop();
     }
 
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+
+        FragmentUtils.unpinArguments(mPinnedArguments);
+    }
+
     protected void setupSelector(final List<FragmentInfo> fragmentInfos, final int initialPage,
             final String selectorPosStorageKey) {
         if (getView() != null) {
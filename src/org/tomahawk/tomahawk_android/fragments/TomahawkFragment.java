@@ -349,7 +349,10 @@ public abstract class TomahawkFragment extends TomahawkListFragment
             if (getArguments().containsKey(USERARRAY)) {
                 mUserArray = new ArrayList<>();
                 for (String userId : getArguments().getStringArrayList(USERARRAY)) {
-                    mUserArray.add(User.getUserById(userId));
+                    User user = User.getUserById(userId);
+                    if (user != null) {
+                        mUserArray.add(user);
+                    }
                 }
             }
             if (getArguments().containsKey(ARTISTARRAY)) {
@@ -587,16 +590,38 @@ public abstract class TomahawkFragment extends TomahawkListFragment
         if (mTomahawkListAdapter != null) {
             start = Math.max(start, 0);
             end = Math.min(end, mTomahawkListAdapter.getCount());
+            Set<Query> queries = new HashSet<>();
             for (int i = start; i < end; i++) {
                 Object object = mTomahawkListAdapter.getItem(i);
                 if (object instanceof List) {
                     for (Object item : (List) object) {
-                        resolveItem(item);
+                        resolveItem(item, queries);
                     }
                 } else {
-                    resolveItem(object);
+                    resolveItem(object, queries);
                 }
             }
+            if (!queries.isEmpty()) {
+                mCorrespondingQueries.addAll(PipeLine.get().resolve(queries));
+            }
+        }
+    }
+
+    /**
+     * Adds the given item's {@link Query} to the given set of queries, so that all of them can be
+     * resolved as a batch. All other items are being resolved right away.
+     */
+    private void resolveItem(Object object, Set<Query> queries) {
+        Query query = null;
+        if (object instanceof PlaylistEntry) {
+            query = ((PlaylistEntry) object).getQuery();
+        } else if (object instanceof Query) {
+            query = (Query) object;
+        }
+        if (query == null) {
+            resolveItem(object);
+        } else if (!mCorrespondingQueries.contains(query)) {
+            queries.add(query);
         }
     }
 
@@ -17,13 +17,19 @@
  */
 package org.tomahawk.tomahawk_android.mediaplayers;
 
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
 import org.tomahawk.libtomahawk.resolver.PipeLine;
 import org.tomahawk.libtomahawk.resolver.Query;
 import org.tomahawk.libtomahawk.resolver.Result;
 import org.tomahawk.libtomahawk.resolver.ScriptResolver;
+import org.tomahawk.libtomahawk.utils.HttpClientManager;
 import org.tomahawk.libtomahawk.utils.VariousUtils;
 import org.tomahawk.tomahawk_android.TomahawkApp;
 import org.tomahawk.tomahawk_android.fragments.EqualizerFragment;
+import org.tomahawk.tomahawk_android.utils.ThreadManager;
+import org.tomahawk.tomahawk_android.utils.TomahawkRunnable;
 import org.videolan.libvlc.EventHandler;
 import org.videolan.libvlc.LibVLC;
 import org.videolan.libvlc.LibVlcException;
@@ -38,6 +44,8 @@ import android.os.Message;
 import android.preference.PreferenceManager;
 import android.util.Log;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.concurrent.ConcurrentHashMap;
 
 import de.greenrobot.event.EventBus;
@@ -49,6 +57,40 @@ public class VLCMediaPlayer implements TomahawkMediaPlayer {
 
     private static final String TAG = VLCMediaPlayer.class.getSimpleName();
 
+    private static final int NETWORK_CACHING = 2000;
+
+    /**
+     * The number of bytes of an upcoming stream that are being fetched ahead of time
+     */
+    private static final int PREBUFFER_BYTES = 256 * 1024;
+
+    private static final long MIN_PREFETCH_LEAD_TIME = 10000;
+
+    private static final long MAX_PREFETCH_LEAD_TIME = 60000;
+
+    /**
+     * The time in ms after which a requested stream url is being requested again, if it hasn't
+     * arrived yet
+     */
+    private static final long STREAM_URL_TIMEOUT = 15000;
+
+    /**
+     * How often a stream url that hasn't arrived in time is being requested again, before
+     * preparing the track fails
+     */
+    private static final int MAX_STREAM_URL_RETRIES = 1;
+
+    /**
+     * The time in ms after which a prefetched stream url is no longer being trusted
+     */
+    private static final long MAX_STREAM_URL_AGE = 10 * 60 * 1000;
+
+    /**
+     * The weight of a new measurement in the moving averages of the stream url latency and the
+     * throughput
+     */
+    private static final float MEASUREMENT_WEIGHT = 0.3F;
+
     private static class Holder {
 
         private static final VLCMediaPlayer instance = new VLCMediaPlayer();
@@ -66,6 +108,34 @@ public class VLCMediaPlayer implements TomahawkMediaPlayer {
     private final ConcurrentHashMap<Result, String> mTranslatedUrls
             = new ConcurrentHashMap<>();
 
+    /**
+     * The times at which the urls in mTranslatedUrls have been received
+     */
+    private final ConcurrentHashMap<Result, Long> mTranslatedUrlTimes
+            = new ConcurrentHashMap<>();
+
+    /**
+     * The times at which stream urls have been requested that haven't arrived yet
+     */
+    private final ConcurrentHashMap<Result, Long> mStreamUrlRequestTimes
+            = new ConcurrentHashMap<>();
+
+    /**
+     * The {@link Result} whose stream url has been prefetched last
+     */
+    private Result mPrefetchedResult;
+
+    private int mStreamUrlRetries;
+
+    private final Handler mStreamUrlTimeoutHandler = new Handler(Looper.getMainLooper());
+
+    private volatile long mAverageStreamUrlLatency = 2000;
+
+    /**
+     * The average throughput in bytes per second, measured while prebuffering
+     */
+    private volatile long mAverageThroughput = 64 * 1024;
+
     private final Handler mVlcHandler = new Handler(Looper.getMainLooper(), new Handler.Callback() {
         @Override
         public boolean handleMessage(Message msg) {
@@ -94,7 +164,7 @@ public class VLCMediaPlayer implements TomahawkMediaPlayer {
     private VLCMediaPlayer() {
         mLibVLC = new LibVLC();
         mLibVLC.setHttpReconnect(true);
-        mLibVLC.setNetworkCaching(2000);
+        mLibVLC.setNetworkCaching(NETWORK_CACHING);
         SharedPreferences pref =
                 PreferenceManager.getDefaultSharedPreferences(TomahawkApp.getContext());
         if (pref.getBoolean(EqualizerFragment.EQUALIZER_ENABLED_PREFERENCE_KEY, false)) {
@@ -120,13 +190,170 @@ public class VLCMediaPlayer implements TomahawkMediaPlayer {
 
     @SuppressWarnings("unused")
     public void onEventAsync(PipeLine.StreamUrlEvent event) {
+        long now = System.currentTimeMillis();
+        Long requestTime = mStreamUrlRequestTimes.remove(event.mResult);
+        if (requestTime != null) {
+            mAverageStreamUrlLatency = average(mAverageStreamUrlLatency, now - requestTime);
+        }
         mTranslatedUrls.put(event.mResult, event.mUrl);
+        mTranslatedUrlTimes.put(event.mResult, now);
         if (mPreparingQuery != null
                 && event.mResult == mPreparingQuery.getPreferredTrackResult()) {
             prepare(mPreparingQuery);
+        } else {
+            prebuffer(event.mUrl);
+        }
+    }
+
+    /**
+     * Gets everything ready that can be done ahead of time for the given {@link Query}, so that
+     * it can be prepared without delay once it's up next. The stream url of a {@link
+     * ScriptResolver}'s {@link Result} is being requested and the first bytes of the stream are
+     * being fetched, which warms up DNS, redirects and CDN caches and measures the throughput.
+     */
+    public void prefetch(Query query) {
+        final Result result = query.getPreferredTrackResult();
+        if (result == null || result.isLocal() || isPreparing(query) || isPrepared(query)) {
+            return;
+        }
+        if (result.getResolvedBy() instanceof ScriptResolver) {
+            if (mPrefetchedResult != null && mPrefetchedResult != result) {
+                // The previously prefetched track won't be played next anymore
+                forgetStreamUrl(mPrefetchedResult);
+            }
+            mPrefetchedResult = result;
+            if (getTranslatedUrl(result) == null && !isRequestingStreamUrl(result)) {
+                Log.d(TAG, "prefetch - requesting stream url of " + query.getName());
+                mStreamUrlRequestTimes.put(result, System.currentTimeMillis());
+                ((ScriptResolver) result.getResolvedBy()).getStreamUrl(result);
+            }
+        } else {
+            ThreadManager.get().executePlayback(
+                    new TomahawkRunnable(TomahawkRunnable.PRIORITY_IS_PLAYBACK) {
+                        @Override
+                        public void run() {
+                            prebuffer(result.getPath());
+                        }
+                    });
+        }
+    }
+
+    /**
+     * @return the time in ms before the end of the current track at which the next track should
+     * be prefetched. Adapts to the measured stream url latency and network throughput.
+     */
+    public long getPrefetchLeadTime() {
+        long prebufferTime = PREBUFFER_BYTES * 1000L / Math.max(1, mAverageThroughput);
+        long leadTime = 2 * (mAverageStreamUrlLatency + prebufferTime + NETWORK_CACHING);
+        return Math.min(MAX_PREFETCH_LEAD_TIME, Math.max(MIN_PREFETCH_LEAD_TIME, leadTime));
+    }
+
+    /**
+     * Fetches the first bytes of the given http(s) stream and updates the measured throughput.
+     * Must not be called on the main thread.
+     */
+    private void prebuffer(String url) {
+        if (url == null || !(url.startsWith("http://") || url.startsWith("https://"))) {
+            return;
+        }
+        Request request = new Request.Builder()
+                .url(url)
+                .header("Range", "bytes=0-" + (PREBUFFER_BYTES - 1))
+                .build();
+        long time = System.currentTimeMillis();
+        Response response = null;
+        try {
+            response = HttpClientManager.get().getClient().newCall(request).execute();
+            if (response.isSuccessful()) {
+                InputStream in = response.body().byteStream();
+                byte[] buffer = new byte[8192];
+                long bytes = 0;
+                int read;
+                while (bytes < PREBUFFER_BYTES && (read = in.read(buffer)) != -1) {
+                    bytes += read;
+                }
+                long duration = Math.max(1, System.currentTimeMillis() - time);
+                mAverageThroughput = average(mAverageThroughput, bytes * 1000 / duration);
+                Log.d(TAG, "prebuffer - fetched " + bytes + " bytes in " + duration + "ms");
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            Log.e(TAG, "prebuffer: " + e.getClass() + ": " + e.getLocalizedMessage());
+        } finally {
+            if (response != null) {
+                try {
+                    response.body().close();
+                } catch (IOException e) {
+                    Log.e(TAG, "prebuffer: " + e.getClass() + ": " + e.getLocalizedMessage());
+                }
+            }
         }
     }
 
+    /**
+     * @return the stream url that has been received for the given {@link Result}, or null if
+     * there is none or it is too old to be trusted
+     */
+    private String getTranslatedUrl(Result result) {
+        Long time = mTranslatedUrlTimes.get(result);
+        if (time != null && System.currentTimeMillis() - time > MAX_STREAM_URL_AGE) {
+            mTranslatedUrls.remove(result);
+            mTranslatedUrlTimes.remove(result);
+        }
+        return mTranslatedUrls.get(result);
+    }
+
+    /**
+     * Drops the stream url of the given {@link Result}, unless it's the one of the {@link Query}
+     * that is currently being prepared
+     */
+    private void forgetStreamUrl(Result result) {
+        Query preparingQuery = mPreparingQuery;
+        if (preparingQuery == null || preparingQuery.getPreferredTrackResult() != result) {
+            mTranslatedUrls.remove(result);
+            mTranslatedUrlTimes.remove(result);
+            mStreamUrlRequestTimes.remove(result);
+        }
+    }
+
+    /**
+     * Makes sure that preparing the given {@link Query} doesn't stall, if its stream url doesn't
+     * arrive in time. The stream url is being requested again up to MAX_STREAM_URL_RETRIES times,
+     * afterwards preparing fails.
+     */
+    private void scheduleStreamUrlTimeout(final Query query, long requestTime) {
+        mStreamUrlTimeoutHandler.removeCallbacksAndMessages(null);
+        long delay = Math.max(0, requestTime + STREAM_URL_TIMEOUT - System.currentTimeMillis());
+        mStreamUrlTimeoutHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                Result result = query.getPreferredTrackResult();
+                if (mPreparingQuery != query || getTranslatedUrl(result) != null) {
+                    return;
+                }
+                mStreamUrlRequestTimes.remove(result);
+                if (mStreamUrlRetries < MAX_STREAM_URL_RETRIES) {
+                    Log.d(TAG, "Stream url of " + query.getName() + " didn't arrive in time, "
+                            + "requesting it again");
+                    mStreamUrlRetries++;
+                    prepare(query);
+                } else {
+                    Log.e(TAG, "Stream url of " + query.getName() + " didn't arrive in time");
+                    mPreparingQuery = null;
+                    mMediaPlayerCallback.onError("Stream url timed out");
+                }
+            }
+        }, delay);
+    }
+
+    private boolean isRequestingStreamUrl(Result result) {
+        Long time = mStreamUrlRequestTimes.get(result);
+        return time != null && System.currentTimeMillis() - time < STREAM_URL_TIMEOUT;
+    }
+
+    private static long average(long average, long measurement) {
+        return (long) (average * (1 - MEASUREMENT_WEIGHT) + measurement * MEASUREMENT_WEIGHT);
+    }
+
     /**
      * Start playing the previously prepared {@link org.tomahawk.libtomahawk.collection.Track}
      */
@@ -170,11 +397,19 @@ public class VLCMediaPlayer implements TomahawkMediaPlayer {
         mPreparingQuery = query;
         Result result = query.getPreferredTrackResult();
         String path;
-        if (mTranslatedUrls.get(result) != null) {
+        if (getTranslatedUrl(result) != null) {
+            mTranslatedUrlTimes.remove(result);
             path = mTranslatedUrls.remove(result);
         } else {
             if (result.getResolvedBy() instanceof ScriptResolver) {
-                ((ScriptResolver) result.getResolvedBy()).getStreamUrl(result);
+                // If the stream url is already being prefetched, we simply wait for it to arrive
+                if (!isRequestingStreamUrl(result)) {
+                    mStreamUrlRequestTimes.put(result, System.currentTimeMillis());
+                    ((ScriptResolver) result.getResolvedBy()).getStreamUrl(result);
+                }
+                Long requestTime = mStreamUrlRequestTimes.get(result);
+                scheduleStreamUrlTimeout(query,
+                        requestTime != null ? requestTime : System.currentTimeMillis());
                 return this;
             } else {
                 path = result.getPath();
@@ -197,6 +432,7 @@ public class VLCMediaPlayer implements TomahawkMediaPlayer {
             TomahawkMediaPlayerCallback callback) {
         Log.d(TAG, "prepare()");
         mMediaPlayerCallback = callback;
+        mStreamUrlRetries = 0;
         return prepare(query);
     }
 
@@ -204,6 +440,7 @@ public class VLCMediaPlayer implements TomahawkMediaPlayer {
     public void release() {
         Log.d(TAG, "release()");
         EventHandler.getInstance().removeHandler(mVlcHandler);
+        mStreamUrlTimeoutHandler.removeCallbacksAndMessages(null);
         mPreparedQuery = null;
         mPreparingQuery = null;
         getLibVlcInstance().stop();
@@ -148,6 +148,9 @@ public class PlaybackService extends Service implements MusicFocusable {
 
     private static final int DELAY_TO_KILL = 300000;
 
+    // The maximum time between two checks whether or not the next track should be prefetched
+    private static final int PREFETCH_CHECK_INTERVAL = 10000;
+
     public static class PlayingTrackChangedEvent {
 
     }
@@ -418,6 +421,26 @@ public class PlaybackService extends Service implements MusicFocusable {
         }
     }
 
+    // Prefetches the next track shortly before the current one ends
+    private PrefetchHandler mPrefetchHandler = new PrefetchHandler(this);
+
+    private PlaylistEntry mPrefetchedEntry;
+
+    private static class PrefetchHandler extends WeakReferenceHandler<PlaybackService> {
+
+        public PrefetchHandler(PlaybackService referencedObject) {
+            super(referencedObject);
+        }
+
+        @Override
+        public void handleMessage(Message msg) {
+            PlaybackService service = getReferencedObject();
+            if (service != null) {
+                service.checkPrefetch();
+            }
+        }
+    }
+
     private TomahawkMediaPlayerCallback mMediaPlayerCallback = new TomahawkMediaPlayerCallback() {
         @Override
         public void onPrepared(Query query) {
@@ -566,6 +589,10 @@ public class PlaybackService extends Service implements MusicFocusable {
 
         mPlaylist = Playlist.fromEmptyList(TomahawkMainActivity.getLifetimeUniqueStringId(), "");
         mQueue = Playlist.fromEmptyList(TomahawkMainActivity.getLifetimeUniqueStringId(), "");
+        // Pin the playlists, so that they and all of their entries and queries stay cached for as
+        // long as they are part of the playback list
+        mPlaylist.pin();
+        mQueue.pin();
         Log.d(TAG, "PlaybackService has been created");
     }
 
@@ -621,6 +648,9 @@ public class PlaybackService extends Service implements MusicFocusable {
         mPhoneCallListener = null;
         mKillTimerHandler.removeCallbacksAndMessages(null);
         mKillTimerHandler = null;
+        mPrefetchHandler.removeCallbacksAndMessages(null);
+        mPlaylist.unpin();
+        mQueue.unpin();
 
         Log.d(TAG, "PlaybackService has been destroyed");
     }
@@ -714,6 +744,7 @@ public class PlaybackService extends Service implements MusicFocusable {
                         } else if (!isPreparing()) {
                             prepareCurrentQuery();
                         }
+                        checkPrefetch();
                         break;
                     case PLAYBACKSERVICE_PLAYSTATE_PAUSED:
                         if (getCurrentQuery().getMediaPlayerInterface().isPlaying(getCurrentQuery())
@@ -728,6 +759,7 @@ public class PlaybackService extends Service implements MusicFocusable {
                         if (mWakeLock != null && mWakeLock.isHeld()) {
                             mWakeLock.release();
                         }
+                        mPrefetchHandler.removeCallbacksAndMessages(null);
                         break;
                 }
             } catch (IllegalStateException e1) {
@@ -1022,6 +1054,7 @@ public class PlaybackService extends Service implements MusicFocusable {
         }
         mCurrentEntry = entry;
         mCurrentIndex = getPlaybackListIndex(mCurrentEntry);
+        mPrefetchedEntry = null;
         handlePlayState();
         EventBus.getDefault().post(new PlayingPlaylistChangedEvent());
         onTrackChanged();
@@ -1037,6 +1070,46 @@ public class PlaybackService extends Service implements MusicFocusable {
         }
     }
 
+    /**
+     * Prefetches the next playable entry as soon as the remaining time of the current track drops
+     * below the {@link VLCMediaPlayer}'s prefetch lead time, which adapts to the measured network
+     * throughput. Otherwise schedules the next check.
+     */
+    private void checkPrefetch() {
+        mPrefetchHandler.removeCallbacksAndMessages(null);
+        Track track = getCurrentTrack();
+        if (mPlayState != PLAYBACKSERVICE_PLAYSTATE_PLAYING || track == null
+                || track.getDuration() <= 0) {
+            return;
+        }
+        long remaining = track.getDuration() - getPosition();
+        long leadTime = VLCMediaPlayer.get().getPrefetchLeadTime();
+        if (remaining > leadTime) {
+            mPrefetchHandler.sendEmptyMessageDelayed(0,
+                    Math.min(remaining - leadTime, PREFETCH_CHECK_INTERVAL));
+        } else {
+            prefetchNextEntry();
+        }
+    }
+
+    private void prefetchNextEntry() {
+        int counter = 0;
+        PlaylistEntry entry = getNextEntry();
+        while (entry != null && counter++ < getPlaybackListSize()) {
+            Query query = entry.getQuery();
+            if (query.isPlayable()) {
+                if (entry != mPrefetchedEntry && entry != mCurrentEntry
+                        && query.getMediaPlayerInterface() instanceof VLCMediaPlayer) {
+                    Log.d(TAG, "prefetchNextEntry - prefetching " + query.getName());
+                    mPrefetchedEntry = entry;
+                    VLCMediaPlayer.get().prefetch(query);
+                }
+                break;
+            }
+            entry = getNextEntry(entry);
+        }
+    }
+
     /**
      * @return whether or not wi-fi is available
      */
@@ -1070,7 +1143,9 @@ public class PlaybackService extends Service implements MusicFocusable {
         releaseAllPlayers();
         mShuffled = false;
         mRepeatingMode = NOT_REPEATING;
+        mPlaylist.unpin();
         mPlaylist = playlist;
+        mPlaylist.pin();
         mQueueStartPos = -1;
         setCurrentEntry(currentEntry);
     }
@@ -1195,6 +1270,7 @@ public class PlaybackService extends Service implements MusicFocusable {
         if (getCurrentQuery() != null && getCurrentQuery().getMediaPlayerInterface() != null
                 && getCurrentQuery().getMediaPlayerInterface().isPrepared(getCurrentQuery())) {
             getCurrentQuery().getMediaPlayerInterface().seekTo(msec);
+            checkPrefetch();
         }
     }
 
@@ -19,6 +19,7 @@ package org.tomahawk.tomahawk_android.utils;
 
 import org.tomahawk.libtomahawk.collection.Album;
 import org.tomahawk.libtomahawk.collection.Artist;
+import org.tomahawk.libtomahawk.collection.Cacheable;
 import org.tomahawk.libtomahawk.collection.Playlist;
 import org.tomahawk.libtomahawk.collection.PlaylistEntry;
 import org.tomahawk.libtomahawk.infosystem.SocialAction;
@@ -37,6 +38,9 @@ import android.os.Bundle;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentTransaction;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * This class wraps all functionality that handles the switching of {@link Fragment}s, whenever the
  * user navigates to a new {@link Fragment}.
@@ -191,4 +195,86 @@ public class FragmentUtils {
         add(activity, ContextMenuFragment.class, args, R.id.context_menu_frame);
         return true;
     }
+
+    /**
+     * Pins every {@link Cacheable} whose cache key is stored in the given fragment arguments, so
+     * that it can still be looked up by its key for as long as the {@link Fragment} exists.
+     *
+     * @return the pinned {@link Cacheable}s, which have to be given to {@link
+     * #unpinArguments(List)} once the {@link Fragment} is being destroyed
+     */
+    public static List<Cacheable> pinArguments(Bundle args) {
+        List<Cacheable> pinned = new ArrayList<>();
+        if (args == null) {
+            return pinned;
+        }
+        String[] types = new String[]{TomahawkFragment.ALBUM, TomahawkFragment.ARTIST,
+                TomahawkFragment.PLAYLIST, TomahawkFragment.USER, TomahawkFragment.QUERY,
+                TomahawkFragment.SOCIALACTION, TomahawkFragment.PLAYLISTENTRY};
+        for (String type : types) {
+            pin(pinned, type, args.getString(type));
+        }
+        String[][] arrayTypes = new String[][]{
+                {TomahawkFragment.ALBUMARRAY, TomahawkFragment.ALBUM},
+                {TomahawkFragment.ARTISTARRAY, TomahawkFragment.ARTIST},
+                {TomahawkFragment.USERARRAY, TomahawkFragment.USER},
+                {TomahawkFragment.QUERYARRAY, TomahawkFragment.QUERY}};
+        for (String[] arrayType : arrayTypes) {
+            List<String> keys = args.getStringArrayList(arrayType[0]);
+            if (keys != null) {
+                for (String key : keys) {
+                    pin(pinned, arrayType[1], key);
+                }
+            }
+        }
+        pin(pinned, args.getString(TomahawkFragment.TOMAHAWKLISTITEM_TYPE),
+                args.getString(TomahawkFragment.TOMAHAWKLISTITEM));
+        return pinned;
+    }
+
+    private static void pin(List<Cacheable> pinned, String type, String key) {
+        if (type == null || key == null) {
+            return;
+        }
+        Cacheable cacheable = null;
+        switch (type) {
+            case TomahawkFragment.ALBUM:
+                cacheable = Album.getByKey(key);
+                break;
+            case TomahawkFragment.ARTIST:
+                cacheable = Artist.getByKey(key);
+                break;
+            case TomahawkFragment.PLAYLIST:
+                cacheable = Playlist.getByKey(key);
+                break;
+            case TomahawkFragment.USER:
+                cacheable = User.getUserById(key);
+                break;
+            case TomahawkFragment.QUERY:
+                cacheable = Query.getByKey(key);
+                break;
+            case TomahawkFragment.SOCIALACTION:
+                cacheable = SocialAction.getByKey(key);
+                break;
+            case TomahawkFragment.PLAYLISTENTRY:
+                cacheable = PlaylistEntry.getByKey(key);
+                break;
+        }
+        if (cacheable != null) {
+            cacheable.pin();
+            pinned.add(cacheable);
+        }
+    }
+
+    /**
+     * Unpins the {@link Cacheable}s that have been pinned by {@link #pinArguments(Bundle)}
+     */
+    public static void unpinArguments(List<Cacheable> pinned) {
+        if (pinned != null) {
+            for (Cacheable cacheable : pinned) {
+                cacheable.unpin();
+            }
+            pinned.clear();
+        }
+    }
 }
@@ -18,10 +18,14 @@
 package org.tomahawk.tomahawk_android.utils;
 
 import org.tomahawk.libtomahawk.resolver.Query;
+import org.tomahawk.libtomahawk.resolver.ResolutionPolicy;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -51,14 +55,40 @@ public class ThreadManager {
 
     private final ThreadPoolExecutor mPlaybackThreadPool;
 
+    /**
+     * A single thread with room for a single waiting runnable. A newly executed runnable replaces
+     * the one that is still waiting.
+     */
+    private final ThreadPoolExecutor mLatestOnlyThreadPool;
+
     private final Map<Query, Collection<TomahawkRunnable>> mQueryRunnableMap;
 
+    /**
+     * The {@link Query}s that every {@link TomahawkRunnable} in mQueryRunnableMap is handling and
+     * that haven't been stopped yet
+     */
+    private final Map<TomahawkRunnable, Collection<Query>> mRunnableQueryMap;
+
     private ThreadManager() {
         mQueryRunnableMap = new ConcurrentHashMap<>();
+        mRunnableQueryMap = new HashMap<>();
         mThreadPool = new ThreadPoolExecutor(NUMBER_OF_CORES, NUMBER_OF_CORES,
-                KEEP_ALIVE_TIME, KEEP_ALIVE_TIME_UNIT, new PriorityBlockingQueue<Runnable>());
+                KEEP_ALIVE_TIME, KEEP_ALIVE_TIME_UNIT, new PriorityBlockingQueue<Runnable>()) {
+            @Override
+            protected void afterExecute(Runnable r, Throwable t) {
+                super.afterExecute(r, t);
+
+                if (r instanceof TomahawkRunnable) {
+                    onFinished((TomahawkRunnable) r);
+                }
+            }
+        };
         mPlaybackThreadPool = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_TIME,
                 KEEP_ALIVE_TIME_UNIT, new PriorityBlockingQueue<Runnable>());
+        mLatestOnlyThreadPool = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_TIME,
+                KEEP_ALIVE_TIME_UNIT, new ArrayBlockingQueue<Runnable>(1),
+                new ThreadPoolExecutor.DiscardOldestPolicy());
+        mLatestOnlyThreadPool.allowCoreThreadTimeOut(true);
     }
 
     public static ThreadManager get() {
@@ -70,31 +100,83 @@ public class ThreadManager {
     }
 
     public void execute(TomahawkRunnable r, Query query) {
-        Collection<TomahawkRunnable> runnables = mQueryRunnableMap.get(query);
-        if (runnables == null) {
-            runnables = new HashSet<>();
+        execute(r, Collections.singleton(query));
+    }
+
+    /**
+     * Executes the given {@link TomahawkRunnable}, which handles all of the given {@link Query}s.
+     * The {@link TomahawkRunnable} is being removed from the queue, once all of those {@link
+     * Query}s have been stopped.
+     */
+    public synchronized void execute(TomahawkRunnable r, Collection<Query> queries) {
+        for (Query query : queries) {
+            Collection<TomahawkRunnable> runnables = mQueryRunnableMap.get(query);
+            if (runnables == null) {
+                runnables = new HashSet<>();
+            }
+            runnables.add(r);
+            mQueryRunnableMap.put(query, runnables);
         }
-        runnables.add(r);
-        mQueryRunnableMap.put(query, runnables);
+        mRunnableQueryMap.put(r, new HashSet<>(queries));
         mThreadPool.execute(r);
     }
 
-    public boolean stop(Query query) {
+    public synchronized boolean stop(Query query) {
         boolean success = false;
         Collection<TomahawkRunnable> runnables = mQueryRunnableMap.remove(query);
         if (runnables != null) {
             for (TomahawkRunnable r : runnables) {
+                Collection<Query> queries = mRunnableQueryMap.get(r);
+                if (queries != null) {
+                    queries.remove(query);
+                    if (!queries.isEmpty()) {
+                        // Other Queries are still waiting for this TomahawkRunnable
+                        continue;
+                    }
+                    mRunnableQueryMap.remove(r);
+                }
                 mThreadPool.remove(r);
                 success = true;
             }
         }
+        // Also cancel the ScriptJobs (and their queued network requests) that the ScriptResolvers
+        // are still running for this Query
+        success |= ResolutionPolicy.get().stop(query);
         return success;
     }
 
+    /**
+     * Forgets the given {@link TomahawkRunnable} and the {@link Query}s it has been handling, once
+     * it has been run
+     */
+    private synchronized void onFinished(TomahawkRunnable r) {
+        Collection<Query> queries = mRunnableQueryMap.remove(r);
+        if (queries != null) {
+            for (Query query : queries) {
+                Collection<TomahawkRunnable> runnables = mQueryRunnableMap.get(query);
+                if (runnables != null) {
+                    runnables.remove(r);
+                    if (runnables.isEmpty()) {
+                        mQueryRunnableMap.remove(query);
+                    }
+                }
+            }
+        }
+    }
+
     public void executePlayback(TomahawkRunnable r) {
         mPlaybackThreadPool.execute(r);
     }
 
+    /**
+     * Executes the given {@link TomahawkRunnable} after the one that is currently running. A
+     * {@link TomahawkRunnable} that has been given to this method before and is still waiting is
+     * being dropped, so that e.g. only the latest of many superseding lookups is being run.
+     */
+    public void executeLatestOnly(TomahawkRunnable r) {
+        mLatestOnlyThreadPool.execute(r);
+    }
+
     public boolean isActive() {
         return mThreadPool.getActiveCount() > 0
                 || mThreadPool.getQueue().size() > 0